@@ -33,6 +33,11 @@ abstract class BaseNode {
 
     private static final long UINT_MASK = 0x00000000ffffffffL;
 
+    /**
+     * two-sided 95% quantile of the standard normal distribution
+     */
+    private static final double Z_95 = 1.96;
+
     public static long shiftOut(long size) {
         return size >>> SIZE_SHIFT;
     }
@@ -65,9 +70,15 @@ abstract class BaseNode {
     private int _count;
     private int _size;
 
+    // only non-zero when sampled; float precision is plenty for error bounds
+    private float _countVariance;
+    private float _sizeVariance;
+
     protected void add( BaseNode other ) {
         setCount(getCount() + other.getCount());
         setSize(getSize() + other.getSize());
+        _countVariance += other.getCountVariance();
+        _sizeVariance += other.getSizeVariance();
     }
 
     public void clearArrayInfo() {}
@@ -80,6 +91,17 @@ abstract class BaseNode {
         return Integer.toUnsignedLong(_count);
     }
 
+    /**
+     * @return half width of the 95% confidence interval of the count estimate
+     */
+    public long getCountErrorBound() {
+        return Math.round(Z_95 * Math.sqrt(getCountVariance()));
+    }
+
+    public double getCountVariance() {
+        return _countVariance;
+    }
+
     public long getLength() {
         return 0;
     }
@@ -88,6 +110,17 @@ abstract class BaseNode {
         return Integer.toUnsignedLong(_size) << SIZE_SHIFT;
     }
 
+    /**
+     * @return half width of the 95% confidence interval of the size estimate
+     */
+    public long getSizeErrorBound() {
+        return Math.round(Z_95 * Math.sqrt(getSizeVariance()));
+    }
+
+    public double getSizeVariance() {
+        return _sizeVariance;
+    }
+
     public double getUsePercentage() {
         return 0;
     }
@@ -103,6 +136,8 @@ abstract class BaseNode {
     public BaseNode reset() {
         _count = 0;
         _size = 0;
+        _countVariance = 0;
+        _sizeVariance = 0;
 
         clearArrayInfo();
 
@@ -123,6 +158,11 @@ abstract class BaseNode {
         throw new UnsupportedOperationException();
     }
 
+    void setVariances( double countVariance, double sizeVariance ) {
+        _countVariance = (float)countVariance;
+        _sizeVariance = (float)sizeVariance;
+    }
+
     void setCount( long count ) {
         checkOverflow(count);
         _count = (int)count;
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.openjdk.jol.util.SimpleStack;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Comparator.comparingLong;
+
+
+/**
+ * Flat per-class counts and sizes, equivalent to the first level of {@link HeapLayout#toFootprint(PrintWriter)}, but gathered without
+ * building class paths, tries or nodes: per object, a counter indexed by class is incremented, and nothing is allocated. Classes are
+ * indexed densely by the {@link ReferenceFieldLayout.Cache} of the traversal, so the tables are sized by the classes it has seen.
+ */
+public final class ClassHistogram extends HeapStats {
+
+    private final String description;
+
+    private Class<?>[] classes;
+    private long[] counts;
+    private long[] sizes;
+
+    /**
+     * @param layouts the cache the traversal looks classes up in, which assigns the indices
+     */
+    ClassHistogram(ReferenceFieldLayout.Cache layouts, Object... roots) {
+        description = HeapLayout.Builder.describe(roots);
+        int capacity = Math.max(1 << 6, layouts.size());
+        classes = new Class<?>[capacity];
+        counts = new long[capacity];
+        sizes = new long[capacity];
+    }
+
+    /**
+     * Parse the flat class histogram starting from the given instance(s).
+     *
+     * @param tc    TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param roots root instance(s) to start from
+     * @return class histogram
+     */
+    public static ClassHistogram parseInstance(TraversalControl tc, Object... roots) {
+        return parseInstance(tc, HeapLayout.DEFAULT_CAPACITY, HeapLayout.DEFAULT_CAPACITY, roots);
+    }
+
+    /**
+     * Parse the flat class histogram starting from the given instance(s).
+     *
+     * @param tc                  TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param stackCapacity       pass the value from the previous run or a guesstimate to reduce incremental growth costs
+     * @param identitySetCapacity pass the value from the previous run or a guesstimate to reduce incremental growth costs
+     * @param roots               root instance(s) to start from
+     * @return class histogram
+     */
+    public static ClassHistogram parseInstance(TraversalControl tc, int stackCapacity, int identitySetCapacity, Object... roots) {
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        ReferenceFieldLayout.Cache layouts = new ReferenceFieldLayout.Cache(HeapLayout.DEFAULT_CAPACITY);
+        ClassHistogram histogram = new ClassHistogram(layouts, roots);
+
+        HeapTraversal traversal = new HeapTraversal(tc, new VisitedSet.WithReferenceOpenHashSet(identitySetCapacity), layouts,
+                new SimpleStack<>(stackCapacity), histogram);
+        traversal.addRoots(roots);
+        traversal.run();
+        traversal.reportContainerCapacities();
+
+        HeapLayoutEvent.commit(event, histogram, roots);
+        return histogram;
+    }
+
+    /**
+     * @param index index of the class in the cache passed to the constructor
+     */
+    void addRecord(int index, Class<?> cl, long size) {
+        if (index >= counts.length) {
+            int capacity = Math.max(index + 1, counts.length << 1);
+            classes = Arrays.copyOf(classes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        if (counts[index]++ == 0) {
+            classes[index] = cl;
+        }
+        sizes[index] += size;
+        addRecord(size);
+    }
+
+    /**
+     * @return number of instances of exactly the given class, 0 if not encountered
+     */
+    public long getCount(Class<?> cl) {
+        int index = indexOf(cl);
+        return index < 0 ? 0L : counts[index];
+    }
+
+    /**
+     * @return total shallow size of the instances of exactly the given class, 0 if not encountered
+     */
+    public long getSize(Class<?> cl) {
+        int index = indexOf(cl);
+        return index < 0 ? 0L : sizes[index];
+    }
+
+    // linear, but the histogram keeps no map, and does not hold on to the cache which may be in use by a later traversal
+    private int indexOf(Class<?> cl) {
+        for (int index = 0, n = classes.length; index < n; ++index) {
+            if (classes[index] == cl) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the classes encountered, in no particular order
+     */
+    public List<Class<?>> getClasses() {
+        List<Class<?>> encountered = new ArrayList<>();
+        for (Class<?> cl : classes) {
+            if (cl != null) {
+                encountered.add(cl);
+            }
+        }
+        return encountered;
+    }
+
+    /**
+     * Print the same table as {@link HeapLayout#toFootprint(PrintWriter)} does.
+     *
+     * @param pw the PrintWriter used for output
+     */
+    public void toFootprint(PrintWriter pw) {
+        List<PermNode> rows = new ArrayList<>();
+        for (int index = 0, n = classes.length; index < n; ++index) {
+            if (classes[index] != null) {
+                PermNode row = new PermNode(classes[index].getName());
+                row.setCount(counts[index]);
+                row.setSize(sizes[index]);
+                rows.add(row);
+            }
+        }
+        rows.sort(comparingLong(PermNode::getTotalSize)
+                .thenComparing(PermNode::getSize)
+                .thenComparing(PermNode::getCount)
+                .thenComparing(PermNode::getLabel));
+
+        PermNode root = new PermNode("(total)");
+        for (PermNode row : rows) {
+            root.add(row);
+        }
+        root.setChildren(rows.toArray(new PermNode[0]));
+
+        new ClassHistogramReporter(root, 1, description, false).toFootprint(pw);
+    }
+}
@@ -26,59 +26,84 @@ package org.openjdk.jol.addons;
 
 import com.google.common.base.Strings;
 
-import java.io.PrintWriter;
-
-import static org.openjdk.jol.addons.HeapLayout.humanReadableByteCountBin;
+import java.io.Writer;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 
 final class ClassHistogramReporter extends HeapLayoutReporter {
 
     private final String description;
 
-    public ClassHistogramReporter(PermNode root, int stackDepth, String description) {
-        super(root, stackDepth);
+    public ClassHistogramReporter(PermNode root, int stackDepth, String description, boolean withErrorBounds) {
+        super(root, stackDepth, withErrorBounds);
         this.description = description;
     }
 
     /**
      * Get the stringly representation of footprint table
      *
-     * @param pw the PrintWriter used for output
+     * @param writer the Writer used for output
+     */
+    public void toFootprint(Writer writer) {
+        toFootprint(new ReportWriter(writer));
+    }
+
+    public void toFootprint(ReportWriter w) {
+        toFootprint(w, row -> NodeWithChildren.walk(root, 1, 1, -1, row, stackDepth));
+    }
+
+    /**
+     * @param rows supplies the rows of the first level below the root in walk order, e.g. decoded from a snapshot
      */
-    public void toFootprint(PrintWriter pw) {
-        pw.println(description + " footprint:");
-        pw.printf(" %15s %10s %12s %10s %15s %10s   %s%n", //
-                "COUNT", "% COUNT", "AVG SZ", "SUM", "RAW SUM", "% SUM", "DESCRIPTION");
+    void toFootprint(ReportWriter w, Consumer<BiConsumer<PermNode, Integer>> rows) {
+        w.append(description).append(" footprint:").newLine();
+        w.format(" %15s %10s %12s %10s %15s %10s", //
+                "COUNT", "% COUNT", "AVG SZ", "SUM", "RAW SUM", "% SUM");
+        printErrorBoundsHeadline(w);
+        w.format("   %s%n", "DESCRIPTION");
 
-        pw.printf(" %,15d %8.2f %% %12s %10s %,15d %8.2f %%   %s%n", //
-                root.getTotalCount(), root.getParentCountPercentage(), "--", humanReadableByteCountBin(root.getSize()), root.getSize(),
-                root.getParentSizePercentage(), "(total)");
+        w.append(' ').integer(root.getTotalCount(), 15, true).append(' ') //
+                .decimal(root.getParentCountPercentage(), 8, 2).append(" % ") //
+                .string("--", 12).append(' ') //
+                .byteCount(root.getSize(), 10).append(' ') //
+                .integer(root.getSize(), 15, true).append(' ') //
+                .decimal(root.getParentSizePercentage(), 8, 2).append(" %");
+        printErrorBounds(root, w);
+        w.append("   (total)").newLine();
 
-        NodeWithChildren.walk(root, 1, 1, -1, (node, depth) -> {
-            String label = Strings.isNullOrEmpty(node.getPrefix()) ? node.getLabel() : node.getPrefix();
-            pw.printf(" %,15d %8.2f %% %,12d %10s %,15d %8.2f %%   %s%n", //
-                    node.getCount(), node.getParentCountPercentage(), node.getAverage(), humanReadableByteCountBin(node.getSize()), node.getSize(),
-                    node.getParentSizePercentage(), label);
-        }, stackDepth);
+        rows.accept((node, depth) -> {
+            w.append(' ').integer(node.getCount(), 15, true).append(' ') //
+                    .decimal(node.getParentCountPercentage(), 8, 2).append(" % ") //
+                    .integer(node.getAverage(), 12, true).append(' ') //
+                    .byteCount(node.getSize(), 10).append(' ') //
+                    .integer(node.getSize(), 15, true).append(' ') //
+                    .decimal(node.getParentSizePercentage(), 8, 2).append(" %");
+            printErrorBounds(node, w);
+            w.append("   ").append(Strings.isNullOrEmpty(node.getPrefix()) ? node.getLabel() : node.getPrefix()).newLine();
+        });
+        w.flush();
     }
 
     @Override
-    protected void printHeadline(PrintWriter pw) {
-        pw.printf("%15s %10s %10s %12s %10s %15s %10s   %s%n", //
-                "COUNT", "PAR% CT", "AVG SIZE", "RAW AVG SZ", "TOTAL SIZE", "RAW T SZ", "PAR% T SZ", "DESCRIPTION");
+    protected void printHeadline(ReportWriter w) {
+        w.format("%15s %10s %10s %12s %10s %15s %10s", //
+                "COUNT", "PAR% CT", "AVG SIZE", "RAW AVG SZ", "TOTAL SIZE", "RAW T SZ", "PAR% T SZ");
+        printErrorBoundsHeadline(w);
+        w.format("   %s%n", "DESCRIPTION");
     }
 
     @Override
-    protected void printRow(PermNode node, int depth, PrintWriter pw) {
-        if (Strings.isNullOrEmpty(node.getPrefix())) {
-            pw.printf("%,15d %8.2f %% %10s %,12d %10s %,15d %8.2f %%   %s%s%n", //
-                    node.getCount(), node.getParentCountPercentage(), humanReadableByteCountBin(node.getAverage()), node.getAverage(),
-                    humanReadableByteCountBin(node.getSize()), node.getSize(), node.getParentSizePercentage(), getIndentFor(depth), node.getLabel());
-        } else {
-            pw.printf("%,15d %8.2f %% %10s %,12d %10s %,15d %8.2f %%   %s%s %s%n", //
-                    node.getCount(), node.getParentCountPercentage(), humanReadableByteCountBin(node.getAverage()), node.getAverage(),
-                    humanReadableByteCountBin(node.getSize()), node.getSize(), node.getParentSizePercentage(), getIndentFor(depth), node.getPrefix(),
-                    node.getLabel());
-        }
+    protected void printRow(PermNode node, int depth, ReportWriter w) {
+        w.integer(node.getCount(), 15, true).append(' ') //
+                .decimal(node.getParentCountPercentage(), 8, 2).append(" % ") //
+                .byteCount(node.getAverage(), 10).append(' ') //
+                .integer(node.getAverage(), 12, true).append(' ') //
+                .byteCount(node.getSize(), 10).append(' ') //
+                .integer(node.getSize(), 15, true).append(' ') //
+                .decimal(node.getParentSizePercentage(), 8, 2).append(" %");
+        printErrorBounds(node, w);
+        printLabel(node, depth, w);
+        w.newLine();
     }
-}
\ No newline at end of file
+}
@@ -27,15 +27,32 @@ package org.openjdk.jol.addons;
 import java.util.List;
 
 
+/**
+ * Read-only list of classes and field labels, in heap order for {@link ClassPathImpl}, or in class resp. tree based order for the
+ * views thereof. Equality and hash code are those of {@link List}.
+ */
 public interface ClassPath extends List<Object> {
 
-    ClassPath computeIfAbsent(String label, Class<?> clazz, List<Object> tail, HistogramDeduplicator hd, boolean arrayIndexed);
-
     ClassPath getClassBasedOrder();
 
-    ClassPath getOriginal();
+    /**
+     * @return the path in heap order this one is a view of, or this path itself
+     */
+    ClassPathImpl getOriginal();
 
     ClassPath getTreeBasedOrder();
 
+    /**
+     * @return interned id of the symbol at the given position, see {@link Symbols}
+     */
+    int symbolAt(int index);
+
     boolean isTerminal();
+
+    /**
+     * @return true if the subtree of at least one object on this path has not been traversed for lack of budget
+     */
+    boolean isTruncated();
+
+    void markTruncated();
 }
@@ -24,127 +24,188 @@
  */
 package org.openjdk.jol.addons;
 
-import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
-import java.util.*;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
 
 
-public class ClassPathImpl extends ArrayList<Object> implements ClassPath {
+/**
+ * Path of classes and field labels in heap order, i.e. class, field, class, field, ..., class, stored as interned {@link Symbols}.
+ * <p>
+ * Paths are immutable, apart from their flags and the cache of children; the class and tree based orders are views mapping indices
+ * rather than copies. Only paths in heap order grow and get copied, so views implement {@link ClassPath} alone.
+ * <p>
+ * Equality and hash code are those of {@link java.util.List}; comparing two paths compares their symbol ids, which is equivalent, as
+ * every class and label has exactly one id. Paths keep their classes reachable, each one its last class and its parent the others,
+ * so their symbols resolve for as long as they live.
+ */
+public class ClassPathImpl extends AbstractList<Object> implements ClassPath {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClassPathImpl.class);
 
-    private static final long serialVersionUID = -249241882148716230L;
-    private int hashCode;
-    private boolean hashInit;
-    private ClassPathImpl classBasedOrder;
-    private ClassPathImpl treeBasedOrder;
+    // paths are cached by their parents, so counting creations costs nothing per object
+    private static final LongAdder CREATED = new LongAdder();
+    private static final LongAdder DEDUPLICATED = new LongAdder();
+
+    private final int[] symbols;
+    private final int hashCode;
+    private final Object pinned;
     private ClassPathImpl parent;
-    private Map<List<Object>, ClassPathImpl> children;
+    private Long2ObjectMap<ClassPathImpl> children;
     private boolean terminal;
-    private ClassPathImpl original;
-    public ClassPathImpl(int initialCapacity) {
-        super(initialCapacity);
+    private boolean truncated;
+    private View classBasedOrder;
+    private View treeBasedOrder;
+
+    // accumulators of the builder currently aggregating objects on this path, sparing it two lookups per object
+    private Object aggregationOwner;
+    private BaseNode classBasedAggregate;
+    private BaseNode treeBasedAggregate;
+
+    public ClassPathImpl(Collection<?> c) {
+        this(c.stream().mapToInt(Symbols::of).toArray(), c.hashCode(), c.toArray());
     }
 
-    public ClassPathImpl(@Nonnull Collection<?> c) {
-        super(c);
+    /**
+     * @param pinned class or classes to keep reachable, see {@link Symbols}
+     */
+    private ClassPathImpl(int[] symbols, int hashCode, Object pinned) {
+        this.symbols = symbols;
+        this.hashCode = hashCode;
+        this.pinned = pinned;
     }
 
-    private static void juxtapose(ClassPath reorder) {
-        // Class / field / class ... is easier to deduplicate and to handle inversion from heap to class order.
-        // We want stats about a class, then its composition split by class, then field.
-        // So, the order is class, class, field, class, field in both cases; i.e., the first object remains in place, the remainder will be exchanged pairwise.
-        assert (reorder.size() % 2 == 1); // size() is odd at all times
-        List<Object> twiddle = reorder.subList(1, reorder.size());
-        for (int i = 0, n = twiddle.size(); i < n; i += 2) {
-            Object tmp = twiddle.get(i);
-            twiddle.set(i, twiddle.get(i + 1));
-            twiddle.set(i + 1, tmp);
-        }
+    static ClassPathImpl root(Class<?> clazz) {
+        return new ClassPathImpl(new int[]{Symbols.of(clazz)}, 31 + clazz.hashCode(), clazz);
     }
 
-    @Override
-    public ClassPathImpl computeIfAbsent(String label, Class<?> clazz, List<Object> tail, HistogramDeduplicator hd, boolean arrayIndexed) {
+    public ClassPathImpl computeIfAbsent(String label, Class<?> clazz, HistogramDeduplicator hd, boolean arrayIndexed) {
         if (this.isTerminal()) {
             return this;
         }
 
         // trivial case: List / Map / whatever nodes pointing to instances of same class within ADT
-        if ( isNestedInstanceMerged(clazz)) {
+        if (isNestedInstanceMerged(clazz)) {
             LOG.debug("merging nested instance {} {}", label, clazz);
             return this;
         }
 
         if (children == null) {
-            children = new HashMap<>();
+            children = new Long2ObjectOpenHashMap<>(2);
         }
 
+        final int labelId = Symbols.of(label);
+        final int classId = Symbols.of(clazz);
+        final long key = (long) labelId << 32 | Integer.toUnsignedLong(classId);
         ClassPathImpl child;
-        if ((child = children.get(tail)) == null){
-            ClassPathImpl newChild=createChild(label, clazz, tail, hd, arrayIndexed);
-            children.put(new TwoItemArrayList<>(tail), newChild);
-            return newChild;
+        if ((child = children.get(key)) == null) {
+            child = createChild(labelId, classId, clazz, hd, arrayIndexed);
+            children.put(key, child);
         }
         return child;
     }
 
-    private ClassPathImpl createChild(String label, Class<?> clazz, List<Object> tail, HistogramDeduplicator hd, boolean arrayIndexed) {
+    private ClassPathImpl createChild(int labelId, int classId, Class<?> clazz, HistogramDeduplicator hd, boolean arrayIndexed) {
         boolean terminal = hd.isTerminal(clazz);
         if (terminal) {
             LOG.debug("terminal symbol {}", clazz);
         }
 
-        ClassPathImpl child = new ClassPathImpl(this.size() + tail.size());
-        child.addAll(this);
-        child.addAll(tail);
+        final int size = symbols.length;
+        final int[] path = Arrays.copyOf(symbols, size + 2);
+        path[size] = labelId;
+        path[size + 1] = classId;
 
-        if (!terminal && !arrayIndexed && this.size() > 3) {
-            for (int end = child.size(), testLength = (end - 1) / 4 * 2; testLength > 0; testLength -= 2) {
+        if (!terminal && !arrayIndexed && size > 3) {
+            for (int end = path.length, testLength = (end - 1) / 4 * 2; testLength > 0; testLength -= 2) {
                 final int split = end - testLength;
                 final int start = split - testLength;
-                if (child.get(split - 2).equals(label) && clazz.equals(child.get(split - 1))) {
-                    List<Object> test1 = child.subList(start, split);
-                    List<Object> test2 = child.subList(split, end);
-                    if (test1.equals(test2)) {
-                        ClassPathImpl parent = this;
-                        do {
-                            if (parent.size() == split) {
-                                LOG.debug("deduplicating {}", test2);
-                                return parent;
-                            }
-                            parent = parent.getParent();
+                if (path[split - 2] == labelId && path[split - 1] == classId && Arrays.equals(path, start, split, path, split, end)) {
+                    ClassPathImpl parent = this;
+                    do {
+                        if (parent.size() == split) {
+                            LOG.debug("deduplicating {}", Arrays.toString(Arrays.copyOfRange(path, split, end)));
+                            DEDUPLICATED.increment();
+                            return parent;
                         }
-                        while (parent != null);
+                        parent = parent.getParent();
                     }
+                    while (parent != null);
                 }
             }
         }
 
+        ClassPathImpl child = new ClassPathImpl(path, 31 * (31 * hashCode + Symbols.hashOf(labelId)) + clazz.hashCode(), clazz);
         child.setParent(this);
         child.setTerminal(terminal);
+        CREATED.increment();
         return child;
     }
 
+    /**
+     * @return number of child paths created process-wide
+     */
+    static long createdCount() {
+        return CREATED.sum();
+    }
+
+    /**
+     * @return number of child paths folded into an existing path process-wide, see {@link #computeIfAbsent}
+     */
+    static long deduplicatedCount() {
+        return DEDUPLICATED.sum();
+    }
+
+    /**
+     * @return equal copy of this path and its ancestry, sharing no mutable state with the original
+     */
+    public ClassPathImpl detachedCopy() {
+        // symbols are immutable and may be shared
+        ClassPathImpl copy = new ClassPathImpl(symbols, hashCode, pinned);
+        copy.setTerminal(terminal);
+        copy.truncated = truncated;
+        for (ClassPathImpl current = copy, p = parent; p != null; p = p.getParent()) {
+            ClassPathImpl parentCopy = new ClassPathImpl(p.symbols, p.hashCode, p.pinned);
+            parentCopy.setTerminal(p.isTerminal());
+            parentCopy.truncated = p.isTruncated();
+            current.setParent(parentCopy);
+            current = parentCopy;
+        }
+        return copy;
+    }
+
+    @Override
+    public Object get(int index) {
+        return Symbols.get(symbols[index]);
+    }
+
+    @Override
+    public int size() {
+        return symbols.length;
+    }
+
+    @Override
+    public int symbolAt(int index) {
+        return symbols[index];
+    }
+
     @Override
-    public ClassPathImpl getClassBasedOrder() {
+    public ClassPath getClassBasedOrder() {
         if (classBasedOrder == null) {
-            classBasedOrder = new ClassPathImpl(Lists.reverse(this));
-            juxtapose(classBasedOrder);
-            classBasedOrder.setOriginal(this);
+            classBasedOrder = new View(this, true);
         }
         return classBasedOrder;
     }
 
     @Override
     public ClassPathImpl getOriginal() {
-        return original;
-    }
-
-    public void setOriginal(ClassPathImpl original) {
-        this.original = original;
+        return this;
     }
 
     public ClassPathImpl getParent() {
@@ -156,23 +217,36 @@ public class ClassPathImpl extends ArrayList<Object> implements ClassPath {
     }
 
     @Override
-    public ClassPathImpl getTreeBasedOrder() {
+    public ClassPath getTreeBasedOrder() {
         if (treeBasedOrder == null) {
-            treeBasedOrder = new ClassPathImpl(this);
-            juxtapose(treeBasedOrder);
-            treeBasedOrder.setOriginal(this);
+            treeBasedOrder = new View(this, false);
         }
         return treeBasedOrder;
     }
 
     @Override
-    public int hashCode() {
-        // although the class is not strictly immutable, its use case does not suit itself to mutation
-        // with Trie lookups working on the list contents anyway, this was not much use, but with the node lookup cache upfront, that's a different story
-        if (!hashInit) {
-            hashCode = super.hashCode();
-            hashInit = true;
+    public boolean equals(Object o) {
+        return o instanceof ClassPath ? equals(this, (ClassPath) o) : super.equals(o);
+    }
+
+    private static boolean equals(ClassPath path, ClassPath other) {
+        if (path == other) {
+            return true;
+        }
+        final int size = path.size();
+        if (path.hashCode() != other.hashCode() || size != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (path.symbolAt(i) != other.symbolAt(i)) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
         return hashCode;
     }
 
@@ -185,19 +259,132 @@ public class ClassPathImpl extends ArrayList<Object> implements ClassPath {
         this.terminal = terminal;
     }
 
+    @Override
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void markTruncated() {
+        truncated = true;
+    }
+
+    boolean isAggregatedBy(Object owner) {
+        return aggregationOwner == owner;
+    }
+
+    void setAggregates(Object owner, BaseNode classBasedAggregate, BaseNode treeBasedAggregate) {
+        this.aggregationOwner = owner;
+        this.classBasedAggregate = classBasedAggregate;
+        this.treeBasedAggregate = treeBasedAggregate;
+    }
+
+    BaseNode getClassBasedAggregate() {
+        return classBasedAggregate;
+    }
+
+    BaseNode getTreeBasedAggregate() {
+        return treeBasedAggregate;
+    }
+
     private boolean isNestedInstanceMerged(Class<?> clazz) {
-        if (this.isEmpty()) {
+        if (symbols.length == 0) {
             return false;
         }
 
         // Same class and member with suspicious name? Display on same level, please - don't build an infinite slide to the right
         // First and last in original ClassPath are always Class<?>
-        Object parentClazzCandidate = this.get(this.size() - 1);
-        if ( parentClazzCandidate instanceof Class<?>) {
-            Class<?>parentClazz = ((Class<?>) parentClazzCandidate);
+        Object parentClazzCandidate = get(symbols.length - 1);
+        if (parentClazzCandidate instanceof Class<?>) {
+            Class<?> parentClazz = ((Class<?>) parentClazzCandidate);
             return HistogramDeduplicator.isNestedInstanceMerged(parentClazz, clazz);
         }
 
         return false;
     }
+
+
+    /**
+     * Class / field / class ... is easier to deduplicate and to handle inversion from heap to class order.
+     * We want stats about a class, then its composition split by class, then field.
+     * So, the order is class, class, field, class, field in both cases; i.e., the first symbol remains in place, the remainder is exchanged
+     * pairwise. The class based order reverses the path beforehand.
+     */
+    private static final class View extends AbstractList<Object> implements ClassPath {
+
+        private final ClassPathImpl original;
+        private final boolean reversed;
+        private final int hashCode;
+
+        View(ClassPathImpl original, boolean reversed) {
+            this.original = original;
+            this.reversed = reversed;
+
+            int h = 1;
+            for (int i = 0, n = original.symbols.length; i < n; ++i) {
+                h = 31 * h + Symbols.hashOf(symbolAt(i));
+            }
+            this.hashCode = h;
+        }
+
+        @Override
+        public int symbolAt(int index) {
+            final int[] symbols = original.symbols;
+            final int juxtaposed = index == 0 ? 0 : ((index - 1) ^ 1) + 1;
+            return symbols[reversed ? symbols.length - 1 - juxtaposed : juxtaposed];
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= original.symbols.length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return Symbols.get(symbolAt(index));
+        }
+
+        @Override
+        public int size() {
+            return original.symbols.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClassPath ? ClassPathImpl.equals(this, (ClassPath) o) : super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public ClassPath getClassBasedOrder() {
+            return original.getClassBasedOrder();
+        }
+
+        @Override
+        public ClassPathImpl getOriginal() {
+            return original;
+        }
+
+        @Override
+        public ClassPath getTreeBasedOrder() {
+            return original.getTreeBasedOrder();
+        }
+
+        @Override
+        public boolean isTerminal() {
+            return original.isTerminal();
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return original.isTruncated();
+        }
+
+        @Override
+        public void markTruncated() {
+            original.markTruncated();
+        }
+    }
 }
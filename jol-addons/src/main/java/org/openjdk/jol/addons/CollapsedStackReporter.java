@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import com.google.common.base.Strings;
+
+import java.util.Arrays;
+
+
+/**
+ * Streams the heap tree in collapsed-stack format, i.e. one line per row holding the path from the root as semicolon separated frames
+ * followed by its weight. Rows with a prefix contribute two frames, the field and the class, e.g.
+ * {@code java.util.ArrayList;elementData;java.lang.Object[];[i];java.lang.String 48}. Array classes are named as in source code, and
+ * semicolons within other labels are replaced by commas, so that no label splits into several frames.
+ * <p>
+ * The path of the current row is kept in one buffer, truncated to the end of the parent's frames, so nothing is allocated per row.
+ * Rows weigh their total count or size less those of their children, so rows merely grouping their children weigh nothing, rows
+ * folded by pruning carry the weight of what they fold, and the weights sum up to the totals of the tree.
+ */
+final class CollapsedStackReporter {
+
+    private final ReportWriter w;
+    private final HeapLayout.Weight weight;
+
+    private char[] path = new char[1 << 10];
+    private int[] ends = new int[1 << 4];
+
+    CollapsedStackReporter(ReportWriter w, HeapLayout.Weight weight) {
+        this.w = w;
+        this.weight = weight;
+    }
+
+    /**
+     * @param root the root row, which merely sums up the measured instances and is not a frame of its own
+     */
+    void toCollapsedStacks(PermNode root, int stackDepth) {
+        NodeWithChildren.walk(root, 1, NodeWithChildren.UNLIMITED, -1, this::printStack, stackDepth);
+        w.flush();
+    }
+
+    private void printStack(PermNode node, int depth) {
+        int length = depth == 0 ? 0 : ends[depth - 1];
+        if (depth > 0) {
+            length = appendFrame(";", length);
+        }
+        if (!Strings.isNullOrEmpty(node.getPrefix())) {
+            length = appendLabel(node.getOwnLabel(), length);
+            length = appendFrame(";", length);
+            length = appendLabel(node.getPrefix(), length);
+        } else {
+            length = appendLabel(String.valueOf(node.getOwnLabel()), length);
+        }
+        if (node instanceof Ellipsis) {
+            length = appendLabel(node.getArrayLabel(), length);
+        }
+
+        if (depth >= ends.length) {
+            ends = Arrays.copyOf(ends, ends.length << 1);
+        }
+        ends[depth] = length;
+
+        long value = weight == HeapLayout.Weight.COUNT ? node.getTotalCount() : node.getTotalSize();
+        if (node.getChildren() != null) {
+            for (PermNode child : node.getChildren()) {
+                value -= weight == HeapLayout.Weight.COUNT ? child.getTotalCount() : child.getTotalSize();
+            }
+        }
+        if (value > 0) {
+            w.append(path, 0, length).append(' ').integer(value, 0, false).newLine();
+        }
+    }
+
+    private int appendFrame(String frame, int at) {
+        final int length = frame.length();
+        ensureCapacity(at + length);
+        frame.getChars(0, length, path, at);
+        return at + length;
+    }
+
+    /**
+     * Appends a label such as a class name, spelling binary names of array classes like {@link Class#getTypeName()}, e.g.
+     * {@code java.lang.Object[]} for {@code [Ljava.lang.Object;}, and replacing any other semicolon.
+     */
+    private int appendLabel(String label, int at) {
+        final int dimensions = arrayDimensions(label);
+        if (dimensions == 0) {
+            return appendEscaped(label, 0, label.length(), at);
+        }
+        final char type = label.charAt(dimensions);
+        at = type == 'L' ? appendEscaped(label, dimensions + 1, label.length() - 1, at) : appendFrame(primitiveName(type), at);
+        for (int i = 0; i < dimensions; ++i) {
+            at = appendFrame("[]", at);
+        }
+        return at;
+    }
+
+    private int appendEscaped(String label, int from, int to, int at) {
+        final int end = at + to - from;
+        ensureCapacity(end);
+        label.getChars(from, to, path, at);
+        for (int i = at; i < end; ++i) {
+            if (path[i] == ';') {
+                path[i] = ',';
+            }
+        }
+        return end;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > path.length) {
+            path = Arrays.copyOf(path, Math.max(path.length << 1, capacity));
+        }
+    }
+
+    /**
+     * @return number of dimensions if the label is the binary name of an array class, 0 otherwise, e.g. for the {@code [i]} of
+     * array elements
+     */
+    private static int arrayDimensions(String label) {
+        final int length = label.length();
+        int dimensions = 0;
+        while (dimensions < length && label.charAt(dimensions) == '[') {
+            ++dimensions;
+        }
+        if (dimensions == 0 || dimensions == length) {
+            return 0;
+        }
+        final char type = label.charAt(dimensions);
+        if (type == 'L') {
+            return length > dimensions + 2 && label.indexOf(';') == length - 1 ? dimensions : 0;
+        }
+        return length == dimensions + 1 && primitiveName(type) != null ? dimensions : 0;
+    }
+
+    private static String primitiveName(char type) {
+        switch (type) {
+            case 'Z':
+                return "boolean";
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'F':
+                return "float";
+            case 'D':
+                return "double";
+            default:
+                return null;
+        }
+    }
+}
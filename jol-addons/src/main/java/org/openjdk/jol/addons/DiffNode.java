@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import com.google.common.base.Strings;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static java.util.Comparator.comparingLong;
+
+
+/**
+ * Row of a {@link HeapLayoutDiff}, pairing the counts and sizes of the same path before and after. Paths present on one side only
+ * have zeros on the other.
+ */
+final class DiffNode extends PermNode {
+
+    private static final DiffNode[] NO_CHILDREN = new DiffNode[0];
+
+    /**
+     * Ascending, as printed in reverse.
+     */
+    static final Comparator<DiffNode> BY_CHANGE = comparingLong((DiffNode n) -> Math.abs(n.getSizeDelta()))
+            .thenComparingLong(n -> Math.abs(n.getCountDelta()))
+            .thenComparingLong(DiffNode::getSizeAfter)
+            .thenComparing(PermNode::getLabel);
+
+    private final DiffNode _parent;
+    private final long _key;
+
+    private DiffNode[] _pending = NO_CHILDREN;
+    private int _pendingCount;
+
+    private long _countBefore;
+    private long _sizeBefore;
+    private long _countAfter;
+    private long _sizeAfter;
+
+    DiffNode(PermNode row, DiffNode parent, long key) {
+        super(row.getOwnLabel());
+        setPrefix(row.getPrefix());
+        setParentClassName(row.getParentClassName());
+        _parent = parent;
+        _key = key;
+        if (parent != null) {
+            parent.addPending(this);
+        }
+    }
+
+    private DiffNode(String label, DiffNode parent) {
+        super(label);
+        _parent = parent;
+        _key = 0;
+    }
+
+    long getKey() {
+        return _key;
+    }
+
+    /**
+     * @return true if this node stands for the given row below the given parent, as opposed to a hash collision
+     */
+    boolean matches(DiffNode parent, PermNode row) {
+        return _parent == parent && getOwnLabel().equals(row.getOwnLabel())
+                && Strings.nullToEmpty(getPrefix()).equals(Strings.nullToEmpty(row.getPrefix()))
+                && Strings.nullToEmpty(getParentClassName()).equals(Strings.nullToEmpty(row.getParentClassName()));
+    }
+
+    void add(boolean after, long count, long size) {
+        if (after) {
+            _countAfter += count;
+            _sizeAfter += size;
+        } else {
+            _countBefore += count;
+            _sizeBefore += size;
+        }
+    }
+
+    long getCountBefore() {
+        return _countBefore;
+    }
+
+    long getSizeBefore() {
+        return _sizeBefore;
+    }
+
+    long getCountAfter() {
+        return _countAfter;
+    }
+
+    long getSizeAfter() {
+        return _sizeAfter;
+    }
+
+    long getCountDelta() {
+        return _countAfter - _countBefore;
+    }
+
+    long getSizeDelta() {
+        return _sizeAfter - _sizeBefore;
+    }
+
+    /**
+     * @return all children aligned below this node, regardless of pruning
+     */
+    DiffNode[] getAllChildren() {
+        return Arrays.copyOf(_pending, _pendingCount);
+    }
+
+    /**
+     * Sort the children aligned so far by change and fold those beyond the given limits, ranked by absolute size change.
+     */
+    void seal(ReportPruning pruning) {
+        if (_pendingCount == 0) {
+            return;
+        }
+        DiffNode[] children = getAllChildren();
+        Arrays.sort(children, BY_CHANGE);
+        setChildren(pruning.isEnabled() ? prune(children, Math.abs(getSizeDelta()), pruning) : children);
+    }
+
+    private void addPending(DiffNode child) {
+        if (_pendingCount == _pending.length) {
+            _pending = Arrays.copyOf(_pending, Math.max(2, _pendingCount << 1));
+        }
+        _pending[_pendingCount++] = child;
+    }
+
+    /**
+     * @param children sorted ascending, as printed in reverse
+     * @return the children kept, preceded by a row folding the others unless there is at most one
+     */
+    private DiffNode[] prune(DiffNode[] children, long parentChange, ReportPruning pruning) {
+        final int n = children.length;
+        int kept = 0;
+        while (kept < n && pruning.isKept(kept, Math.abs(children[n - 1 - kept].getSizeDelta()), parentChange)) {
+            ++kept;
+        }
+
+        final int pruned = n - kept;
+        if (pruned < 2) {
+            return children;
+        }
+
+        DiffNode others = new DiffNode(ReportPruning.OTHERS_LABEL, this);
+        for (int i = 0; i < pruned; ++i) {
+            others.add(false, children[i].getCountBefore(), children[i].getSizeBefore());
+            others.add(true, children[i].getCountAfter(), children[i].getSizeAfter());
+        }
+
+        DiffNode[] result = new DiffNode[kept + 1];
+        result[0] = others;
+        System.arraycopy(children, pruned, result, 1, kept);
+        return result;
+    }
+}
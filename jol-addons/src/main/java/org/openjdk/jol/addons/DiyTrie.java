@@ -25,17 +25,28 @@
 package org.openjdk.jol.addons;
 
 import javax.annotation.Nullable;
-import java.util.*;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 
-final class DiyTrie<E, K extends Collection<E>, V> {
+/**
+ * Trie over {@link ClassPath}s, keyed by their interned symbol ids. Children are kept in sorted primitive arrays rather than a map per
+ * node, and iteration allocates nothing per node visited.
+ */
+final class DiyTrie<V> {
+
+    private static final int NO_SYMBOL = -1;
 
-    private final Node<E, K, V> _root = new Node<>(null);
+    private final Node<V> _root = new Node<>(NO_SYMBOL);
 
-    public V computeIfAbsent(K key, Function<K, V> mappingFunction) {
-        final Node<E, K, V> node = computeIfAbsent(key);
+    public V computeIfAbsent(ClassPath key, Function<ClassPath, V> mappingFunction) {
+        final Node<V> node = computeIfAbsent(key);
         return node.computeIfAbsent(key, mappingFunction);
     }
 
@@ -43,10 +54,10 @@ final class DiyTrie<E, K extends Collection<E>, V> {
      * Unused, untested; simply jotted down
      */
     @Nullable
-    public Node<E, K, V> get(K key) {
-        Node<E, K, V> node = _root;
-        for (E keyElement : key) {
-            node = node.get(keyElement);
+    public Node<V> get(ClassPath key) {
+        Node<V> node = _root;
+        for (int i = 0, n = key.size(); i < n; ++i) {
+            node = node.get(key.symbolAt(i));
             if (node == null) {
                 return null;
             }
@@ -58,21 +69,24 @@ final class DiyTrie<E, K extends Collection<E>, V> {
         return new TreeIterator();
     }
 
-    private Node<E, K, V> computeIfAbsent(K key) {
-        Node<E, K, V> node = _root;
-        for (E keyElement : key) {
-            node = node.computeIfAbsent(keyElement);
+    private Node<V> computeIfAbsent(ClassPath key) {
+        Node<V> node = _root;
+        for (int i = 0, n = key.size(); i < n; ++i) {
+            node = node.computeIfAbsent(key.symbolAt(i));
         }
         return node;
     }
 
+    /**
+     * Position within the iteration. Instances are reused per depth, so they are only valid until the iteration has left the node.
+     */
     public static final class NodeContext<N> {
 
-        private final int _depth;
-        private final NodeContext<N> _parent;
-        private final N _node;
+        private int _depth;
+        private NodeContext<N> _parent;
+        private N _node;
 
-        public NodeContext(int depth, NodeContext<N> parent, N node) {
+        private void set(int depth, NodeContext<N> parent, N node) {
             _depth = depth;
             _parent = parent;
             _node = node;
@@ -93,18 +107,22 @@ final class DiyTrie<E, K extends Collection<E>, V> {
     }
 
 
-    static final class Node<E, K extends Collection<E>, V> {
+    static final class Node<V> {
+
+        private static final int[] NO_SYMBOLS = new int[0];
 
-        private final E _keyElement;
-        private Map<E, Node<E, K, V>> _next;
-        private K _key;
+        private final int _symbol;
+        private int[] _childSymbols = NO_SYMBOLS; // sorted
+        private Node<V>[] _children;
+        private int _size;
+        private ClassPath _key;
         private V _value;
 
-        private Node(E keyElement) {
-            _keyElement = keyElement;
+        private Node(int symbol) {
+            _symbol = symbol;
         }
 
-        public V computeIfAbsent(K key, Function<K, V> mappingFunction) {
+        public V computeIfAbsent(ClassPath key, Function<ClassPath, V> mappingFunction) {
             if (_key == null && _value == null) {
                 _key = key;
                 _value = mappingFunction.apply(key);
@@ -112,35 +130,58 @@ final class DiyTrie<E, K extends Collection<E>, V> {
             return _value;
         }
 
-        public Node<E, K, V> computeIfAbsent(E keyElement) {
-            if (_next == null) {
-                _next = new HashMap<>(1);
+        public Node<V> computeIfAbsent(int symbol) {
+            int index = Arrays.binarySearch(_childSymbols, 0, _size, symbol);
+            if (index >= 0) {
+                return _children[index];
             }
-            return _next.computeIfAbsent(keyElement, Node::new);
+
+            index = -index - 1;
+            if (_size == _childSymbols.length) {
+                int capacity = Math.max(2, _size << 1);
+                _childSymbols = Arrays.copyOf(_childSymbols, capacity);
+                _children = _children == null ? newNodes(capacity) : Arrays.copyOf(_children, capacity);
+            }
+            System.arraycopy(_childSymbols, index, _childSymbols, index + 1, _size - index);
+            System.arraycopy(_children, index, _children, index + 1, _size - index);
+
+            Node<V> child = new Node<>(symbol);
+            _childSymbols[index] = symbol;
+            _children[index] = child;
+            ++_size;
+            return child;
         }
 
-        public Set<Map.Entry<E, Node<E, K, V>>> entrySet() {
-            return _next == null ? Collections.emptySet() : _next.entrySet();
+        // generic arrays cannot be created; the array only ever holds nodes of this trie
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newNodes(int capacity) {
+            return (Node<T>[]) new Node<?>[capacity];
         }
 
         /**
          * Unused, untested; simply jotted down
          */
         @Nullable
-        public Node<E, K, V> get(E keyElement) {
-            if (_next == null) {
-                return null;
-            }
-            return _next.get(keyElement);
+        public Node<V> get(int symbol) {
+            int index = Arrays.binarySearch(_childSymbols, 0, _size, symbol);
+            return index >= 0 ? _children[index] : null;
+        }
+
+        Node<V> getChild(int index) {
+            return _children[index];
         }
 
         @Nullable
-        public K getKey() {
+        public ClassPath getKey() {
             return _key;
         }
 
-        public E getKeyElement() {
-            return _keyElement;
+        /**
+         * @return the class or label this node stands for, null for the root
+         */
+        @Nullable
+        public Object getKeyElement() {
+            return _symbol == NO_SYMBOL ? null : Symbols.get(_symbol);
         }
 
         @Nullable
@@ -153,104 +194,125 @@ final class DiyTrie<E, K extends Collection<E>, V> {
         }
 
         public boolean isEmpty() {
-            return _next == null;
-        }
-
-        public Iterator<? extends Node<E, K, V>> iterator() {
-            return (_next != null ? _next : Collections.<E, Node<E, K, V>>emptyMap()).values().iterator();
+            return _size == 0;
         }
 
         public int size() {
-            return _next == null ? 0 : _next.size();
-        }
-
-        public Collection<Node<E, K, V>> values() {
-            return _next == null ? Collections.emptyList() : _next.values();
+            return _size;
         }
-    }
-
-
-    private static final class Segment<N> {
 
-        private final Iterator<? extends N> _currentIterator;
-        private final NodeContext<N> _nodeContext;
-
-        public Segment(Iterator<? extends N> currentIterator, NodeContext<N> nodeContext) {
-            _currentIterator = currentIterator;
-            _nodeContext = nodeContext;
-        }
-
-        public Iterator<? extends N> getCurrentIterator() {
-            return _currentIterator;
-        }
-
-        public NodeContext<N> getNodeContext() {
-            return _nodeContext;
+        public List<Node<V>> values() {
+            return new AbstractList<>() {
+                @Override
+                public Node<V> get(int index) {
+                    if (index >= _size) {
+                        throw new IndexOutOfBoundsException(index);
+                    }
+                    return _children[index];
+                }
+
+                @Override
+                public int size() {
+                    return _size;
+                }
+            };
         }
     }
 
 
     /**
-     * In-order iteration with optional pre- and post-order operations.
+     * In-order iteration with optional pre- and post-order operations. Frames are kept in arrays indexed by depth, and contexts are
+     * reused, see {@link NodeContext}.
      */
-    public final class TreeIterator implements Iterator<NodeContext<Node<E, K, V>>> {
+    public final class TreeIterator implements Iterator<NodeContext<Node<V>>> {
 
-        private final Stack<Segment<Node<E, K, V>>> _stack = new Stack<>();
+        private NodeContext<Node<V>>[] _contexts;
+        private int[] _nextChild;
+        private int _top = -1;
 
-        private Consumer<NodeContext<Node<E, K, V>>> _preOrderOperation;
-        private Consumer<NodeContext<Node<E, K, V>>> _postOrderOperation;
+        private Consumer<NodeContext<Node<V>>> _preOrderOperation;
+        private Consumer<NodeContext<Node<V>>> _postOrderOperation;
+        private Predicate<Node<V>> _childFilter;
 
         public TreeIterator() {
-            push(_root, null); // root is never part of the payload, so we don't yield its context
+            _contexts = newContexts(1 << 4);
+            _nextChild = new int[1 << 4];
+            push(_root); // root is never part of the payload, so we don't yield its context
+        }
+
+        // generic arrays cannot be created; the array only ever holds contexts created by this iterator
+        @SuppressWarnings("unchecked")
+        private NodeContext<Node<V>>[] newContexts(int capacity) {
+            return (NodeContext<Node<V>>[]) new NodeContext<?>[capacity];
         }
 
         public boolean hasNext() {
-            while (!_stack.isEmpty() && !_stack.peek().getCurrentIterator().hasNext()) {
+            while (_top >= 0) {
+                final Node<V> parent = _contexts[_top].getNode();
+                int next = _nextChild[_top];
+                while (next < parent.size() && _childFilter != null && !_childFilter.test(parent.getChild(next))) {
+                    ++next;
+                }
+                _nextChild[_top] = next;
+                if (next < parent.size()) {
+                    return true;
+                }
                 pop();
             }
-            return !_stack.isEmpty() && _stack.peek().getCurrentIterator().hasNext();
+            return false;
         }
 
         @Override
-        public NodeContext<Node<E, K, V>> next() {
+        public NodeContext<Node<V>> next() {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
 
-            final Segment<Node<E, K, V>> segment = _stack.peek();
-            final NodeContext<Node<E, K, V>> parentContext = segment.getNodeContext();
-            final Node<E, K, V> parent = parentContext.getNode();
-            final Node<E, K, V> current = segment.getCurrentIterator().next();
+            final Node<V> parent = _contexts[_top].getNode();
+            final Node<V> current = parent.getChild(_nextChild[_top]++);
 
-            return push(current, parentContext);
+            return push(current);
         }
 
-        public NodeContext<Node<E, K, V>> push(Node<E, K, V> current, NodeContext<Node<E, K, V>> parentContext) {
-            final NodeContext<Node<E, K, V>> context = new NodeContext<>(getDepth(), parentContext, current);
+        public NodeContext<Node<V>> push(Node<V> current) {
+            final int level = ++_top;
+            if (level == _contexts.length) {
+                _contexts = Arrays.copyOf(_contexts, level << 1);
+                _nextChild = Arrays.copyOf(_nextChild, level << 1);
+            }
+            NodeContext<Node<V>> context = _contexts[level];
+            if (context == null) {
+                context = _contexts[level] = new NodeContext<>();
+            }
+            context.set(level - 1, level > 0 ? _contexts[level - 1] : null, current); // root is at depth -1
+            _nextChild[level] = 0;
+
             if (_preOrderOperation != null) {
                 _preOrderOperation.accept(context);
             }
-            _stack.push(new Segment<>(current.iterator(), context));
             return context;
         }
 
-        public TreeIterator withPostOrder(Consumer<NodeContext<Node<E, K, V>>> operation) {
+        public TreeIterator withPostOrder(Consumer<NodeContext<Node<V>>> operation) {
             _postOrderOperation = operation;
             return this;
         }
 
-        public TreeIterator withPreOrder(Consumer<NodeContext<Node<E, K, V>>> operation) {
-            _preOrderOperation = operation;
+        /**
+         * @param filter children failing it are skipped along with their subtrees, evaluated when the iteration reaches them
+         */
+        public TreeIterator withChildFilter(Predicate<Node<V>> filter) {
+            _childFilter = filter;
             return this;
         }
 
-        private int getDepth() {
-            return _stack.size() - 1; // subtract root
+        public TreeIterator withPreOrder(Consumer<NodeContext<Node<V>>> operation) {
+            _preOrderOperation = operation;
+            return this;
         }
 
         private void pop() {
-            final Segment<Node<E, K, V>> segment = _stack.pop();
-            final NodeContext<Node<E, K, V>> context = segment.getNodeContext();
+            final NodeContext<Node<V>> context = _contexts[_top--];
             if (_postOrderOperation != null) {
                 _postOrderOperation.accept(context);
             }
@@ -26,12 +26,31 @@ package org.openjdk.jol.addons;
 
 class Ellipsis extends PermNode {
 
+    static final String TERMINAL = " [...] (terminal)";
+    static final String TRUNCATED = " [...] (truncated)";
+
+    private final String marker;
+
     public Ellipsis(String label) {
+        this(label, TERMINAL);
+    }
+
+    public Ellipsis(String label, String marker) {
         super(label);
+        this.marker = marker;
     }
 
     @Override
     public String getArrayLabel() {
-        return " [...] (terminal)";
+        return marker;
+    }
+
+    boolean isTruncated() {
+        return TRUNCATED.equals(marker);
+    }
+
+    @Override
+    void printArrayLabel(ReportWriter w) {
+        w.append(marker);
     }
 }
@@ -26,4 +26,48 @@ package org.openjdk.jol.addons;
 
 class GatheringNode extends BaseNode {
 
-}
\ No newline at end of file
+    private boolean truncated;
+
+    // estimated count and size within the sampled array element being visited, relative to the weight of that element
+    private double elementCount;
+    private double elementSize;
+
+    @Override
+    protected void add(BaseNode other) {
+        super.add(other);
+        if (other instanceof GatheringNode && ((GatheringNode) other).truncated) {
+            truncated = true;
+        }
+    }
+
+    /**
+     * @return true if the subtree of at least one object aggregated here has not been traversed for lack of budget
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    void markTruncated() {
+        truncated = true;
+    }
+
+    /**
+     * @return true if this is the first addition since the element was begun
+     */
+    boolean addToElement(double count, double size) {
+        boolean first = elementCount == 0;
+        elementCount += count;
+        elementSize += size;
+        return first;
+    }
+
+    /**
+     * Account for the variance of the totals of a sampled element, which stand in for that many elements.
+     */
+    void endElement(long weight) {
+        double factor = (double) weight * (weight - 1);
+        setVariances(getCountVariance() + factor * elementCount * elementCount, getSizeVariance() + factor * elementSize * elementSize);
+        elementCount = 0;
+        elementSize = 0;
+    }
+}
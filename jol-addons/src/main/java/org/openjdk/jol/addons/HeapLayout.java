@@ -24,21 +24,35 @@
  */
 package org.openjdk.jol.addons;
 
-import org.openjdk.jol.info.ArraySizeCache;
 import org.openjdk.jol.info.HeapWalker;
 import org.openjdk.jol.info.VisitedIdentities;
 import org.openjdk.jol.util.SimpleStack;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.ToLongFunction;
 
 import static java.util.Comparator.comparingLong;
@@ -46,25 +60,49 @@ import static java.util.Comparator.comparingLong;
 
 public class HeapLayout extends HeapStats {
 
-    private final PermNode classHistogramRoot;
-    private final int classHistogramDepth;
+    static final int DEFAULT_CAPACITY = 1 << 5;
 
-    private final PermNode heapTreeRoot;
-    private final int heapTreeDepth;
+    // raw aggregates, converted on first use and released afterwards; null if not collected
+    private DiyTrie<BaseNode> classHistogramTrie;
+    private PermNode classHistogramRoot;
+    private int classHistogramDepth;
+
+    private DiyTrie<BaseNode> heapTreeTrie;
+    private PermNode heapTreeRoot;
+    private int heapTreeDepth;
 
     private final String description;
 
+    private final ReportPruning pruning;
+
+    private final long totalCount;
+    private final long totalSize;
 
-    HeapLayout(PermNode classHistogramRoot, int classHistogramDepth, String description, int heapTreeDepth, PermNode heapTreeRoot, HeapStats stats) {
+    private final boolean sampled;
+    private final boolean truncated;
 
-        this.classHistogramRoot = classHistogramRoot;
-        this.classHistogramDepth = classHistogramDepth;
+    @Nullable
+    private final HeapLayoutMetrics metrics;
 
-        this.heapTreeRoot = heapTreeRoot;
-        this.heapTreeDepth = heapTreeDepth;
+    HeapLayout(@Nullable DiyTrie<BaseNode> classHistogramTrie, @Nullable DiyTrie<BaseNode> heapTreeTrie, String description,
+               ReportPruning pruning, long totalCount, long totalSize, HeapStats stats, boolean sampled, boolean truncated,
+               @Nullable HeapLayoutMetrics metrics) {
+
+        this.classHistogramTrie = classHistogramTrie;
+        this.heapTreeTrie = heapTreeTrie;
 
         this.description = description;
 
+        this.pruning = pruning;
+
+        this.totalCount = totalCount;
+        this.totalSize = totalSize;
+
+        this.sampled = sampled;
+        this.truncated = truncated;
+
+        this.metrics = metrics;
+
         setContainerCapacities(stats.stackCapacity(), stats.identitySetCapacity(), stats.sizeCacheCapacity());
     }
 
@@ -91,11 +129,12 @@ public class HeapLayout extends HeapStats {
      */
     public static HeapLayout parseSimpleInstance(Object... roots) {
 
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
         InitialNodeFactory nodeFactory = new InitialNodeFactory(HistogramDeduplicator.instance(), 0);
         HeapLayout.Builder builder = new HeapWalker().getTree(HeapLayout.Builder::new,
                 nodeFactory::createFieldNode, nodeFactory::createArrayIndexNode, nodeFactory::recycleNode, roots);
 
-        return builder.build();
+        return build(builder, event);
     }
 
     /**
@@ -113,40 +152,135 @@ public class HeapLayout extends HeapStats {
                                            VisitedIdentities identitySet, int stackCapacity,
                                            int objectSizeCacheCapacity, Object... roots) {
 
-        ObjectSizeCache objectSizeCache = new ObjectSizeCache.WithObject2LongMap(objectSizeCacheCapacity);
-        ReferenceFieldCache referenceFieldCache = new ReferenceFieldCache.WithObject2LongMap(objectSizeCacheCapacity);
         SimpleStack<Object> stack = new SimpleStack<>(stackCapacity);
         InitialNodeFactory nodeFactory = new InitialNodeFactory(hd, stackCapacity);
 
-        return parseInstance(tc, identitySet, objectSizeCache, referenceFieldCache, stack, nodeFactory, roots);
+        return traverse(tc, new VisitedSet.WithVisitedIdentities(identitySet), new ReferenceFieldLayout.Cache(objectSizeCacheCapacity), null,
+                null, stack, nodeFactory, roots);
     }
 
     /**
      * Parse the object graph starting from the given instance(s).
      *
-     * @param tc              TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
-     * @param identitySet     prepared identity set
-     * @param objectSizeCache prepared object size cache
-     * @param stack           prepared node stack
-     * @param nodeFactory     prepared node factory
-     * @param roots           root instance(s) to start from
+     * @param tc                  TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param identitySet         prepared identity set
+     * @param objectSizeCache     prepared object size cache, consulted for instances other than arrays
+     * @param referenceFieldCache prepared reference field cache, consulted for reference fields
+     * @param stack               prepared node stack
+     * @param nodeFactory         prepared node factory
+     * @param roots               root instance(s) to start from
      * @return object graph
+     * @deprecated the other entry points read object sizes and field offsets from per-class layouts shared process-wide; use
+     * {@link #parseInstance(TraversalControl, HistogramDeduplicator, VisitedIdentities, int, int, Object...)} or a
+     * {@link HeapLayoutSession}, which keeps its layouts across runs
      */
+    @Deprecated
     public static HeapLayout parseInstance(TraversalControl tc, VisitedIdentities identitySet,
                                            ObjectSizeCache objectSizeCache, ReferenceFieldCache referenceFieldCache,
                                            SimpleStack<Object> stack, InitialNodeFactory nodeFactory,
                                            Object... roots) {
 
-        HeapLayout.Builder builder = new HeapWalker() //
-                .withConditionalRecursion(tc::isChildToBeTraversed) //
-                .withIdentitySet(identitySet) //
-                .withObjectSizeCache(objectSizeCache) //
-                .withReferenceFieldCache(referenceFieldCache) //
-                .withArraySizeCache(new ArraySizeCache.Precalculated()) //
-                .withStack(stack) //
-                .getTree(HeapLayout.Builder::new, nodeFactory::createFieldNode, nodeFactory::createArrayIndexNode, nodeFactory::recycleNode, roots);
+        return traverse(tc, new VisitedSet.WithVisitedIdentities(identitySet),
+                new ReferenceFieldLayout.Cache(Math.max(DEFAULT_CAPACITY, objectSizeCache.size())), objectSizeCache, referenceFieldCache, stack,
+                nodeFactory, roots);
+    }
+
+    private static HeapLayout traverse(TraversalControl tc, VisitedSet identitySet, ReferenceFieldLayout.Cache layouts,
+                                       @Nullable ObjectSizeCache objectSizeCache, @Nullable ReferenceFieldCache referenceFieldCache,
+                                       SimpleStack<Object> stack, InitialNodeFactory nodeFactory, Object... roots) {
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapLayout.Builder builder = new HeapLayout.Builder(roots);
+
+        HeapTraversal traversal = new HeapTraversal(tc, identitySet, layouts, stack, nodeFactory, builder).withCaches(objectSizeCache,
+                referenceFieldCache);
+        traversal.addRoots(roots);
+        traversal.run();
+        traversal.reportContainerCapacities();
+
+        return build(builder, event);
+    }
+
+    /**
+     * @param event started before the traversal filling the builder, or null unless recorded
+     */
+    static HeapLayout build(Builder builder, @Nullable HeapLayoutEvent event) {
+        HeapLayout layout = builder.build();
+        HeapLayoutEvent.commit(event, layout);
+        return layout;
+    }
+
+    /**
+     * Parse the object graph starting from the given instance(s), splitting the work across the given pool.
+     * <p>
+     * Work is split per root and per chunk of large reference arrays. Output equals that of the sequential traversal, with objects
+     * reachable along several paths attributed to the path the sequential traversal reaches them by; work that turns out to have
+     * reached a shared object too early is repeated, though, so graphs sharing a lot between their parts gain little.
+     *
+     * @param pool  pool to run the traversal in
+     * @param tc    TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param hd    HistogramDeduplicator to make sure the output is a lot less redundant but instead far more expressive
+     * @param roots root instance(s) to start from
+     * @return object graph
+     */
+    public static HeapLayout parseInstanceInParallel(ForkJoinPool pool, TraversalControl tc, HistogramDeduplicator hd, Object... roots) {
+        return ParallelHeapTraversal.parseInstance(pool, tc, hd, roots);
+    }
+
+    /**
+     * Parse the object graph starting from the given instance(s), walking only a fraction of the elements of large reference arrays, and
+     * extrapolating counts and sizes from the sample. Reports carry an error bound next to each row then.
+     * <p>
+     * This covers hash-based collections and lists backed by arrays, whereas linked structures are walked in full.
+     *
+     * @param tc             TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param hd             HistogramDeduplicator to make sure the output is a lot less redundant but instead far more expressive
+     * @param fraction       fraction of array elements to walk, rounded to the nearest inverse of an integer
+     * @param minArrayLength arrays shorter than this are walked in full
+     * @param roots          root instance(s) to start from
+     * @return object graph, with extrapolated counts and sizes
+     */
+    public static HeapLayout parseSampledInstance(TraversalControl tc, HistogramDeduplicator hd, double fraction, int minArrayLength, Object... roots) {
+        if (!(fraction > 0.0 && fraction <= 1.0)) {
+            throw new IllegalArgumentException("fraction must be within (0, 1]: " + fraction);
+        }
+        int stride = (int) Math.min(Integer.MAX_VALUE, Math.round(1.0 / fraction));
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapLayout.Builder builder = new HeapLayout.Builder(roots);
+        builder.setSampled(stride > 1);
 
-        return builder.build();
+        HeapTraversal traversal = new HeapTraversal(tc, new VisitedSet.WithReferenceOpenHashSet(DEFAULT_CAPACITY),
+                new ReferenceFieldLayout.Cache(DEFAULT_CAPACITY), new SimpleStack<>(DEFAULT_CAPACITY), new InitialNodeFactory(hd, DEFAULT_CAPACITY),
+                builder).withSampling(minArrayLength, stride);
+        traversal.addRoots(roots);
+        traversal.run();
+        traversal.reportContainerCapacities();
+
+        return build(builder, event);
+    }
+
+    /**
+     * Parse the object graph starting from the given instance(s), stopping early when the budget is spent.
+     *
+     * @param tc     TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param hd     HistogramDeduplicator to make sure the output is a lot less redundant but instead far more expressive
+     * @param budget limits on depth, object count and accumulated size
+     * @param roots  root instance(s) to start from
+     * @return object graph, possibly truncated
+     */
+    public static HeapLayout parseInstance(TraversalControl tc, HistogramDeduplicator hd, TraversalBudget budget, Object... roots) {
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapLayout.Builder builder = new HeapLayout.Builder(roots);
+
+        HeapTraversal traversal = new HeapTraversal(tc, new VisitedSet.WithReferenceOpenHashSet(DEFAULT_CAPACITY),
+                new ReferenceFieldLayout.Cache(DEFAULT_CAPACITY), new SimpleStack<>(DEFAULT_CAPACITY), new InitialNodeFactory(hd, DEFAULT_CAPACITY),
+                builder).withBudget(budget);
+        traversal.addRoots(roots);
+        traversal.run();
+        traversal.reportContainerCapacities();
+
+        return build(builder, event);
     }
 
     public HeapStats toStats() {
@@ -154,55 +288,254 @@ public class HeapLayout extends HeapStats {
     }
 
     public void toClassHistogramDrillDown(PrintWriter pw) {
-        classHistogram().toDrillDown(pw);
+        classHistogram().toDrillDown(new ReportWriter(pw).withMetrics(metrics));
     }
 
     public void toFootprint(PrintWriter pw) {
-        classHistogram().toFootprint(pw);
+        classHistogram().toFootprint(new ReportWriter(pw).withMetrics(metrics));
     }
 
     public void toHeapTreeDrillDown(PrintWriter pw) {
-        heapTree().toDrillDown(pw);
+        heapTree().toDrillDown(new ReportWriter(pw).withMetrics(metrics));
+    }
+
+    /**
+     * Same as {@link #toClassHistogramDrillDown(PrintWriter)}, encoded straight into the given channel.
+     */
+    public void toClassHistogramDrillDown(WritableByteChannel channel, Charset charset) throws IOException {
+        write(channel, charset, w -> classHistogram().toDrillDown(w));
+    }
+
+    /**
+     * Same as {@link #toFootprint(PrintWriter)}, encoded straight into the given channel.
+     */
+    public void toFootprint(WritableByteChannel channel, Charset charset) throws IOException {
+        write(channel, charset, w -> classHistogram().toFootprint(w));
+    }
+
+    /**
+     * Same as {@link #toHeapTreeDrillDown(PrintWriter)}, encoded straight into the given channel.
+     */
+    public void toHeapTreeDrillDown(WritableByteChannel channel, Charset charset) throws IOException {
+        write(channel, charset, w -> heapTree().toDrillDown(w));
+    }
+
+    /**
+     * Stream the class histogram drill-down as JSON, carrying all counts and sizes of each row.
+     */
+    public void toClassHistogramJson(OutputStream out) throws IOException {
+        PermNode root = materializeClassHistogram();
+        writeJson(out, json -> json.toTree(root, classHistogramDepth));
+    }
+
+    /**
+     * Stream the footprint as JSON, i.e. the first level of the class histogram.
+     */
+    public void toFootprintJson(OutputStream out) throws IOException {
+        PermNode root = materializeClassHistogram();
+        writeJson(out, json -> json.toFootprint(root, classHistogramDepth));
+    }
+
+    /**
+     * Stream the heap tree drill-down as JSON, carrying all counts and sizes of each row.
+     */
+    public void toHeapTreeJson(OutputStream out) throws IOException {
+        PermNode root = materializeHeapTree();
+        writeJson(out, json -> json.toTree(root, heapTreeDepth));
+    }
+
+    /**
+     * Stream the heap tree in the collapsed-stack format read by flame graph tools, one line of semicolon separated frames per row,
+     * e.g. {@code java.util.ArrayList;elementData;[Ljava.lang.Object;;[i];java.lang.String 48}.
+     *
+     * @param weight whether rows are weighted by their shallow size or count
+     */
+    public void toHeapTreeCollapsedStacks(OutputStream out, Weight weight) throws IOException {
+        PermNode root = materializeHeapTree();
+        write(Channels.newChannel(out), StandardCharsets.UTF_8, Locale.ROOT,
+                w -> new CollapsedStackReporter(w, weight).toCollapsedStacks(root, heapTreeDepth));
+    }
+
+    private void writeJson(OutputStream out, Consumer<JsonReporter> report) throws IOException {
+        try {
+            report.accept(new JsonReporter(out, description, sampled, truncated).withMetrics(metrics));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void write(WritableByteChannel channel, Charset charset, Consumer<ReportWriter> report) throws IOException {
+        write(channel, charset, Locale.getDefault(Locale.Category.FORMAT), report);
+    }
+
+    private void write(WritableByteChannel channel, Charset charset, Locale locale, Consumer<ReportWriter> report) throws IOException {
+        try {
+            report.accept(new ReportWriter(null, channel, charset, locale).withMetrics(metrics));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return true if the given view has been collected, and may be reported
+     */
+    public boolean hasView(View view) {
+        return view == View.CLASS_HISTOGRAM ? classHistogramTrie != null || classHistogramRoot != null
+                : heapTreeTrie != null || heapTreeRoot != null;
+    }
+
+    /**
+     * @return true if counts and sizes are extrapolated from a sample
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return true if the traversal stopped short of the full object graph for lack of budget
+     */
+    public boolean isTruncated() {
+        return truncated;
     }
 
     @Override
     public long totalCount() {
-        return heapTreeRoot.getTotalCount();
+        return totalCount;
     }
 
     @Override
     public long totalSize() {
-        return heapTreeRoot.getTotalSize();
+        return totalSize;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return depth of the class histogram, valid once materialized
+     */
+    int getClassHistogramDepth() {
+        return classHistogramDepth;
+    }
+
+    /**
+     * @return depth of the heap tree, valid once materialized
+     */
+    int getHeapTreeDepth() {
+        return heapTreeDepth;
+    }
+
+    /**
+     * Walk all rows of the given view in report order, materializing it if need be.
+     */
+    void forEachRow(View view, BiConsumer<PermNode, Integer> rows) {
+        if (view == View.CLASS_HISTOGRAM) {
+            NodeWithChildren.walk(materializeClassHistogram(), 0, NodeWithChildren.UNLIMITED, 0, rows, classHistogramDepth);
+        } else {
+            NodeWithChildren.walk(materializeHeapTree(), 0, NodeWithChildren.UNLIMITED, 0, rows, heapTreeDepth);
+        }
     }
 
     private ClassHistogramReporter classHistogram() {
-        return new ClassHistogramReporter(classHistogramRoot, classHistogramDepth, description);
+        return new ClassHistogramReporter(materializeClassHistogram(), classHistogramDepth, description, sampled);
     }
 
     private HeapTreeReporter heapTree() {
-        return new HeapTreeReporter(heapTreeRoot, heapTreeDepth);
+        return new HeapTreeReporter(materializeHeapTree(), heapTreeDepth, sampled);
+    }
+
+    synchronized PermNode materializeClassHistogram() {
+        if (classHistogramRoot == null) {
+            if (classHistogramTrie == null) {
+                throw new IllegalStateException("class histogram not collected");
+            }
+            final long start = metrics == null ? 0 : System.nanoTime();
+            IntSummaryStatistics depths = new IntSummaryStatistics();
+            classHistogramRoot = Builder.convertTrie(classHistogramTrie, true, false, Builder::getParentClassNameForClassHistogram,
+                    Builder::takeParentClassName, pruning, depths);
+            classHistogramDepth = Math.max(0, depths.getMax());
+            reportConversion(start, depths);
+            classHistogramTrie = null;
+        }
+        return classHistogramRoot;
     }
 
-    private static final class Builder implements HeapWalker.Graph<InitialNode> {
+    synchronized PermNode materializeHeapTree() {
+        if (heapTreeRoot == null) {
+            if (heapTreeTrie == null) {
+                throw new IllegalStateException("heap tree not collected");
+            }
+            final long start = metrics == null ? 0 : System.nanoTime();
+            IntSummaryStatistics depths = new IntSummaryStatistics();
+            heapTreeRoot = Builder.convertTrie(heapTreeTrie, true, true, Builder::getParentClassNameForHeapTree, Builder::takeLabel, pruning,
+                    depths);
+            heapTreeDepth = Math.max(0, depths.getMax());
+            reportConversion(start, depths);
+            heapTreeTrie = null;
+        }
+        return heapTreeRoot;
+    }
 
-        private static final int SHORTCUT_INIT_CAP = 1 << 9;  // avoid resizing in most cases; TODO: render configurable
+    private void reportConversion(long start, IntSummaryStatistics depths) {
+        if (metrics != null) {
+            metrics.onPhase(HeapLayoutMetrics.Phase.CONVERSION, System.nanoTime() - start, depths.getCount());
+        }
+    }
+
+    /**
+     * Views onto the aggregates; the footprint and the class histogram drill-down share the class histogram.
+     */
+    public enum View {
+        CLASS_HISTOGRAM,
+        HEAP_TREE;
+
+        /**
+         * @return a copy of the given views; unlike {@link EnumSet#copyOf(Collection)}, accepts any empty set
+         */
+        static EnumSet<View> copyOf(Set<View> views) {
+            return views.isEmpty() ? EnumSet.noneOf(View.class) : EnumSet.copyOf(views);
+        }
+    }
+
+    /**
+     * Measure of the rows of the collapsed stacks.
+     */
+    public enum Weight {
+        COUNT,
+        SIZE
+    }
+
+    static final class Builder implements HeapWalker.Graph<InitialNode> {
 
         private final String description;
 
         private final HeapStats stats = new HeapStats();
 
-        private final DiyTrie<Object, ClassPath, BaseNode> classHistogramDrillDown = new DiyTrie<>();
-        private final DiyTrie<Object, ClassPath, BaseNode> heapTreeDrillDown = new DiyTrie<>();
+        private DiyTrie<BaseNode> classHistogramDrillDown = new DiyTrie<>();
+        private DiyTrie<BaseNode> heapTreeDrillDown = new DiyTrie<>();
+
+        private ReportPruning pruning = ReportPruning.none();
 
-        // this greatly reduces number of hash lookups, and yields an opportunity to cache ClassPath hashCode,
-        // unlike Trie lookup which always looks at the contents one symbol at a time anyway
-        private final Map<ClassPath, BaseNode> classShortcut = new HashMap<>(SHORTCUT_INIT_CAP);
-        private final Map<ClassPath, BaseNode> heapShortcut = new HashMap<>(SHORTCUT_INIT_CAP);
+        private long totalCount;
+        private long totalSize;
 
         private boolean isArrayInfo;
 
+        private boolean sampled;
+        private long elementWeight; // of the sampled element whose subtree is being visited, 0 if none
+        private final List<GatheringNode> elementAggregates = new ArrayList<>();
+
+        private boolean truncated;
+
+        @Nullable
+        private HeapLayoutMetrics metrics;
+
         public Builder(Object... roots) {
+            description = describe(roots);
+        }
 
+        static String describe(Object... roots) {
             StringBuilder sb = new StringBuilder();
             boolean isFirst = true;
             for (Object root : roots) {
@@ -213,23 +546,93 @@ public class HeapLayout extends HeapStats {
                 }
                 sb.append(String.format("%s@%xd", root.getClass().getName(), System.identityHashCode(root)));
             }
-            description = sb.toString();
+            return sb.toString();
         }
 
         @Override
         public void addNode(InitialNode node) {
             isArrayInfo = node.isArrayInfo();
 
-            classShortcut.computeIfAbsent(node.getPath().getClassBasedOrder(), this::addToClassHistogramDrilldown).add(node);
-            heapShortcut.computeIfAbsent(node.getPath().getTreeBasedOrder(), this::addToHeapTreeDrilldown).add(node);
+            // paths are canonical per node factory, so they carry our accumulators once looked up; equal paths of distinct roots
+            // still meet in the tries
+            final ClassPathImpl path = node.getPath();
+            if (!path.isAggregatedBy(this)) {
+                path.setAggregates(this, addToDrilldown(classHistogramDrillDown, path.getClassBasedOrder()),
+                        addToDrilldown(heapTreeDrillDown, path.getTreeBasedOrder()));
+                if (path.isTruncated()) {
+                    markAggregatesTruncated(path);
+                }
+            }
+            final BaseNode classBasedAggregate = path.getClassBasedAggregate();
+            if (classBasedAggregate != null) {
+                classBasedAggregate.add(node);
+            }
+            final BaseNode treeBasedAggregate = path.getTreeBasedAggregate();
+            if (treeBasedAggregate != null) {
+                treeBasedAggregate.add(node);
+            }
+            if (elementWeight > 0) {
+                addToElement(classBasedAggregate, node);
+                addToElement(treeBasedAggregate, node);
+            }
+
+            totalCount += node.getCount();
+            totalSize += node.getSize();
         }
 
-        private BaseNode addToClassHistogramDrilldown(ClassPath path) {
-            return classHistogramDrillDown.computeIfAbsent(path, this::newGatheringNode);
+        /**
+         * Begin the subtree of a sampled array element not reached through another one. Everything in it is sampled together, so the
+         * variance of the estimates is that of the totals per such element rather than the sum of per-object variances.
+         *
+         * @param weight weight of the element
+         */
+        void beginSampledElement(long weight) {
+            elementWeight = weight;
+        }
+
+        void endSampledElement() {
+            for (GatheringNode aggregate : elementAggregates) {
+                aggregate.endElement(elementWeight);
+            }
+            elementAggregates.clear();
+            elementWeight = 0;
         }
 
-        private BaseNode addToHeapTreeDrilldown(ClassPath path) {
-            return heapTreeDrillDown.computeIfAbsent(path, this::newGatheringNode);
+        private void addToElement(@Nullable BaseNode aggregate, InitialNode node) {
+            if (aggregate instanceof GatheringNode) {
+                // nodes within the subtree may have been sampled further, standing in for a multiple of the element's weight
+                double share = (double) node.getWeight() / elementWeight;
+                if (((GatheringNode) aggregate).addToElement(share, share * (node.getSize() / node.getWeight()))) {
+                    elementAggregates.add((GatheringNode) aggregate);
+                }
+            }
+        }
+
+        /**
+         * Mark the rows of the path as truncated. The flag is kept on the aggregates the tries render, since a trie keeps only the first
+         * of several equal paths as its key; the path itself only holds it until aggregated.
+         */
+        void markTruncated(ClassPathImpl path) {
+            truncated = true;
+            if (path.isAggregatedBy(this)) {
+                markAggregatesTruncated(path);
+            } else {
+                path.markTruncated();
+            }
+        }
+
+        private static void markAggregatesTruncated(ClassPathImpl path) {
+            if (path.getClassBasedAggregate() instanceof GatheringNode) {
+                ((GatheringNode) path.getClassBasedAggregate()).markTruncated();
+            }
+            if (path.getTreeBasedAggregate() instanceof GatheringNode) {
+                ((GatheringNode) path.getTreeBasedAggregate()).markTruncated();
+            }
+        }
+
+        @Nullable
+        private BaseNode addToDrilldown(@Nullable DiyTrie<BaseNode> drillDown, ClassPath path) {
+            return drillDown == null ? null : drillDown.computeIfAbsent(path, this::newGatheringNode);
         }
 
         private BaseNode newGatheringNode(ClassPath ignored) {
@@ -241,15 +644,35 @@ public class HeapLayout extends HeapStats {
             stats.addRecord(size);
         }
 
+        /**
+         * Views are converted into reports lazily, on first use.
+         */
         public HeapLayout build() {
-            AtomicInteger classHistogramDepth = new AtomicInteger();
-            PermNode classHistogramRoot = convertTrie(classHistogramDrillDown, true, false, this::getParentClassNameForClassHistogram, this::takeParentClassName,
-                    classHistogramDepth);
+            return new HeapLayout(classHistogramDrillDown, heapTreeDrillDown, description, pruning, totalCount, totalSize, stats, sampled,
+                    truncated, metrics);
+        }
+
+        Builder withMetrics(@Nullable HeapLayoutMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
 
-            AtomicInteger heapTreeDepth = new AtomicInteger();
-            PermNode heapTreeRoot = convertTrie(heapTreeDrillDown, true, true, this::getParentClassNameForHeapTree, this::takeLabel, heapTreeDepth);
+        Builder withPruning(ReportPruning pruning) {
+            this.pruning = pruning;
+            return this;
+        }
 
-            return new HeapLayout(classHistogramRoot, classHistogramDepth.get(), description, heapTreeDepth.get(), heapTreeRoot, stats);
+        /**
+         * @param views views to collect aggregates for; must be called before the first node is added
+         */
+        Builder withViews(Set<View> views) {
+            if (!views.contains(View.CLASS_HISTOGRAM)) {
+                classHistogramDrillDown = null;
+            }
+            if (!views.contains(View.HEAP_TREE)) {
+                heapTreeDrillDown = null;
+            }
+            return this;
         }
 
         @Override
@@ -257,17 +680,54 @@ public class HeapLayout extends HeapStats {
             stats.setContainerCapacities(stackCapacity, identitySetCapacity, sizeCacheCapacity);
         }
 
-        private PermNode convertTrie(DiyTrie<Object, ClassPath, BaseNode> trie, boolean mergeSingleFieldRowIntoClass, boolean aggregate,
+        void setSampled(boolean sampled) {
+            this.sampled = sampled;
+        }
+
+        void setTruncated(boolean truncated) {
+            this.truncated = truncated;
+        }
+
+        /**
+         * Fold the aggregates gathered by another builder, e.g. the one of a parallel worker, into this one.
+         */
+        void merge(Builder other) {
+            mergeTrie(classHistogramDrillDown, other.classHistogramDrillDown);
+            mergeTrie(heapTreeDrillDown, other.heapTreeDrillDown);
+            stats.add(other.stats);
+            totalCount += other.totalCount;
+            totalSize += other.totalSize;
+            truncated |= other.truncated;
+        }
+
+        private static void mergeTrie(@Nullable DiyTrie<BaseNode> target, @Nullable DiyTrie<BaseNode> source) {
+            if (target == null || source == null) {
+                return;
+            }
+            source.iterator().forEachRemaining(nodeContext -> {
+                DiyTrie.Node<BaseNode> trieNode = nodeContext.getNode();
+                BaseNode gatheringNode = trieNode.getValue();
+                if (gatheringNode != null) {
+                    target.computeIfAbsent(trieNode.getKey(), ignored -> gatheringNode.isArrayInfo() ? new GatheringNodeForArray() : new GatheringNode())
+                            .add(gatheringNode);
+                }
+            });
+        }
+
+        static PermNode convertTrie(DiyTrie<BaseNode> trie, boolean mergeSingleFieldRowIntoClass, boolean aggregate,
                                      ParentClassNameRetrievalFunction getClassPath,
-                                     BiFunction<String, String, String> choosePrefix, AtomicInteger maxStackDepth) {
+                                     BiFunction<String, String, String> choosePrefix, ReportPruning pruning, IntSummaryStatistics depths) {
 
             AtomicReference<PermNode> root = new AtomicReference<>();
 
-            trie.iterator().withPreOrder(c -> {
+            if (pruning.isEnabled()) {
+                markPrunedRows(trie, aggregate, pruning);
+            }
 
-            }).withPostOrder(nodeContext -> {
+            trie.iterator().withChildFilter(trieNode -> !(trieNode.getValue() instanceof Summary)
+                    || !((Summary) trieNode.getValue()).isPruned()).withPostOrder(nodeContext -> {
 
-                DiyTrie.Node<Object, ClassPath, BaseNode> trieNode = nodeContext.getNode();
+                DiyTrie.Node<BaseNode> trieNode = nodeContext.getNode();
 
                 final Object key = trieNode.getKeyElement();
                 final boolean isRoot = key == null;
@@ -279,7 +739,9 @@ public class HeapLayout extends HeapStats {
 
                 final String label = isRoot ? "(total)" : isClass ? ((Class<?>) key).getName() : (String) key;
 
-                final BaseNode gatheringNode = trieNode.getValue();
+                final BaseNode value = trieNode.getValue();
+                final BaseNode gatheringNode = value instanceof Summary ? ((Summary) value).getGatheringNode() : value;
+                final boolean isTruncated = gatheringNode instanceof GatheringNode && ((GatheringNode) gatheringNode).isTruncated();
                 final boolean isEmptyRow = gatheringNode == null || gatheringNode.getCount() == 0;
                 final boolean relabelChildRow = mergeSingleFieldRowIntoClass && nodeContext.getDepth() > 0 && isClass && isEmptyRow && trieNode.size() == 1;
 
@@ -288,7 +750,8 @@ public class HeapLayout extends HeapStats {
                     permNode = trieNode.values().stream().map(DiyTrie.Node::getValue).map(PermNode.class::cast).findFirst().get();
                     permNode.setPrefix(choosePrefix.apply(label, parentClassName));
                 } else {
-                    permNode = createRegularPermNode(trieNode, gatheringNode, parentClassName, label, isRoot, isClass, isTerminalSymbol, isEmptyRow, aggregate);
+                    permNode = createRegularPermNode(trieNode, gatheringNode, parentClassName, label, isRoot, isClass, isTerminalSymbol, isTruncated, isEmptyRow,
+                            aggregate);
                 }
 
                 trieNode.setValue(permNode);
@@ -296,17 +759,19 @@ public class HeapLayout extends HeapStats {
                     root.set(permNode); // extract
                 }
 
-            }).forEachRemaining(c -> maxStackDepth.getAndUpdate(depth -> Math.max(depth, c.getDepth())));
+            }).forEachRemaining(c -> depths.accept(c.getDepth()));
 
             return root.get();
         }
 
         @Nonnull
-        private PermNode createRegularPermNode(DiyTrie.Node<Object, ClassPath, BaseNode> trieNode, BaseNode gatheringNode, String parentClassName, String label,
-                                               boolean isRoot, boolean isClass, boolean isTerminalSymbol, boolean isEmptyRow, boolean aggregate) {
+        private static PermNode createRegularPermNode(DiyTrie.Node<BaseNode> trieNode, BaseNode gatheringNode, String parentClassName, String label,
+                                               boolean isRoot, boolean isClass, boolean isTerminalSymbol, boolean isTruncated, boolean isEmptyRow,
+                                               boolean aggregate) {
 
             boolean isArray = gatheringNode != null && gatheringNode.isArrayInfo();
-            PermNode permNode = isTerminalSymbol ? new Ellipsis(label) : isArray ? new PermNodeForArray(label) : new PermNode(label);
+            PermNode permNode = isTerminalSymbol ? new Ellipsis(label) : isTruncated ? new Ellipsis(label, Ellipsis.TRUNCATED)
+                    : isArray ? new PermNodeForArray(label) : new PermNode(label);
 
             if (isEmptyRow) {  // row has no own values, substitute aggregation of children instead
                 trieNode.values().stream().map(DiyTrie.Node::getValue).forEach(permNode::add);
@@ -328,9 +793,17 @@ public class HeapLayout extends HeapStats {
         }
 
         @Nonnull
-        private PermNode[] getChildren(DiyTrie.Node<Object, ClassPath, BaseNode> trieNode, PermNode permNode, boolean aggregate, boolean emptyRow) {
+        private static PermNode[] getChildren(DiyTrie.Node<BaseNode> trieNode, PermNode permNode, boolean aggregate, boolean emptyRow) {
 
-            PermNode[] children = trieNode.values()
+            PermNode[] children = sortedChildren(trieNode);
+            if (aggregate) {
+                setRetainedChildTotals(permNode, children, emptyRow);
+            }
+            return foldPrunedRows(children);
+        }
+
+        private static PermNode[] sortedChildren(DiyTrie.Node<BaseNode> trieNode) {
+            return trieNode.values()
                     .stream()
                     .map(DiyTrie.Node::getValue)
                     .map(PermNode.class::cast)
@@ -339,28 +812,146 @@ public class HeapLayout extends HeapStats {
                             .thenComparing(PermNode::getCount)
                             .thenComparing(PermNode::getLabel))
                     .toArray(PermNode[]::new);
+        }
 
-            if (aggregate) {
-                ToLongFunction<PermNode> getSize;
-                ToLongFunction<PermNode> getCount;
-                if (emptyRow) {
-                    getSize = PermNode::getRetainedChildSize;
-                    getCount = PermNode::getRetainedChildCount;
+        private static void setRetainedChildTotals(PermNode permNode, PermNode[] children, boolean emptyRow) {
+            ToLongFunction<PermNode> getSize;
+            ToLongFunction<PermNode> getCount;
+            if (emptyRow) {
+                getSize = PermNode::getRetainedChildSize;
+                getCount = PermNode::getRetainedChildCount;
+            } else {
+                getSize = PermNode::getTotalSize;
+                getCount = PermNode::getTotalCount;
+            }
+            long childrenTotalSize = Arrays.stream(children).mapToLong(getSize).sum();
+            permNode.setRetainedChildSize(childrenTotalSize);
+            long childrenTotalCount = Arrays.stream(children).mapToLong(getCount).sum();
+            permNode.setRetainedChildCount(childrenTotalCount);
+        }
+
+        /**
+         * Computes the totals of every row ahead of the conversion, and marks the rows to be folded into "(others)" rows, so that
+         * {@link #convertTrie} neither descends into nor converts them. Totals are computed the same way as by the conversion.
+         */
+        private static void markPrunedRows(DiyTrie<BaseNode> trie, boolean aggregate, ReportPruning pruning) {
+            trie.iterator().withPostOrder(nodeContext -> {
+                DiyTrie.Node<BaseNode> trieNode = nodeContext.getNode();
+                final Object key = trieNode.getKeyElement();
+                final String label = key == null ? "(total)" : key instanceof Class<?> ? ((Class<?>) key).getName() : (String) key;
+
+                final BaseNode gatheringNode = trieNode.getValue();
+                final boolean isEmptyRow = gatheringNode == null || gatheringNode.getCount() == 0;
+                final Summary summary = new Summary(label, gatheringNode);
+                if (isEmptyRow) {
+                    trieNode.values().stream().map(DiyTrie.Node::getValue).forEach(summary::add);
                 } else {
-                    getSize = PermNode::getTotalSize;
-                    getCount = PermNode::getTotalCount;
+                    summary.add(gatheringNode);
+                }
+
+                if (!trieNode.isEmpty()) {
+                    PermNode[] children = sortedChildren(trieNode);
+                    if (aggregate) {
+                        setRetainedChildTotals(summary, children, isEmptyRow);
+                    }
+                    final int n = children.length;
+                    int kept = 0;
+                    while (kept < n && pruning.isKept(kept, children[n - 1 - kept].getTotalSize(), summary.getTotalSize())) {
+                        ++kept;
+                    }
+                    if (n - kept >= 2) {
+                        for (int i = 0; i < n - kept; ++i) {
+                            ((Summary) children[i]).markPruned();
+                        }
+                    }
                 }
-                long childrenTotalSize = Arrays.stream(children).mapToLong(getSize).sum();
-                permNode.setRetainedChildSize(childrenTotalSize);
-                long childrenTotalCount = Arrays.stream(children).mapToLong(getCount).sum();
-                permNode.setRetainedChildCount(childrenTotalCount);
+                trieNode.setValue(summary);
+            }).forEachRemaining(c -> {});
+        }
+
+        /**
+         * @param children sorted ascending, as printed in reverse
+         * @return the children kept, preceded by a row folding the pruned ones, if any
+         */
+        private static PermNode[] foldPrunedRows(PermNode[] children) {
+            int pruned = 0;
+            for (PermNode child : children) {
+                if (child instanceof Summary) {
+                    ++pruned;
+                }
+            }
+            if (pruned == 0) {
+                return children;
             }
 
-            return children;
+            PermNode others = new PermNode(ReportPruning.OTHERS_LABEL);
+            long retainedChildSize = 0;
+            long retainedChildCount = 0;
+            PermNode[] result = new PermNode[children.length - pruned + 1];
+            result[0] = others;
+            int kept = 1;
+            for (PermNode child : children) {
+                if (child instanceof Summary) {
+                    others.add(child);
+                    retainedChildSize += child.getRetainedChildSize();
+                    retainedChildCount += child.getRetainedChildCount();
+                } else {
+                    result[kept++] = child;
+                }
+            }
+            others.setRetainedChildSize(retainedChildSize);
+            others.setRetainedChildCount(retainedChildCount);
+            return result;
+        }
+
+        /**
+         * Totals of a row computed ahead of the conversion, standing in for the row if it is pruned. Carries array usage only for
+         * arrays, like the {@link PermNodeForArray} it stands in for.
+         */
+        private static final class Summary extends PermNodeForArray {
+
+            @Nullable
+            private final BaseNode gatheringNode;
+            private final boolean array;
+            private boolean pruned;
+
+            Summary(String label, @Nullable BaseNode gatheringNode) {
+                super(label);
+                this.gatheringNode = gatheringNode;
+                array = gatheringNode != null && gatheringNode.isArrayInfo();
+            }
+
+            @Nullable
+            BaseNode getGatheringNode() {
+                return gatheringNode;
+            }
+
+            boolean isPruned() {
+                return pruned;
+            }
+
+            void markPruned() {
+                pruned = true;
+            }
+
+            @Override
+            public boolean isArrayInfo() {
+                return array;
+            }
+
+            @Override
+            public long getLength() {
+                return array ? super.getLength() : 0;
+            }
+
+            @Override
+            public long getUsed() {
+                return array ? super.getUsed() : 0;
+            }
         }
 
         @Nonnull
-        private String getParentClassNameForClassHistogram(DiyTrie.NodeContext<DiyTrie.Node<Object, ClassPath, BaseNode>> nodeContext, boolean isRoot,
+        static String getParentClassNameForClassHistogram(DiyTrie.NodeContext<DiyTrie.Node<BaseNode>> nodeContext, boolean isRoot,
                                                            boolean isClass, ClassPath classPath) {
 
             if (nodeContext.getDepth() > 0) {
@@ -374,7 +965,7 @@ public class HeapLayout extends HeapStats {
         }
 
         @Nonnull
-        private String getParentClassNameForHeapTree(DiyTrie.NodeContext<DiyTrie.Node<Object, ClassPath, BaseNode>> nodeContext, boolean isRoot, boolean isClass,
+        static String getParentClassNameForHeapTree(DiyTrie.NodeContext<DiyTrie.Node<BaseNode>> nodeContext, boolean isRoot, boolean isClass,
                                                      ClassPath classPath) {
 
             if (!isRoot && !isClass) {
@@ -385,18 +976,18 @@ public class HeapLayout extends HeapStats {
             }
         }
 
-        private String takeLabel(String label, String parentClassName) {
+        static String takeLabel(String label, String parentClassName) {
             return label;
         }
 
-        private String takeParentClassName(String label, String parentClassName) {
+        static String takeParentClassName(String label, String parentClassName) {
             return parentClassName;
         }
 
 
         @FunctionalInterface
         private interface ParentClassNameRetrievalFunction {
-            String apply(DiyTrie.NodeContext<DiyTrie.Node<Object, ClassPath, BaseNode>> nodeContext, boolean isRoot, boolean isClass, ClassPath classPath);
+            String apply(DiyTrie.NodeContext<DiyTrie.Node<BaseNode>> nodeContext, boolean isRoot, boolean isClass, ClassPath classPath);
         }
 
     }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event per class among the {@link HeapLayoutEvent#TOP_CLASSES} largest of the footprint of a traversal. Disabled by
+ * default.
+ */
+@Name("org.openjdk.jol.addons.HeapLayoutClass")
+@Label("Heap Layout Class")
+@Category({"Java Object Layout"})
+@Description("Instances of one of the largest classes in a traversal by jol-addons")
+@Enabled(false)
+@StackTrace(false)
+final class HeapLayoutClassEvent extends Event {
+
+    @Label("Roots")
+    @Description("All roots of the traversal")
+    String roots;
+
+    @Label("Class")
+    String className;
+
+    @Label("Rank")
+    @Description("Position by size, 0 being the largest")
+    int rank;
+
+    @Label("Instances")
+    long count;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    static void commit(HeapLayout layout, PermNode node, int rank) {
+        HeapLayoutClassEvent event = new HeapLayoutClassEvent();
+        if (event.shouldCommit()) {
+            event.roots = layout.getDescription();
+            event.className = node.getLabel();
+            event.rank = rank;
+            event.count = node.getCount();
+            event.size = node.getSize();
+            event.commit();
+        }
+    }
+}
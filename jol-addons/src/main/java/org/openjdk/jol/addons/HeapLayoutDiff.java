@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+
+/**
+ * Change between two measurements of the same object graph, e.g. to pinpoint growth between two periodic runs, or against a stored
+ * {@link HeapLayoutSnapshot}.
+ * <p>
+ * Both views are aligned path by path: a row matches the row of the other measurement with the same label, prefix and parent class
+ * name below matching parents. Rows are looked up by a 64 bit key hashed from those of their parents, so aligning is linear in the
+ * number of rows of both sides. Reports list count and size before, after and their difference, children sorted by absolute size
+ * change, largest first. Measurements being sampled is not taken into account, so changes within their error bounds are noise.
+ */
+public final class HeapLayoutDiff {
+
+    private static final long ROOT_KEY = 0x9e3779b97f4a7c15L;
+
+    private final String description;
+    private final long totalCountBefore;
+    private final long totalSizeBefore;
+    private final long totalCountAfter;
+    private final long totalSizeAfter;
+
+    private final DiffNode classHistogram;
+    private final int classHistogramDepth;
+    private final Map<String, DiffNode> classes;
+
+    private final DiffNode heapTree;
+    private final int heapTreeDepth;
+
+    private HeapLayoutDiff(Side before, Side after, ReportPruning pruning) {
+        description = after.description;
+        totalCountBefore = before.totalCount;
+        totalSizeBefore = before.totalSize;
+        totalCountAfter = after.totalCount;
+        totalSizeAfter = after.totalSize;
+
+        Aligner classes = Aligner.align(HeapLayout.View.CLASS_HISTOGRAM, before, after, false, pruning);
+        classHistogram = classes == null ? null : classes.root;
+        classHistogramDepth = classes == null ? 0 : classes.maxDepth;
+        this.classes = new HashMap<>();
+        if (classHistogram != null) {
+            for (DiffNode node : classHistogram.getAllChildren()) {
+                this.classes.put(node.getOwnLabel(), node);
+            }
+        }
+
+        Aligner tree = Aligner.align(HeapLayout.View.HEAP_TREE, before, after, true, pruning);
+        heapTree = tree == null ? null : tree.root;
+        heapTreeDepth = tree == null ? 0 : tree.maxDepth;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long totalCountDelta() {
+        return totalCountAfter - totalCountBefore;
+    }
+
+    public long totalSizeDelta() {
+        return totalSizeAfter - totalSizeBefore;
+    }
+
+    /**
+     * @return true if the view was collected on both sides
+     */
+    public boolean hasView(HeapLayout.View view) {
+        return (view == HeapLayout.View.CLASS_HISTOGRAM ? classHistogram : heapTree) != null;
+    }
+
+    /**
+     * @param className name of the class as printed in the footprint, e.g. {@code [Ljava.lang.Object;}
+     * @return change in the number of instances, regardless of pruning
+     */
+    public long getClassCountDelta(String className) {
+        DiffNode node = findClass(className);
+        return node == null ? 0 : node.getCountDelta();
+    }
+
+    /**
+     * @param className name of the class as printed in the footprint, e.g. {@code [Ljava.lang.Object;}
+     * @return change in the shallow size of all instances, regardless of pruning
+     */
+    public long getClassSizeDelta(String className) {
+        DiffNode node = findClass(className);
+        return node == null ? 0 : node.getSizeDelta();
+    }
+
+    public void toClassHistogramDrillDown(PrintWriter pw) {
+        new HeapLayoutDiffReporter(requireView(classHistogram, "class histogram"), classHistogramDepth).toDrillDown(new ReportWriter(pw));
+    }
+
+    public void toFootprint(PrintWriter pw) {
+        new HeapLayoutDiffReporter(requireView(classHistogram, "class histogram"), classHistogramDepth)
+                .toFootprint(new ReportWriter(pw), description);
+    }
+
+    public void toHeapTreeDrillDown(PrintWriter pw) {
+        new HeapLayoutDiffReporter(requireView(heapTree, "heap tree"), heapTreeDepth).toDrillDown(new ReportWriter(pw));
+    }
+
+    private DiffNode findClass(String className) {
+        requireView(classHistogram, "class histogram");
+        return classes.get(className);
+    }
+
+    private static DiffNode requireView(DiffNode root, String name) {
+        if (root == null) {
+            throw new IllegalStateException(name + " not collected on both sides");
+        }
+        return root;
+    }
+
+    /**
+     * One measurement to compare, either live or stored.
+     */
+    private static final class Side {
+
+        final String description;
+        final long totalCount;
+        final long totalSize;
+        final Predicate<HeapLayout.View> hasView;
+        final BiConsumer<HeapLayout.View, BiConsumer<PermNode, Integer>> rows;
+
+        Side(String description, long totalCount, long totalSize, Predicate<HeapLayout.View> hasView,
+             BiConsumer<HeapLayout.View, BiConsumer<PermNode, Integer>> rows) {
+            this.description = description;
+            this.totalCount = totalCount;
+            this.totalSize = totalSize;
+            this.hasView = hasView;
+            this.rows = rows;
+        }
+
+        static Side of(HeapLayout layout) {
+            return new Side(layout.getDescription(), layout.totalCount(), layout.totalSize(), layout::hasView, layout::forEachRow);
+        }
+
+        static Side of(HeapLayoutSnapshot snapshot) {
+            return new Side(snapshot.getDescription(), snapshot.totalCount(), snapshot.totalSize(), snapshot::hasView,
+                    snapshot::forEachRow);
+        }
+    }
+
+    /**
+     * Merges the rows of both sides into one tree of {@link DiffNode}s, fed in walk order with their depths.
+     */
+    private static final class Aligner implements BiConsumer<PermNode, Integer> {
+
+        private final Long2ObjectMap<DiffNode> index = new Long2ObjectOpenHashMap<>();
+        private final boolean retained;
+
+        private DiffNode root;
+        private DiffNode[] path = new DiffNode[1 << 4];
+        private int maxDepth;
+        private boolean after;
+
+        private Aligner(boolean retained) {
+            this.retained = retained;
+        }
+
+        /**
+         * @param retained compare counts and sizes including those of the children, rather than the own ones
+         * @return null unless the view was collected on both sides
+         */
+        static Aligner align(HeapLayout.View view, Side before, Side after, boolean retained, ReportPruning pruning) {
+            if (!before.hasView.test(view) || !after.hasView.test(view)) {
+                return null;
+            }
+            Aligner aligner = new Aligner(retained);
+            before.rows.accept(view, aligner);
+            aligner.after = true;
+            after.rows.accept(view, aligner);
+
+            aligner.root.seal(pruning);
+            for (DiffNode node : aligner.index.values()) {
+                node.seal(pruning);
+            }
+            return aligner;
+        }
+
+        @Override
+        public void accept(PermNode row, Integer boxedDepth) {
+            final int depth = boxedDepth;
+            final DiffNode node;
+            if (depth == 0) {
+                // the roots match regardless of their labels, which may name the measurement
+                if (root == null) {
+                    root = new DiffNode(row, null, ROOT_KEY);
+                }
+                node = root;
+            } else {
+                node = lookup(path[depth - 1], row);
+            }
+            node.add(after, retained ? row.getTotalCount() : row.getCount(), retained ? row.getTotalSize() : row.getSize());
+
+            if (depth >= path.length) {
+                path = Arrays.copyOf(path, path.length << 1);
+            }
+            path[depth] = node;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private DiffNode lookup(DiffNode parent, PermNode row) {
+            long key = key(parent.getKey(), row);
+            for (; ; key = mix(key + ROOT_KEY)) { // probe on collisions, in the same sequence for both sides
+                DiffNode node = index.get(key);
+                if (node == null) {
+                    node = new DiffNode(row, parent, key);
+                    index.put(key, node);
+                    return node;
+                }
+                if (node.matches(parent, row)) {
+                    return node;
+                }
+            }
+        }
+
+        private static long key(long parentKey, PermNode row) {
+            long h = mix(parentKey ^ hash(row.getOwnLabel()));
+            h = mix(h + hash(row.getPrefix()));
+            return mix(h + hash(row.getParentClassName()));
+        }
+
+        private static long hash(String s) {
+            return s == null ? 0 : s.hashCode() * 0xc4ceb9fe1a85ec53L;
+        }
+
+        /**
+         * Finalizer of MurmurHash3
+         */
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    public static class Builder {
+
+        private ReportPruning pruning = ReportPruning.none();
+
+        public HeapLayoutDiff build(HeapLayout before, HeapLayout after) {
+            return new HeapLayoutDiff(Side.of(before), Side.of(after), pruning);
+        }
+
+        public HeapLayoutDiff build(HeapLayoutSnapshot before, HeapLayout after) {
+            return new HeapLayoutDiff(Side.of(before), Side.of(after), pruning);
+        }
+
+        public HeapLayoutDiff build(HeapLayoutSnapshot before, HeapLayoutSnapshot after) {
+            return new HeapLayoutDiff(Side.of(before), Side.of(after), pruning);
+        }
+
+        /**
+         * @param pruning limits on the rows of the reports, applied to the absolute size changes
+         */
+        public Builder withPruning(ReportPruning pruning) {
+            this.pruning = pruning;
+            return this;
+        }
+    }
+}
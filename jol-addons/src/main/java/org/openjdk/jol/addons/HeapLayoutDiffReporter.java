@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import com.google.common.base.Strings;
+
+
+final class HeapLayoutDiffReporter extends HeapLayoutReporter {
+
+    public HeapLayoutDiffReporter(DiffNode root, int stackDepth) {
+        super(root, stackDepth, false);
+    }
+
+    /**
+     * Get the stringly representation of the footprint change, i.e. the first level of the class histogram diff
+     *
+     * @param description headline of the report
+     */
+    public void toFootprint(ReportWriter w, String description) {
+        w.append(description).append(" footprint change:").newLine();
+        printHeadline(w);
+        printColumns((DiffNode) root, w);
+        w.append("   (total)").newLine();
+        NodeWithChildren.walk(root, 1, 1, -1, (node, depth) -> {
+            printColumns((DiffNode) node, w);
+            w.append("   ").append(Strings.isNullOrEmpty(node.getPrefix()) ? node.getLabel() : node.getPrefix()).newLine();
+        }, stackDepth);
+        w.flush();
+    }
+
+    @Override
+    protected void printHeadline(ReportWriter w) {
+        w.format("%15s %15s %15s %12s %12s %12s %15s", //
+                "COUNT BEFORE", "COUNT AFTER", "COUNT \u0394", "SIZE BEFORE", "SIZE AFTER", "SIZE \u0394", "RAW SIZE \u0394");
+        w.format("   %s%n", "DESCRIPTION");
+    }
+
+    @Override
+    protected void printRow(PermNode node, int depth, ReportWriter w) {
+        printColumns((DiffNode) node, w);
+        printLabel(node, depth, w);
+        w.newLine();
+    }
+
+    private static void printColumns(DiffNode node, ReportWriter w) {
+        w.integer(node.getCountBefore(), 15, true).append(' ') //
+                .integer(node.getCountAfter(), 15, true).append(' ') //
+                .signedInteger(node.getCountDelta(), 15, true).append(' ') //
+                .byteCount(node.getSizeBefore(), 12).append(' ') //
+                .byteCount(node.getSizeAfter(), 12).append(' ') //
+                .signedByteCount(node.getSizeDelta(), 12).append(' ') //
+                .signedInteger(node.getSizeDelta(), 15, true);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Flight recorder event spanning one traversal, from adding the roots to building the result, so traversal cost may be correlated with
+ * GC and latency in the same recording. Every entry point begins and commits one event around its traversal, including those building
+ * mere {@link HeapStats} or a {@link ClassHistogram}, and a parallel traversal records a single event rather than one per worker. The
+ * event of an {@link IncrementalHeapLayout} spans its slices, from the first to the last.
+ * <p>
+ * Nothing is allocated nor timed unless the event is enabled in a running recording. The optional {@link HeapLayoutRootEvent} and
+ * {@link HeapLayoutClassEvent} are emitted along with it when enabled, at the cost of materializing the heap tree or class histogram.
+ */
+@Name(HeapLayoutEvent.NAME)
+@Label("Heap Layout")
+@Category({"Java Object Layout"})
+@Description("Traversal of an object graph by jol-addons")
+final class HeapLayoutEvent extends Event {
+
+    static final String NAME = "org.openjdk.jol.addons.HeapLayout";
+
+    /**
+     * Number of the largest classes of the footprint to emit {@link HeapLayoutClassEvent}s for
+     */
+    static final int TOP_CLASSES = 10;
+
+    private static final EventType TYPE = EventType.getEventType(HeapLayoutEvent.class);
+    private static final EventType ROOT_TYPE = EventType.getEventType(HeapLayoutRootEvent.class);
+    private static final EventType CLASS_TYPE = EventType.getEventType(HeapLayoutClassEvent.class);
+
+    @Label("Roots")
+    String roots;
+
+    @Label("Objects")
+    @Description("Number of objects visited, extrapolated if sampled")
+    long objects;
+
+    @Label("Size")
+    @Description("Shallow size of the objects visited, extrapolated if sampled")
+    @DataAmount
+    long size;
+
+    @Label("Sampled")
+    boolean sampled;
+
+    @Label("Truncated")
+    @Description("Traversal stopped short of the full object graph for lack of budget")
+    boolean truncated;
+
+    @Label("Stack Capacity")
+    int stackCapacity;
+
+    @Label("Identity Set Capacity")
+    int identitySetCapacity;
+
+    @Label("Size Cache Capacity")
+    int sizeCacheCapacity;
+
+    /**
+     * @return a started event, or null unless it is enabled
+     */
+    @Nullable
+    static HeapLayoutEvent beginIfEnabled() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        HeapLayoutEvent event = new HeapLayoutEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit the event started for the given stats, which are neither sampled nor truncated.
+     */
+    static void commit(@Nullable HeapLayoutEvent event, HeapStats stats, Object... roots) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit(HeapLayout.Builder.describe(roots), stats, false, false);
+            }
+        }
+    }
+
+    /**
+     * Commit the event started for the given layout, followed by the per-root and per-class events if enabled.
+     */
+    static void commit(@Nullable HeapLayoutEvent event, HeapLayout layout) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit(layout.getDescription(), layout, layout.isSampled(), layout.isTruncated());
+            }
+        }
+
+        if (ROOT_TYPE.isEnabled() && layout.hasView(HeapLayout.View.HEAP_TREE)) {
+            PermNode[] roots = layout.materializeHeapTree().getChildren();
+            for (int i = roots == null ? 0 : roots.length - 1; i >= 0; --i) {
+                HeapLayoutRootEvent.commit(layout, roots[i]);
+            }
+        }
+        if (CLASS_TYPE.isEnabled() && layout.hasView(HeapLayout.View.CLASS_HISTOGRAM)) {
+            PermNode[] classes = layout.materializeClassHistogram().getChildren();
+            for (int i = classes == null ? 0 : classes.length - 1, rank = 0; i >= 0 && rank < TOP_CLASSES; --i, ++rank) {
+                HeapLayoutClassEvent.commit(layout, classes[i], rank);
+            }
+        }
+    }
+
+    private void commit(String roots, HeapStats stats, boolean sampled, boolean truncated) {
+        this.roots = roots;
+        objects = stats.totalCount();
+        size = stats.totalSize();
+        this.sampled = sampled;
+        this.truncated = truncated;
+        stackCapacity = stats.stackCapacity();
+        identitySetCapacity = stats.identitySetCapacity();
+        sizeCacheCapacity = stats.sizeCacheCapacity();
+        commit();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+
+/**
+ * Management interface of a {@link HeapLayoutRegistry}, to measure registered roots on demand, e.g. from JConsole or VisualVM.
+ * <p>
+ * Reports are rendered from cached measurements unless expired; concurrent requests for a root being measured wait for that measurement
+ * rather than starting another one.
+ */
+public interface HeapLayoutMBean {
+
+    /**
+     * @return names of the registered roots, sorted
+     */
+    String[] getRootNames();
+
+    /**
+     * @return time to live of measurements in milliseconds
+     */
+    long getTtlMillis();
+
+    /**
+     * Measure the given root now, unless it is being measured already.
+     *
+     * @return summary of the measurement
+     */
+    String measure(String name);
+
+    String footprint(String name);
+
+    String classHistogramDrillDown(String name);
+
+    String heapTreeDrillDown(String name);
+
+    String footprintJson(String name);
+
+    String classHistogramJson(String name);
+
+    String heapTreeJson(String name);
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+
+/**
+ * Listener for the cost of the phases of measurements, e.g. to export them to a metrics backend. Attach it to a
+ * {@link HeapLayoutSession} or an {@link IncrementalHeapLayout}; without a listener attached, nothing is timed.
+ * <p>
+ * All methods do nothing by default. They are called on the thread running the traversal resp. rendering the report, after the fact;
+ * implementations should be quick and must not throw. Cache and path counts are process-wide, so they include those of traversals
+ * running concurrently.
+ */
+public interface HeapLayoutMetrics {
+
+    enum Phase {
+        /**
+         * Walking the object graph, including the aggregation; counts objects visited
+         */
+        TRAVERSAL,
+        /**
+         * Aggregating visited objects into the views, estimated from a sample of one in
+         * {@value HeapTraversal#CLOCK_CHECK_INTERVAL} objects; counts objects aggregated
+         */
+        AGGREGATION,
+        /**
+         * Converting the aggregates into the rows of a view, on first use; counts the paths converted
+         */
+        CONVERSION,
+        /**
+         * Rendering a report; counts lines written
+         */
+        RENDERING
+    }
+
+    /**
+     * @param nanos elapsed time, summed over the slices of incremental traversals
+     * @param count number of items processed, see {@link Phase}
+     */
+    default void onPhase(Phase phase, long nanos, long count) {
+    }
+
+    /**
+     * @param objectsPerSecond objects visited per second of {@link Phase#TRAVERSAL}
+     */
+    default void onThroughput(double objectsPerSecond) {
+    }
+
+    /**
+     * @param lookups    objects looked up in the identity set of visited objects
+     * @param duplicates lookups of objects visited before, i.e. shared objects and cycles
+     * @param size       size of the identity set at the end of the traversal, to track its growth from run to run
+     */
+    default void onIdentitySet(long lookups, long duplicates, int size) {
+    }
+
+    /**
+     * @param hits   lookups of the per-class layouts of classes seen before; each object visited takes exactly one lookup, so hits and
+     *               misses add up to the objects visited
+     * @param misses lookups of classes not seen before by the cache of the traversal, e.g. of the session
+     */
+    default void onLayoutCache(long hits, long misses) {
+    }
+
+    /**
+     * @param created      paths created during the traversal; paths are cached by their parents, but each run starts from new
+     *                     root paths, so a run creates all of its paths anew
+     * @param deduplicated creations avoided by folding repeated segments into an existing path
+     */
+    default void onClassPaths(long created, long deduplicated) {
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * Background measurement of registered roots, each re-measured at an interval derived from its cost so that all of them together stay
+ * within a CPU budget, e.g. 1% of one core. Cheap roots are refreshed often, expensive ones rarely.
+ * <p>
+ * The budget is shared equally among the roots: a root whose last cycle of measurement and listener cost {@code c} is re-measured
+ * after {@code c * roots / budget}, but no sooner than the minimum interval. Cost is CPU time of the profiler's thread if the JVM
+ * supports measuring it, wall-clock time otherwise; it is predicted from a moving average of the cost per object times the number of
+ * objects last seen, so growing roots back off right away while jitter is smoothed out.
+ * <p>
+ * Measurements run one at a time on a single daemon thread, reusing one {@link HeapLayoutSession}.
+ */
+public final class HeapLayoutProfiler implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeapLayoutProfiler.class);
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    // weight of the latest cost per object in its moving average
+    private static final double SMOOTHING = 0.5;
+
+    public interface Listener {
+
+        /**
+         * Called on the profiler's thread; time spent here counts towards the cost of the root.
+         */
+        void onMeasurement(String name, HeapLayout layout);
+
+        /**
+         * Called on the profiler's thread if the root or the listener failed with a runtime exception; the root is measured again later
+         * anyway. Other throwables, e.g. errors, are logged instead, and the root is measured again later as well.
+         */
+        default void onFailure(String name, RuntimeException e) {
+        }
+    }
+
+    private final HeapLayoutSession session;
+    private final Listener listener;
+    private final double cpuBudget;
+    private final long minIntervalNanos;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+
+    private final ScheduledExecutorService executor;
+
+    private final ConcurrentMap<String, Root> roots = new ConcurrentHashMap<>();
+
+    private HeapLayoutProfiler(HeapLayoutSession session, Listener listener, double cpuBudget, long minIntervalNanos) {
+        this.session = session;
+        this.listener = listener;
+        this.cpuBudget = cpuBudget;
+        this.minIntervalNanos = minIntervalNanos;
+
+        final String threadName = "heap-layout-profiler-" + INSTANCES.incrementAndGet();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param name name of the root, replacing any root registered under the same name
+     * @param root supplies the instance to measure, once per measurement; measured right away and then at its interval
+     */
+    public void register(String name, Supplier<?> root) {
+        Root registered = new Root(name, root);
+        Root previous = roots.put(name, registered);
+        if (previous != null) {
+            previous.cancel();
+        }
+        registered.schedule(0);
+    }
+
+    public void unregister(String name) {
+        Root root = roots.remove(name);
+        if (root != null) {
+            root.cancel();
+        }
+    }
+
+    /**
+     * @return interval until the next measurement of the given root, or null unless measured yet
+     */
+    public Duration getInterval(String name) {
+        Root root = roots.get(name);
+        return root == null || root.interval < 0 ? null : Duration.ofNanos(root.interval);
+    }
+
+    /**
+     * Stop measuring. No further measurements are started, but one in progress, if any, runs to completion on the profiler's thread,
+     * including the call to the listener, since traversals do not check for interrupts.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        roots.clear();
+    }
+
+    /**
+     * @param cost      predicted cost of measuring the root
+     * @param roots     number of roots sharing the budget
+     * @param cpuBudget fraction of one core available to all roots
+     */
+    static long intervalFor(double cost, int roots, double cpuBudget, long minIntervalNanos) {
+        final double interval = cost * Math.max(1, roots) / cpuBudget;
+        return interval >= Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(minIntervalNanos, (long) interval);
+    }
+
+    private long now() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private void measure(Root root) {
+        if (roots.get(root.name) != root) {
+            return; // replaced or unregistered meanwhile
+        }
+
+        final long start = now();
+        long count = 0;
+        try {
+            HeapLayout layout = session.parseInstance(root.supplier.get());
+            count = layout.totalCount();
+            listener.onMeasurement(root.name, layout);
+        } catch (RuntimeException e) {
+            try {
+                listener.onFailure(root.name, e);
+            } catch (Throwable t) {
+                LOG.error("Listener failed on failure of {}", root.name, t);
+            }
+        } catch (Throwable t) {
+            // e.g. an error, which would otherwise end the schedule of the root silently
+            LOG.error("Measurement of {} failed", root.name, t);
+        }
+        root.update(now() - start, count);
+        root.schedule(intervalFor(root.predictedCost, roots.size(), cpuBudget, minIntervalNanos));
+    }
+
+    private final class Root {
+
+        private final String name;
+        private final Supplier<?> supplier;
+
+        // confined to the profiler's thread, apart from reading the interval
+        private double nanosPerObject = Double.NaN;
+        private double predictedCost;
+        private volatile long interval = -1;
+        private volatile ScheduledFuture<?> next;
+
+        Root(String name, Supplier<?> supplier) {
+            this.name = name;
+            this.supplier = supplier;
+        }
+
+        void update(long cost, long count) {
+            if (count > 0) {
+                final double latest = (double) cost / count;
+                nanosPerObject = Double.isNaN(nanosPerObject) ? latest : SMOOTHING * latest + (1 - SMOOTHING) * nanosPerObject;
+                predictedCost = nanosPerObject * count;
+            } else {
+                predictedCost = cost;
+            }
+        }
+
+        void schedule(long delay) {
+            if (delay > 0) {
+                interval = delay;
+            }
+            try {
+                next = executor.schedule(() -> measure(this), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = next;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private TraversalControl traversalControl = TraversalControl.instance();
+        private HistogramDeduplicator histogramDeduplicator = HistogramDeduplicator.instance();
+        private Set<HeapLayout.View> views = EnumSet.allOf(HeapLayout.View.class);
+        private ReportPruning pruning = ReportPruning.none();
+        private double cpuBudget = 0.01;
+        private Duration minInterval = Duration.ofSeconds(1);
+
+        /**
+         * @param listener receives each measurement
+         */
+        public HeapLayoutProfiler build(Listener listener) {
+            HeapLayoutSession session = new HeapLayoutSession(traversalControl, histogramDeduplicator).withViews(views).withPruning(pruning);
+            return new HeapLayoutProfiler(session, listener, cpuBudget, minInterval.toNanos());
+        }
+
+        /**
+         * @param cpuBudget fraction of one core to spend on all roots together, e.g. 0.01 for 1%
+         */
+        public Builder withCpuBudget(double cpuBudget) {
+            if (!(cpuBudget > 0.0 && cpuBudget <= 1.0)) {
+                throw new IllegalArgumentException("cpuBudget must be within (0, 1]: " + cpuBudget);
+            }
+            this.cpuBudget = cpuBudget;
+            return this;
+        }
+
+        public Builder withHistogramDeduplicator(HistogramDeduplicator histogramDeduplicator) {
+            this.histogramDeduplicator = histogramDeduplicator;
+            return this;
+        }
+
+        /**
+         * @param minInterval interval no root is measured more often than, however cheap
+         */
+        public Builder withMinInterval(Duration minInterval) {
+            if (minInterval.isNegative()) {
+                throw new IllegalArgumentException("minInterval must not be negative: " + minInterval);
+            }
+            this.minInterval = minInterval;
+            return this;
+        }
+
+        /**
+         * @param pruning limits on the rows of the reports
+         */
+        public Builder withPruning(ReportPruning pruning) {
+            this.pruning = pruning;
+            return this;
+        }
+
+        public Builder withTraversalControl(TraversalControl traversalControl) {
+            this.traversalControl = traversalControl;
+            return this;
+        }
+
+        /**
+         * @param views views to collect, e.g. only the class histogram if just footprints are needed
+         */
+        public Builder withViews(Set<HeapLayout.View> views) {
+            this.views = HeapLayout.View.copyOf(views);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+
+/**
+ * Named roots to be measured on demand, e.g. by operators through the {@link HeapLayoutMBean} registered on the platform MBean server.
+ * <p>
+ * Measurements are cached for the configured time to live. Concurrent requests for the same root coalesce into a single traversal, and
+ * traversals of different roots run one at a time, sharing one {@link HeapLayoutSession}, so a burst of requests never starts more than
+ * one walk of the heap.
+ */
+public final class HeapLayoutRegistry implements HeapLayoutMBean {
+
+    public static final String OBJECT_NAME = "org.openjdk.jol.addons:type=HeapLayout";
+
+    private final HeapLayoutSession session;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private HeapLayoutRegistry(HeapLayoutSession session, long ttlNanos, LongSupplier clock) {
+        this.session = session;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param name name of the root, replacing any root registered under the same name along with its cached measurement
+     * @param root supplies the instance to measure, once per measurement
+     */
+    public void register(String name, Supplier<?> root) {
+        entries.put(name, new Entry(root));
+    }
+
+    public void unregister(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * Register this registry on the platform MBean server under {@link #OBJECT_NAME}.
+     */
+    public ObjectName registerMBean() throws JMException {
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        registerMBean(ManagementFactory.getPlatformMBeanServer(), objectName);
+        return objectName;
+    }
+
+    public void registerMBean(MBeanServer server, ObjectName objectName) throws JMException {
+        server.registerMBean(new StandardMBean(this, HeapLayoutMBean.class), objectName);
+    }
+
+    /**
+     * @return the cached measurement of the given root, unless expired, or a new one
+     * @throws IllegalArgumentException if no root is registered under the given name
+     */
+    public HeapLayout getLayout(String name) {
+        return entry(name).get(false);
+    }
+
+    @Override
+    public String[] getRootNames() {
+        return entries.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    @Override
+    public long getTtlMillis() {
+        return Duration.ofNanos(ttlNanos).toMillis();
+    }
+
+    @Override
+    public String measure(String name) {
+        HeapLayout layout = entry(name).get(true);
+        return layout.getDescription() + ": " + layout.totalCount() + " objects, " + HeapLayout.humanReadableByteCountBin(layout.totalSize());
+    }
+
+    @Override
+    public String footprint(String name) {
+        return render(getLayout(name), HeapLayout::toFootprint);
+    }
+
+    @Override
+    public String classHistogramDrillDown(String name) {
+        return render(getLayout(name), HeapLayout::toClassHistogramDrillDown);
+    }
+
+    @Override
+    public String heapTreeDrillDown(String name) {
+        return render(getLayout(name), HeapLayout::toHeapTreeDrillDown);
+    }
+
+    @Override
+    public String footprintJson(String name) {
+        return renderJson(getLayout(name), HeapLayout::toFootprintJson);
+    }
+
+    @Override
+    public String classHistogramJson(String name) {
+        return renderJson(getLayout(name), HeapLayout::toClassHistogramJson);
+    }
+
+    @Override
+    public String heapTreeJson(String name) {
+        return renderJson(getLayout(name), HeapLayout::toHeapTreeJson);
+    }
+
+    private Entry entry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("no root registered as " + name);
+        }
+        return entry;
+    }
+
+    private static String render(HeapLayout layout, BiConsumer<HeapLayout, PrintWriter> report) {
+        StringWriter out = new StringWriter();
+        report.accept(layout, new PrintWriter(out));
+        return out.toString();
+    }
+
+    private static String renderJson(HeapLayout layout, JsonReport report) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            report.write(layout, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface JsonReport {
+        void write(HeapLayout layout, OutputStream out) throws IOException;
+    }
+
+    /**
+     * A registered root along with its latest measurement, which is in flight while its future is not done.
+     */
+    private final class Entry {
+
+        private final Supplier<?> root;
+
+        private CompletableFuture<HeapLayout> measurement;
+        private long measuredAt;
+
+        Entry(Supplier<?> root) {
+            this.root = root;
+        }
+
+        /**
+         * @param refresh measure anew unless a measurement is in flight, regardless of the cached one
+         */
+        HeapLayout get(boolean refresh) {
+            final CompletableFuture<HeapLayout> future;
+            final boolean owner;
+            synchronized (this) {
+                if (measurement == null || measurement.isDone() && (refresh || measurement.isCompletedExceptionally()
+                        || clock.getAsLong() - measuredAt >= ttlNanos)) {
+                    measurement = new CompletableFuture<>();
+                    owner = true;
+                } else {
+                    owner = false;
+                }
+                future = measurement;
+            }
+
+            if (owner) {
+                try {
+                    HeapLayout layout = session.parseInstance(root.get());
+                    synchronized (this) {
+                        measuredAt = clock.getAsLong();
+                    }
+                    future.complete(layout);
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private TraversalControl traversalControl = TraversalControl.instance();
+        private HistogramDeduplicator histogramDeduplicator = HistogramDeduplicator.instance();
+        private ReportPruning pruning = ReportPruning.none();
+        private Duration ttl = Duration.ofMinutes(1);
+        private LongSupplier clock = System::nanoTime;
+
+        public HeapLayoutRegistry build() {
+            return new HeapLayoutRegistry(new HeapLayoutSession(traversalControl, histogramDeduplicator).withPruning(pruning), ttl.toNanos(),
+                    clock);
+        }
+
+        public Builder withHistogramDeduplicator(HistogramDeduplicator histogramDeduplicator) {
+            this.histogramDeduplicator = histogramDeduplicator;
+            return this;
+        }
+
+        /**
+         * @param pruning limits on the rows of the reports
+         */
+        public Builder withPruning(ReportPruning pruning) {
+            this.pruning = pruning;
+            return this;
+        }
+
+        public Builder withTraversalControl(TraversalControl traversalControl) {
+            this.traversalControl = traversalControl;
+            return this;
+        }
+
+        /**
+         * @param ttl time a measurement is reused for; zero to coalesce concurrent requests only
+         */
+        public Builder withTtl(Duration ttl) {
+            if (ttl.isNegative()) {
+                throw new IllegalArgumentException("ttl must not be negative: " + ttl);
+            }
+            this.ttl = ttl;
+            return this;
+        }
+
+        Builder withClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+    }
+}
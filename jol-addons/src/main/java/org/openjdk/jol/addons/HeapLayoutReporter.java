@@ -24,10 +24,13 @@
  */
 package org.openjdk.jol.addons;
 
+import com.google.common.base.Strings;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.IntFunction;
 
 
@@ -52,11 +55,14 @@ abstract class HeapLayoutReporter {
 
     protected final int stackDepth;
 
+    protected final boolean withErrorBounds;
+
     private final TIntObjectMap<String> cachedIndents = new TIntObjectHashMap<>();
 
-    public HeapLayoutReporter(PermNode root, int stackDepth) {
+    public HeapLayoutReporter(PermNode root, int stackDepth, boolean withErrorBounds) {
         this.root = root;
         this.stackDepth = stackDepth;
+        this.withErrorBounds = withErrorBounds;
     }
 
     private static <V> V computeIfAbsent(TIntObjectMap<V> map, int key, IntFunction<V> keyMapper) {
@@ -73,9 +79,21 @@ abstract class HeapLayoutReporter {
         return MARGIN + INDENT_VERTICAL.repeat(depth - 1) + INDENT_HORIZONTAL;
     }
 
-    public void toDrillDown(PrintWriter pw) {
-        printHeadline(pw);
-        NodeWithChildren.walk(root, 0, NodeWithChildren.UNLIMITED, 0, (n, d) -> printRow(n, d, pw), stackDepth);
+    public void toDrillDown(Writer writer) {
+        toDrillDown(new ReportWriter(writer));
+    }
+
+    public void toDrillDown(ReportWriter w) {
+        toDrillDown(w, row -> NodeWithChildren.walk(root, 0, NodeWithChildren.UNLIMITED, 0, row, stackDepth));
+    }
+
+    /**
+     * @param rows supplies all rows with their depths in walk order, e.g. decoded from a snapshot
+     */
+    void toDrillDown(ReportWriter w, Consumer<BiConsumer<PermNode, Integer>> rows) {
+        printHeadline(w);
+        rows.accept((n, d) -> printRow(n, d, w));
+        w.flush();
     }
 
     protected String getIndentFor(int depth) {
@@ -84,7 +102,30 @@ abstract class HeapLayoutReporter {
         return computeIfAbsent(cachedIndents, depth, HeapLayoutReporter::createIndentFor);
     }
 
-    protected abstract void printHeadline(PrintWriter pw);
+    protected void printErrorBoundsHeadline(ReportWriter w) {
+        if (withErrorBounds) {
+            w.format(" %12s %10s", "\u00b195% CT", "\u00b195% SZ");
+        }
+    }
+
+    protected void printErrorBounds(PermNode node, ReportWriter w) {
+        if (withErrorBounds) {
+            w.append(' ').integer(node.getCountErrorBound(), 12, true).append(' ').byteCount(node.getSizeErrorBound(), 10);
+        }
+    }
+
+    protected void printLabel(PermNode node, int depth, ReportWriter w) {
+        w.append("   ").append(getIndentFor(depth));
+        if (!Strings.isNullOrEmpty(node.getPrefix())) {
+            w.append(node.getPrefix()).append(' ');
+        }
+        if (!Strings.isNullOrEmpty(node.getParentClassName())) {
+            w.append(node.getParentClassName()).append('.');
+        }
+        w.append(String.valueOf(node.getOwnLabel()));
+    }
+
+    protected abstract void printHeadline(ReportWriter w);
 
-    protected abstract void printRow(PermNode node, int depth, PrintWriter pw);
+    protected abstract void printRow(PermNode node, int depth, ReportWriter w);
 }
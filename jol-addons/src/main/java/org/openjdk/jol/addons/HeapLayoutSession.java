@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.openjdk.jol.util.SimpleStack;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * Long-lived context for periodic measurements, keeping the layouts of the classes seen, i.e. their sizes and field offsets, warm, and
+ * reusing stack, node recyclers and identity set from one run to the next. Container capacities observed in each run are fed into the
+ * next one.
+ * <p>
+ * Runs are serialized; concurrent callers wait for each other.
+ */
+public final class HeapLayoutSession {
+
+    private static final int INITIAL_CAPACITY = 1 << 5;
+
+    private final TraversalControl tc;
+    private final HistogramDeduplicator hd;
+
+    private final ReferenceFieldLayout.Cache layouts;
+    private final SimpleStack<Object> stack;
+    private final InitialNodeFactory nodeFactory;
+    private final VisitedSet.Queryable identitySet;
+
+    private Set<HeapLayout.View> views = EnumSet.allOf(HeapLayout.View.class);
+
+    private ReportPruning pruning = ReportPruning.none();
+
+    private HeapLayoutMetrics metrics;
+
+    private HeapStats lastStats;
+
+    public HeapLayoutSession(TraversalControl tc, HistogramDeduplicator hd) {
+        this(tc, hd, INITIAL_CAPACITY, INITIAL_CAPACITY, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param tc                      TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param hd                      HistogramDeduplicator to make sure the output is a lot less redundant but instead far more expressive
+     * @param stackCapacity           a guesstimate to reduce incremental growth costs of the first run
+     * @param identitySetCapacity     a guesstimate to reduce incremental growth costs of the first run
+     * @param objectSizeCacheCapacity a guesstimate to reduce incremental growth costs of the first run
+     */
+    public HeapLayoutSession(TraversalControl tc, HistogramDeduplicator hd, int stackCapacity, int identitySetCapacity, int objectSizeCacheCapacity) {
+        this.tc = tc;
+        this.hd = hd;
+
+        layouts = new ReferenceFieldLayout.Cache(objectSizeCacheCapacity);
+        stack = new SimpleStack<>(stackCapacity);
+        nodeFactory = new InitialNodeFactory(hd, stackCapacity);
+        identitySet = new VisitedSet.WithReferenceOpenHashSet(identitySetCapacity);
+    }
+
+    /**
+     * @param views views to collect in subsequent runs of {@link #parseInstance(Object...)}, e.g. only the class histogram if just
+     *              footprints are needed
+     */
+    public synchronized HeapLayoutSession withViews(Set<HeapLayout.View> views) {
+        this.views = HeapLayout.View.copyOf(views);
+        return this;
+    }
+
+    /**
+     * @param pruning limits on the rows of the reports of subsequent runs of {@link #parseInstance(Object...)}
+     */
+    public synchronized HeapLayoutSession withPruning(ReportPruning pruning) {
+        this.pruning = pruning;
+        return this;
+    }
+
+    /**
+     * @param metrics listener for the cost of subsequent runs of {@link #parseInstance(Object...)} and of rendering their reports, or
+     *                null to measure nothing
+     */
+    public synchronized HeapLayoutSession withMetrics(HeapLayoutMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Parse the object graph starting from the given instance(s).
+     *
+     * @param roots root instance(s) to start from
+     * @return object graph
+     */
+    public synchronized HeapLayout parseInstance(Object... roots) {
+        prepare();
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapLayout.Builder builder = new HeapLayout.Builder(roots).withViews(views).withPruning(pruning).withMetrics(metrics);
+        run(new HeapTraversal(tc, identitySet, layouts, stack, nodeFactory, builder).withMetrics(metrics), roots);
+        HeapLayout layout = HeapLayout.build(builder, event);
+
+        lastStats = layout.toStats();
+        return layout;
+    }
+
+    /**
+     * Parse the object stats starting from the given instance(s).
+     *
+     * @param roots root instance(s) to start from
+     * @return object stats
+     */
+    public synchronized HeapStats parseStats(Object... roots) {
+        prepare();
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapStats stats = new HeapStats(roots);
+        run(new HeapTraversal(tc, identitySet, layouts, stack, stats), roots);
+        HeapLayoutEvent.commit(event, stats, roots);
+
+        lastStats = stats;
+        return stats;
+    }
+
+    /**
+     * Parse the flat class histogram starting from the given instance(s).
+     *
+     * @param roots root instance(s) to start from
+     * @return class histogram
+     */
+    public synchronized ClassHistogram parseHistogram(Object... roots) {
+        prepare();
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        ClassHistogram histogram = new ClassHistogram(layouts, roots);
+        run(new HeapTraversal(tc, identitySet, layouts, stack, histogram), roots);
+        HeapLayoutEvent.commit(event, histogram, roots);
+
+        lastStats = histogram;
+        return histogram;
+    }
+
+    /**
+     * @return stats of the most recent run, or null if there was none yet
+     */
+    public synchronized HeapStats getLastStats() {
+        return lastStats;
+    }
+
+    private void prepare() {
+        // the stack is drained after each run, retaining its grown capacity, whereas the identity set may have to shrink
+        if (lastStats != null) {
+            identitySet.clear(lastStats.identitySetCapacity());
+        }
+    }
+
+    private void run(HeapTraversal traversal, Object... roots) {
+        try {
+            traversal.addRoots(roots);
+            traversal.run();
+            traversal.reportContainerCapacities();
+            traversal.reportMetrics();
+        } finally {
+            identitySet.clear(); // don't retain the measured objects until the next run
+            while (!stack.isEmpty()) {
+                stack.pop();
+            }
+        }
+    }
+}
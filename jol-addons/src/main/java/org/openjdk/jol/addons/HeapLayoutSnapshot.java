@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Compact binary form of a {@link HeapLayout} for keeping many of them around, read through a memory mapping.
+ * <p>
+ * The file consists of a fixed size header, the rows of the class histogram and the heap tree as varint encoded records in the order
+ * the text reports print them, a symbol table holding each distinct label once, and an index of the symbols and of the footprint rows.
+ * Reports are re-rendered row by row straight from the mapping, and classes are looked up by binary search, so opening a snapshot
+ * costs next to nothing and the heap only ever holds the rows on the path to the current one.
+ * <p>
+ * Sizes are stored in bytes, whereas the in-memory layout keeps them in units of the object alignment; reading a snapshot taken on a VM
+ * with coarser alignment on one with finer alignment is fine, the converse may lose precision. Snapshots are immutable; instances may be
+ * shared between threads.
+ */
+public final class HeapLayoutSnapshot {
+
+    private static final int MAGIC = 0x4a4f4c53; // "JOLS"
+    private static final short VERSION = 1;
+
+    private static final int FLAG_SAMPLED = 1;
+    private static final int FLAG_TRUNCATED = 2;
+
+    private static final int ROW_ARRAY = 1;
+    private static final int ROW_TERMINAL = 2;
+    private static final int ROW_TRUNCATED = 4;
+    private static final int ROW_PREFIX = 8;
+    private static final int ROW_PARENT_CLASS_NAME = 16;
+    private static final int ROW_VARIANCES = 32;
+
+    // header layout
+    private static final int AT_FLAGS = 6;
+    private static final int AT_TOTAL_COUNT = 8;
+    private static final int AT_TOTAL_SIZE = 16;
+    private static final int AT_DESCRIPTION = 24;
+    private static final int AT_CLASS_HISTOGRAM_DEPTH = 28;
+    private static final int AT_HEAP_TREE_DEPTH = 32;
+    private static final int AT_CLASS_HISTOGRAM = 36;
+    private static final int AT_HEAP_TREE = 44;
+    private static final int AT_SYMBOLS = 52;
+    private static final int AT_INDEX = 56;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_VARINT_SIZE = 10;
+    private static final int NONE = -1;
+
+    private final ByteBuffer buffer;
+    private final String[] symbols;
+
+    private HeapLayoutSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.symbols = new String[buffer.getInt(getInt(AT_INDEX))];
+    }
+
+    /**
+     * Write the given layout, materializing all views it has collected.
+     *
+     * @param layout layout to write
+     * @param path   file to create or replace
+     */
+    public static void write(HeapLayout layout, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            new SnapshotWriter(channel).write(layout);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Map the given snapshot file into memory. The mapping remains valid after the file has been deleted.
+     *
+     * @throws IOException if the file is not a snapshot of a supported version
+     */
+    public static HeapLayoutSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("not a heap layout snapshot: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("not a heap layout snapshot: " + path);
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("unsupported heap layout snapshot version " + buffer.getShort(4) + ": " + path);
+            }
+            return new HeapLayoutSnapshot(buffer);
+        }
+    }
+
+    public String getDescription() {
+        return getSymbol(getInt(AT_DESCRIPTION));
+    }
+
+    public long totalCount() {
+        return buffer.getLong(AT_TOTAL_COUNT);
+    }
+
+    public long totalSize() {
+        return buffer.getLong(AT_TOTAL_SIZE);
+    }
+
+    /**
+     * @return true if counts and sizes are extrapolated from a sample
+     */
+    public boolean isSampled() {
+        return (buffer.getShort(AT_FLAGS) & FLAG_SAMPLED) != 0;
+    }
+
+    /**
+     * @return true if the traversal stopped short of the full object graph for lack of budget
+     */
+    public boolean isTruncated() {
+        return (buffer.getShort(AT_FLAGS) & FLAG_TRUNCATED) != 0;
+    }
+
+    public boolean hasView(HeapLayout.View view) {
+        return getInt(view == HeapLayout.View.CLASS_HISTOGRAM ? AT_CLASS_HISTOGRAM : AT_HEAP_TREE) != NONE;
+    }
+
+    /**
+     * @param className name of the class as printed in the footprint, e.g. {@code [Ljava.lang.Object;}
+     * @return number of instances of the given class, 0 if there are none
+     */
+    public long getClassCount(String className) {
+        int offset = findClass(className);
+        return offset == NONE ? 0 : readRow(offset, null, new int[1]).getCount();
+    }
+
+    /**
+     * @param className name of the class as printed in the footprint, e.g. {@code [Ljava.lang.Object;}
+     * @return shallow size of all instances of the given class, 0 if there are none
+     */
+    public long getClassSize(String className) {
+        int offset = findClass(className);
+        return offset == NONE ? 0 : readRow(offset, null, new int[1]).getSize();
+    }
+
+    /**
+     * Same as {@link HeapLayout#toClassHistogramDrillDown(PrintWriter)} of the original layout.
+     */
+    public void toClassHistogramDrillDown(PrintWriter pw) {
+        PermNode root = readRoot(AT_CLASS_HISTOGRAM);
+        new ClassHistogramReporter(root, getInt(AT_CLASS_HISTOGRAM_DEPTH), getDescription(), isSampled())
+                .toDrillDown(new ReportWriter(pw), rows -> readRows(AT_CLASS_HISTOGRAM, rows));
+    }
+
+    /**
+     * Same as {@link HeapLayout#toFootprint(PrintWriter)} of the original layout.
+     */
+    public void toFootprint(PrintWriter pw) {
+        PermNode root = readRoot(AT_CLASS_HISTOGRAM);
+        new ClassHistogramReporter(root, getInt(AT_CLASS_HISTOGRAM_DEPTH), getDescription(), isSampled())
+                .toFootprint(new ReportWriter(pw), rows -> {
+                    int index = getInt(AT_INDEX);
+                    int classes = buffer.getInt(index + 4 + symbols.length * 4);
+                    int[] depth = new int[1];
+                    for (int i = 0, at = index + 8 + symbols.length * 4; i < classes; ++i, at += 4) {
+                        PermNode row = readRow(buffer.getInt(at), null, depth);
+                        row.setParent(root);
+                        rows.accept(row, 0);
+                    }
+                });
+    }
+
+    /**
+     * Same as {@link HeapLayout#toHeapTreeDrillDown(PrintWriter)} of the original layout.
+     */
+    public void toHeapTreeDrillDown(PrintWriter pw) {
+        PermNode root = readRoot(AT_HEAP_TREE);
+        new HeapTreeReporter(root, getInt(AT_HEAP_TREE_DEPTH), isSampled()).toDrillDown(new ReportWriter(pw), rows -> readRows(AT_HEAP_TREE, rows));
+    }
+
+    /**
+     * Decode all rows of the given view in report order.
+     */
+    void forEachRow(HeapLayout.View view, BiConsumer<PermNode, Integer> rows) {
+        final int at = view == HeapLayout.View.CLASS_HISTOGRAM ? AT_CLASS_HISTOGRAM : AT_HEAP_TREE;
+        readRoot(at); // fails unless collected
+        readRows(at, rows);
+    }
+
+    private int getInt(int at) {
+        return buffer.getInt(at);
+    }
+
+    private PermNode readRoot(int at) {
+        int offset = getInt(at);
+        if (offset == NONE) {
+            throw new IllegalStateException((at == AT_CLASS_HISTOGRAM ? "class histogram" : "heap tree") + " not collected");
+        }
+        return readRow(offset, null, new int[1]);
+    }
+
+    /**
+     * Decode the rows of a section in order, linking each to the last row one level up.
+     */
+    private void readRows(int at, BiConsumer<PermNode, Integer> rows) {
+        final int end = getInt(at + 4);
+        PermNode[] parents = new PermNode[Math.max(1, getInt(at == AT_CLASS_HISTOGRAM ? AT_CLASS_HISTOGRAM_DEPTH : AT_HEAP_TREE_DEPTH) + 2)];
+        int[] depth = new int[1];
+        for (int[] position = {getInt(at)}; position[0] < end; ) {
+            PermNode row = readRow(position[0], position, depth);
+            final int d = depth[0];
+            if (d >= parents.length) {
+                parents = Arrays.copyOf(parents, d + 1);
+            }
+            row.setParent(d > 0 ? parents[d - 1] : null);
+            parents[d] = row;
+            rows.accept(row, d);
+        }
+    }
+
+    /**
+     * @param position receives the offset past the row, unless null
+     * @param depth    receives the depth of the row
+     */
+    private PermNode readRow(int offset, int[] position, int[] depth) {
+        final int[] at = {offset};
+        depth[0] = (int) readVarint(at);
+        final int flags = (int) readVarint(at);
+        final String label = getSymbol((int) readVarint(at));
+
+        final PermNode row = (flags & ROW_TERMINAL) != 0 ? new Ellipsis(label)
+                : (flags & ROW_TRUNCATED) != 0 ? new Ellipsis(label, Ellipsis.TRUNCATED)
+                : (flags & ROW_ARRAY) != 0 ? new PermNodeForArray(label) : new PermNode(label);
+        if ((flags & ROW_PREFIX) != 0) {
+            row.setPrefix(getSymbol((int) readVarint(at)));
+        }
+        if ((flags & ROW_PARENT_CLASS_NAME) != 0) {
+            row.setParentClassName(getSymbol((int) readVarint(at)));
+        }
+        row.setCount(readVarint(at));
+        row.setSize(readVarint(at));
+        row.setRetainedChildCount(readVarint(at));
+        row.setRetainedChildSize(readVarint(at));
+        if ((flags & ROW_ARRAY) != 0) {
+            row.setLength(readVarint(at));
+            row.setUsed(readVarint(at));
+        }
+        if ((flags & ROW_VARIANCES) != 0) {
+            row.setVariances(buffer.getFloat(at[0]), buffer.getFloat(at[0] + 4));
+            at[0] += 8;
+        }
+
+        if (position != null) {
+            position[0] = at[0];
+        }
+        return row;
+    }
+
+    private long readVarint(int[] at) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(at[0]++);
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private String getSymbol(int id) {
+        String symbol = symbols[id];
+        if (symbol == null) {
+            int[] at = {buffer.getInt(getInt(AT_INDEX) + 4 + id * 4)};
+            int length = (int) readVarint(at);
+            byte[] bytes = new byte[length];
+            buffer.duplicate().position(at[0]).get(bytes);
+            symbols[id] = symbol = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return symbol;
+    }
+
+    /**
+     * @return offset of the footprint row of the given class, {@link #NONE} if there is none
+     */
+    private int findClass(String className) {
+        if (!hasView(HeapLayout.View.CLASS_HISTOGRAM)) {
+            throw new IllegalStateException("class histogram not collected");
+        }
+        final int index = getInt(AT_INDEX);
+        final int classes = buffer.getInt(index + 4 + symbols.length * 4);
+        final int byOffset = index + 8 + symbols.length * 4;
+        final int byName = byOffset + classes * 4;
+
+        int low = 0;
+        int high = classes - 1;
+        final int[] at = new int[1];
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int offset = buffer.getInt(byOffset + buffer.getInt(byName + mid * 4) * 4);
+            at[0] = offset;
+            readVarint(at); // depth
+            readVarint(at); // flags
+            final int cmp = getSymbol((int) readVarint(at)).compareTo(className);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return offset;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Sequential writer through a fixed size buffer; the header is rewritten in place once all offsets are known.
+     */
+    private static final class SnapshotWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Map<String, Integer> symbolIds = new HashMap<>();
+        private final List<String> symbols = new ArrayList<>();
+        private final List<PermNode> footprintRows = new ArrayList<>();
+        private final List<Integer> footprintOffsets = new ArrayList<>();
+        private long flushed;
+
+        SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(HeapLayout layout) throws IOException {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION);
+            header.putShort((short) ((layout.isSampled() ? FLAG_SAMPLED : 0) | (layout.isTruncated() ? FLAG_TRUNCATED : 0)));
+            header.putLong(layout.totalCount()).putLong(layout.totalSize());
+            header.putInt(symbol(layout.getDescription()));
+            out.position(HEADER_SIZE);
+
+            int classHistogramDepth = 0;
+            int classHistogram = NONE;
+            int classHistogramEnd = NONE;
+            if (layout.hasView(HeapLayout.View.CLASS_HISTOGRAM)) {
+                PermNode root = layout.materializeClassHistogram();
+                classHistogramDepth = layout.getClassHistogramDepth();
+                classHistogram = position();
+                writeRows(root, classHistogramDepth, true);
+                classHistogramEnd = position();
+            }
+
+            int heapTreeDepth = 0;
+            int heapTree = NONE;
+            int heapTreeEnd = NONE;
+            if (layout.hasView(HeapLayout.View.HEAP_TREE)) {
+                PermNode root = layout.materializeHeapTree();
+                heapTreeDepth = layout.getHeapTreeDepth();
+                heapTree = position();
+                writeRows(root, heapTreeDepth, false);
+                heapTreeEnd = position();
+            }
+
+            final int symbolTable = position();
+            final int[] symbolOffsets = new int[symbols.size()];
+            for (int i = 0; i < symbolOffsets.length; ++i) {
+                symbolOffsets[i] = position();
+                writeString(symbols.get(i));
+            }
+
+            final int index = position();
+            writeInt(symbolOffsets.length);
+            for (int offset : symbolOffsets) {
+                writeInt(offset);
+            }
+            writeInt(footprintOffsets.size());
+            for (int offset : footprintOffsets) {
+                writeInt(offset);
+            }
+            Integer[] byName = new Integer[footprintRows.size()];
+            Arrays.setAll(byName, i -> i);
+            Arrays.sort(byName, (a, b) -> footprintRows.get(a).getOwnLabel().compareTo(footprintRows.get(b).getOwnLabel()));
+            for (int i : byName) {
+                writeInt(i);
+            }
+            drain();
+
+            header.putInt(classHistogramDepth).putInt(heapTreeDepth);
+            header.putInt(classHistogram).putInt(classHistogramEnd);
+            header.putInt(heapTree).putInt(heapTreeEnd);
+            header.putInt(symbolTable).putInt(index);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+
+        private void writeRows(PermNode root, int stackDepth, boolean collectFootprint) {
+            NodeWithChildren.walk(root, 0, NodeWithChildren.UNLIMITED, 0, (row, depth) -> {
+                if (collectFootprint && depth == 1) {
+                    footprintRows.add(row);
+                    footprintOffsets.add(position());
+                }
+                writeRow(row, depth);
+            }, stackDepth);
+        }
+
+        private void writeRow(PermNode row, int depth) {
+            final boolean hasPrefix = row.getPrefix() != null;
+            final boolean hasParentClassName = row.getParentClassName() != null;
+            final boolean hasVariances = row.getCountVariance() != 0 || row.getSizeVariance() != 0;
+            int flags = (row.isArrayInfo() ? ROW_ARRAY : 0) | (hasPrefix ? ROW_PREFIX : 0) | (hasParentClassName ? ROW_PARENT_CLASS_NAME : 0)
+                    | (hasVariances ? ROW_VARIANCES : 0);
+            if (row instanceof Ellipsis) {
+                flags = flags & ~ROW_ARRAY | (((Ellipsis) row).isTruncated() ? ROW_TRUNCATED : ROW_TERMINAL);
+            }
+
+            writeVarint(depth);
+            writeVarint(flags);
+            writeVarint(symbol(row.getOwnLabel()));
+            if (hasPrefix) {
+                writeVarint(symbol(row.getPrefix()));
+            }
+            if (hasParentClassName) {
+                writeVarint(symbol(row.getParentClassName()));
+            }
+            writeVarint(row.getCount());
+            writeVarint(row.getSize());
+            writeVarint(row.getRetainedChildCount());
+            writeVarint(row.getRetainedChildSize());
+            if ((flags & ROW_ARRAY) != 0) {
+                writeVarint(row.getLength());
+                writeVarint(row.getUsed());
+            }
+            if (hasVariances) {
+                ensure(8);
+                out.putFloat((float) row.getCountVariance()).putFloat((float) row.getSizeVariance());
+            }
+        }
+
+        private int symbol(String s) {
+            return symbolIds.computeIfAbsent(s, k -> {
+                symbols.add(k);
+                return symbols.size() - 1;
+            });
+        }
+
+        private int position() {
+            long position = flushed + out.position();
+            if (position > Integer.MAX_VALUE) {
+                throw new IllegalStateException("snapshot exceeds 2 GiB");
+            }
+            return (int) position;
+        }
+
+        private void writeVarint(long value) {
+            ensure(MAX_VARINT_SIZE);
+            while ((value & ~0x7fL) != 0) {
+                out.put((byte) (value & 0x7f | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            out.putInt(value);
+        }
+
+        private void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(bytes.length - offset, out.remaining());
+                out.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (out.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() {
+            out.flip();
+            try {
+                while (out.hasRemaining()) {
+                    flushed += channel.write(out, flushed);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            out.clear();
+        }
+    }
+}
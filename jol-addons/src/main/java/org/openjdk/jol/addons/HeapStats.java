@@ -24,11 +24,13 @@
  */
 package org.openjdk.jol.addons;
 
-import org.openjdk.jol.info.ArraySizeCache;
 import org.openjdk.jol.info.HeapWalker;
 import org.openjdk.jol.info.VisitedIdentities;
 import org.openjdk.jol.util.SimpleStack;
 
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+
 
 public class HeapStats implements HeapWalker.Stats {
 
@@ -56,7 +58,10 @@ public class HeapStats implements HeapWalker.Stats {
      * @return object stats
      */
     public static HeapStats parseSimpleInstance(Object... roots) {
-        return new HeapWalker().getStats(HeapStats::new, roots);
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapStats stats = new HeapWalker().getStats(HeapStats::new, roots);
+        HeapLayoutEvent.commit(event, stats, roots);
+        return stats;
     }
 
     /**
@@ -73,44 +78,74 @@ public class HeapStats implements HeapWalker.Stats {
                                           int stackCapacity, int objectSizeCacheCapacity,
                                           Object... roots) {
 
-        ObjectSizeCache objectSizeCache = new ObjectSizeCache.WithObject2LongMap(objectSizeCacheCapacity);
-        ReferenceFieldCache referenceFieldCache = new ReferenceFieldCache.WithObject2LongMap(objectSizeCacheCapacity);
-        SimpleStack<Object> stack = new SimpleStack<>(stackCapacity);
-
-        return parseInstance(tc, identitySet, objectSizeCache, referenceFieldCache, stack, roots);
+        return traverse(tc, new VisitedSet.WithVisitedIdentities(identitySet), new ReferenceFieldLayout.Cache(objectSizeCacheCapacity), null,
+                null, new SimpleStack<>(stackCapacity), roots);
     }
 
 
     /**
      * Parse the object stats starting from the given instance(s).
      *
-     * @param tc              TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
-     * @param identitySet     prepared identity set
-     * @param objectSizeCache prepared object size cache
-     * @param stack           prepared node stack
-     * @param roots           root instance(s) to start from
+     * @param tc                  TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param identitySet         prepared identity set
+     * @param objectSizeCache     prepared object size cache, consulted for instances other than arrays
+     * @param referenceFieldCache prepared reference field cache, consulted for reference fields
+     * @param stack               prepared node stack
+     * @param roots               root instance(s) to start from
      * @return object graph
+     * @deprecated the other entry points read object sizes and field offsets from per-class layouts shared process-wide; use
+     * {@link #parseInstance(TraversalControl, VisitedIdentities, int, int, Object...)} or a {@link HeapLayoutSession}, which keeps its
+     * layouts across runs
      */
+    @Deprecated
     public static HeapStats parseInstance(TraversalControl tc, VisitedIdentities identitySet,
                                           ObjectSizeCache objectSizeCache, ReferenceFieldCache referenceFieldCache,
                                           SimpleStack<Object> stack, Object... roots) {
 
-        return new HeapWalker() //
-              .withConditionalRecursion(tc::isChildToBeTraversed) //
-              .withIdentitySet(identitySet) //
-              .withObjectSizeCache(objectSizeCache) //
-              .withReferenceFieldCache(referenceFieldCache) //
-              .withArraySizeCache(new ArraySizeCache.Precalculated()) //
-              .withStack(stack) //
-              .getStats(HeapStats::new, roots);
+        return traverse(tc, new VisitedSet.WithVisitedIdentities(identitySet),
+                new ReferenceFieldLayout.Cache(Math.max(HeapLayout.DEFAULT_CAPACITY, objectSizeCache.size())), objectSizeCache, referenceFieldCache,
+                stack, roots);
+    }
+
+    private static HeapStats traverse(TraversalControl tc, VisitedSet identitySet, ReferenceFieldLayout.Cache layouts,
+                                      @Nullable ObjectSizeCache objectSizeCache, @Nullable ReferenceFieldCache referenceFieldCache,
+                                      SimpleStack<Object> stack, Object... roots) {
+
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        HeapStats stats = new HeapStats(roots);
+
+        HeapTraversal traversal = new HeapTraversal(tc, identitySet, layouts, stack, stats).withCaches(objectSizeCache, referenceFieldCache);
+        traversal.addRoots(roots);
+        traversal.run();
+        traversal.reportContainerCapacities();
+
+        HeapLayoutEvent.commit(event, stats, roots);
+        return stats;
     }
 
 
+    /**
+     * Parse the object stats starting from the given instance(s), splitting the work across the given pool.
+     *
+     * @param pool  pool to run the traversal in
+     * @param tc    TraversalControl employed to restrict heap parsing to an imaginary directed acyclic graph of interest
+     * @param roots root instance(s) to start from
+     * @return object stats
+     */
+    public static HeapStats parseInstanceInParallel(ForkJoinPool pool, TraversalControl tc, Object... roots) {
+        return ParallelHeapTraversal.parseInstance(pool, tc, roots);
+    }
+
     public void addRecord(long size) {
         totalCount++;
         totalSize += size;
     }
 
+    void add(HeapStats other) {
+        totalCount += other.totalCount();
+        totalSize += other.totalSize();
+    }
+
     public int identitySetCapacity() {
         return identitySetCapacity;
     }
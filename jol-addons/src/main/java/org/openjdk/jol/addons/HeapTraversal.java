@@ -0,0 +1,691 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.openjdk.jol.util.SimpleStack;
+import org.openjdk.jol.vm.VM;
+import org.openjdk.jol.vm.VirtualMachine;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ObjIntConsumer;
+
+
+/**
+ * Depth-first object graph traversal driven from within this package, mirroring HeapWalker semantics closely enough to feed the same
+ * {@link HeapLayout.Builder} resp. {@link HeapStats} with identical results. Unlike HeapWalker, an instance may be seeded piecemeal and
+ * drained by someone else than the seeding party, which is what the parallel traversal builds upon.
+ * <p>
+ * Not thread-safe; the visited set may be shared, though, if it is.
+ */
+final class HeapTraversal {
+
+    static final int CLOCK_CHECK_INTERVAL = 1 << 6;
+
+    private final VirtualMachine vm = VM.current();
+
+    private final TraversalControl tc;
+    private final VisitedSet visited;
+    private final ReferenceFieldLayout.Cache layouts;
+    private final SimpleStack<Object> stack;
+
+    @Nullable
+    private final InitialNodeFactory nodeFactory;
+    @Nullable
+    private final HeapLayout.Builder builder;
+    @Nullable
+    private final HeapStats stats;
+    @Nullable
+    private final ClassHistogram histogram;
+
+    private int largeArrayThreshold = Integer.MAX_VALUE;
+    private LargeArrayHandler largeArrayHandler;
+
+    private int samplingThreshold = Integer.MAX_VALUE;
+    private int samplingStride = 1;
+    // stack size below the sampled element whose subtree is being visited, -1 if none
+    private int sampledElementBase = -1;
+
+    // supplied by callers of the deprecated entry points, in place of the layouts
+    @Nullable
+    private ObjectSizeCache objectSizeCache;
+    @Nullable
+    private ReferenceFieldCache referenceFieldCache;
+
+    private TraversalBudget budget = TraversalBudget.unlimited();
+    private long visitedObjects;
+    private long visitedBytes;
+    private boolean truncated;
+
+    private int stackSize;
+    private int maxStackSize;
+
+    // shallow collection marks of the items on the stack, see ShallowCollections; allocated once the first object is marked
+    @Nullable
+    private int[] marks;
+
+    private long identityLookups;
+    private long identityDuplicates;
+
+    @Nullable
+    private HeapLayoutMetrics metrics;
+    private long traversalNanos;
+    private long sampledAggregations;
+    private long sampledAggregationNanos;
+    private long layoutMissesBefore;
+    private long pathsCreatedBefore;
+    private long pathsDeduplicatedBefore;
+
+    /**
+     * Traversal yielding a HeapLayout
+     */
+    HeapTraversal(TraversalControl tc, VisitedSet visited, ReferenceFieldLayout.Cache layouts, SimpleStack<Object> stack, InitialNodeFactory nodeFactory,
+                  HeapLayout.Builder builder) {
+        this(tc, visited, layouts, stack, nodeFactory, builder, null, null);
+    }
+
+    /**
+     * Traversal yielding HeapStats only
+     */
+    HeapTraversal(TraversalControl tc, VisitedSet visited, ReferenceFieldLayout.Cache layouts, SimpleStack<Object> stack, HeapStats stats) {
+        this(tc, visited, layouts, stack, null, null, stats, null);
+    }
+
+    /**
+     * Traversal yielding a flat ClassHistogram
+     */
+    HeapTraversal(TraversalControl tc, VisitedSet visited, ReferenceFieldLayout.Cache layouts, SimpleStack<Object> stack, ClassHistogram histogram) {
+        this(tc, visited, layouts, stack, null, null, histogram, histogram);
+    }
+
+    private HeapTraversal(TraversalControl tc, VisitedSet visited, ReferenceFieldLayout.Cache layouts, SimpleStack<Object> stack,
+                          @Nullable InitialNodeFactory nodeFactory, @Nullable HeapLayout.Builder builder, @Nullable HeapStats stats,
+                          @Nullable ClassHistogram histogram) {
+        this.tc = tc;
+        this.visited = visited;
+        this.layouts = layouts;
+        this.stack = stack;
+        this.nodeFactory = nodeFactory;
+        this.builder = builder;
+        this.stats = stats;
+        this.histogram = histogram;
+    }
+
+    static int countUsed(Object array) {
+        int used = 0;
+        if (array instanceof Object[]) {
+            for (Object e : (Object[]) array) {
+                if (e != null) used++;
+            }
+        } else if (array instanceof byte[]) {
+            for (byte e : (byte[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof int[]) {
+            for (int e : (int[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof long[]) {
+            for (long e : (long[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof char[]) {
+            for (char e : (char[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof short[]) {
+            for (short e : (short[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof boolean[]) {
+            for (boolean e : (boolean[]) array) {
+                if (e) used++;
+            }
+        } else if (array instanceof float[]) {
+            for (float e : (float[]) array) {
+                if (e != 0) used++;
+            }
+        } else if (array instanceof double[]) {
+            for (double e : (double[]) array) {
+                if (e != 0) used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Hand off reference arrays of at least the given length to the handler instead of pushing their elements onto the stack.
+     */
+    HeapTraversal withLargeArrayHandler(int threshold, LargeArrayHandler handler) {
+        largeArrayThreshold = threshold;
+        largeArrayHandler = handler;
+        return this;
+    }
+
+    /**
+     * Visit only every n-th non-null element of reference arrays of at least the given length, starting at a random offset, and have
+     * the sampled elements and everything they retain stand in for n elements each.
+     * <p>
+     * This covers hash-based collections and lists backed by arrays; linked structures are walked in full. Elements skipped but
+     * reachable elsewhere are counted there as well.
+     */
+    HeapTraversal withSampling(int threshold, int stride) {
+        if (nodeFactory == null) {
+            throw new IllegalStateException("sampling requires a node factory");
+        }
+        if (stride < 1) {
+            throw new IllegalArgumentException("stride must be positive: " + stride);
+        }
+        samplingThreshold = threshold;
+        samplingStride = stride;
+        return this;
+    }
+
+    /**
+     * Stop once the budget is spent, marking the paths whose subtrees are cut short as truncated. A depth limit needs a
+     * {@link VisitedSet.Queryable} to look ahead whether anything is cut short.
+     */
+    HeapTraversal withBudget(TraversalBudget budget) {
+        if (nodeFactory == null && budget.isDepthLimited()) {
+            throw new IllegalStateException("depth limit requires a node factory");
+        }
+        if (!(visited instanceof VisitedSet.Queryable) && budget.isDepthLimited()) {
+            throw new IllegalStateException("depth limit requires a queryable visited set");
+        }
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Take the shallow sizes of instances and the values of their reference fields from the given caches rather than from the class
+     * layouts, for callers which prepared their own. The layouts still decide which fields are followed, and arrays are measured
+     * directly.
+     */
+    HeapTraversal withCaches(@Nullable ObjectSizeCache objectSizeCache, @Nullable ReferenceFieldCache referenceFieldCache) {
+        this.objectSizeCache = objectSizeCache;
+        this.referenceFieldCache = referenceFieldCache;
+        return this;
+    }
+
+    /**
+     * Time the traversal and count cache and identity set lookups, to be reported by {@link #reportMetrics()}.
+     */
+    HeapTraversal withMetrics(@Nullable HeapLayoutMetrics metrics) {
+        this.metrics = metrics;
+        layoutMissesBefore = layouts.misses();
+        pathsCreatedBefore = ClassPathImpl.createdCount();
+        pathsDeduplicatedBefore = ClassPathImpl.deduplicatedCount();
+        return this;
+    }
+
+    void addRoot(Object root) {
+        if (isToBeVisited(null, null, -1, root)) {
+            addClaimedRoot(root);
+        }
+    }
+
+    /**
+     * Seed the traversal with a root claimed elsewhere, i.e. without checking the visited set.
+     */
+    void addClaimedRoot(Object root) {
+        push(nodeFactory == null ? root : nodeFactory.createFieldNode(null, "", 0, root), ShallowCollections.UNMARKED);
+    }
+
+    /**
+     * Seed the traversal with an item claimed elsewhere, e.g. taken off the stack of another traversal by {@link #drainStack}.
+     *
+     * @param item a node unless gathering stats only, with a path owned by this traversal
+     * @param mark shallow collection mark of the item
+     */
+    void addClaimed(Object item, int mark) {
+        push(item, mark);
+    }
+
+    void addRoots(Object... roots) {
+        for (Object root : roots) {
+            if (root != null) {
+                addRoot(root);
+            }
+        }
+    }
+
+    /**
+     * @param parent node describing the array, may be null when gathering stats only
+     * @param mark   shallow collection mark of the array
+     */
+    private void addArrayElements(@Nullable InitialNode parent, Object[] array, int from, int to, int mark) {
+        final int elementMark = ShallowCollections.elementMark(mark);
+        if (elementMark == ShallowCollections.CUT) {
+            return;
+        }
+        final long weight = parent == null ? 1L : parent.getWeight();
+        final TraversalControl.Verdicts verdicts = tc.getVerdicts(array.getClass());
+        for (int i = from; i < to; ++i) {
+            Object e = array[i];
+            if (e != null && isToBeVisited(array, verdicts, -1, e)) {
+                pushArrayElement(parent, i, e, weight, elementMark);
+            }
+        }
+    }
+
+    /**
+     * Claim the elements of a reference array for {@link #addClaimedArrayElements}, e.g. to be pushed by other traversals.
+     *
+     * @param mark shallow collection mark of the array
+     * @return copy of the array holding the elements claimed, and null in place of the others, or null if none was claimed
+     */
+    @Nullable
+    Object[] claimArrayElements(Object[] array, int mark) {
+        if (ShallowCollections.elementMark(mark) == ShallowCollections.CUT) {
+            return null;
+        }
+        final TraversalControl.Verdicts verdicts = tc.getVerdicts(array.getClass());
+        Object[] claimed = null;
+        for (int i = 0; i < array.length; ++i) {
+            Object e = array[i];
+            if (e != null && isToBeVisited(array, verdicts, -1, e)) {
+                if (claimed == null) {
+                    claimed = new Object[array.length];
+                }
+                claimed[i] = e;
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Seed the traversal with a slice of the elements claimed by {@link #claimArrayElements}.
+     *
+     * @param parent  node describing the array, may be null when gathering stats only
+     * @param claimed as returned by {@link #claimArrayElements}
+     * @param mark    shallow collection mark of the array
+     */
+    void addClaimedArrayElements(@Nullable InitialNode parent, Object[] claimed, int from, int to, int mark) {
+        final int elementMark = ShallowCollections.elementMark(mark);
+        final long weight = parent == null ? 1L : parent.getWeight();
+        for (int i = from; i < to; ++i) {
+            Object e = claimed[i];
+            if (e != null) {
+                pushArrayElement(parent, i, e, weight, elementMark);
+            }
+        }
+    }
+
+    private void addSampledArrayElements(InitialNode parent, Object[] array, int mark) {
+        final int elementMark = ShallowCollections.elementMark(mark);
+        if (elementMark == ShallowCollections.CUT) {
+            return;
+        }
+        final long weight = Math.multiplyExact(parent.getWeight(), samplingStride);
+        final TraversalControl.Verdicts verdicts = tc.getVerdicts(array.getClass());
+        int skip = ThreadLocalRandom.current().nextInt(samplingStride);
+        for (int i = 0; i < array.length; ++i) {
+            Object e = array[i];
+            if (e != null && skip-- == 0) {
+                skip = samplingStride - 1;
+                if (isToBeVisited(array, verdicts, -1, e)) {
+                    pushArrayElement(parent, i, e, weight, elementMark);
+                }
+            }
+        }
+    }
+
+    boolean isExhausted() {
+        return stack.isEmpty();
+    }
+
+    /**
+     * @return true if anything was left out for lack of budget
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Process everything on the stack, including whatever is discovered on the way.
+     */
+    void run() {
+        final long start = metrics == null ? 0 : System.nanoTime();
+        while (!stack.isEmpty()) {
+            visitNext();
+        }
+        endSampledElement();
+        if (metrics != null) {
+            traversalNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Process the stack until it is exhausted or either budget is spent, whichever comes first.
+     *
+     * @param maxObjects maximum number of objects to visit
+     * @param maxNanos   maximum time to spend, checked every {@value #CLOCK_CHECK_INTERVAL} objects
+     * @return true if exhausted
+     */
+    boolean step(long maxObjects, long maxNanos) {
+        final long start = System.nanoTime();
+        long count = 0;
+        while (!stack.isEmpty()) {
+            visitNext();
+            if (++count >= maxObjects) {
+                break;
+            }
+            if (count % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - start >= maxNanos) {
+                break;
+            }
+        }
+        if (stack.isEmpty()) {
+            endSampledElement();
+        }
+        if (metrics != null) {
+            traversalNanos += System.nanoTime() - start;
+        }
+        return stack.isEmpty();
+    }
+
+    int maxStackSize() {
+        return maxStackSize;
+    }
+
+    /**
+     * Report container capacities to the graph resp. stats.
+     */
+    void reportContainerCapacities() {
+        if (builder != null) {
+            builder.setTruncated(truncated);
+            builder.setContainerCapacities(maxStackSize, visited.size(), layouts.size());
+        } else if (stats != null) {
+            stats.setContainerCapacities(maxStackSize, visited.size(), layouts.size());
+        }
+    }
+
+    /**
+     * Report the cost of the traversal so far to the metrics listener, if any.
+     */
+    void reportMetrics() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.onPhase(HeapLayoutMetrics.Phase.TRAVERSAL, traversalNanos, visitedObjects);
+        if (builder != null && sampledAggregations > 0) {
+            metrics.onPhase(HeapLayoutMetrics.Phase.AGGREGATION, sampledAggregationNanos * visitedObjects / sampledAggregations, visitedObjects);
+        }
+        metrics.onThroughput(traversalNanos == 0 ? 0.0 : visitedObjects * 1e9 / traversalNanos);
+        metrics.onIdentitySet(identityLookups, identityDuplicates, visited.size());
+        // visiting an object takes exactly one lookup in the traversal's own cache, so all visits but the misses are hits
+        final long misses = layouts.misses() - layoutMissesBefore;
+        metrics.onLayoutCache(visitedObjects - misses, misses);
+        metrics.onClassPaths(ClassPathImpl.createdCount() - pathsCreatedBefore, ClassPathImpl.deduplicatedCount() - pathsDeduplicatedBefore);
+    }
+
+    private boolean isToBeVisited(@Nullable Object parent, @Nullable TraversalControl.Verdicts parentVerdicts, int slot, Object child) {
+        if (!tc.isChildToBeTraversed(parent, parentVerdicts, slot, child)) {
+            return false;
+        }
+        if (metrics != null) {
+            ++identityLookups;
+        }
+        if (visited.add(child)) {
+            return true;
+        }
+        if (metrics != null) {
+            ++identityDuplicates;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the child would be visited, without claiming it or taking note of the edge
+     */
+    private boolean isToBeVisitedLater(Object parent, TraversalControl.Verdicts parentVerdicts, int slot, Object child) {
+        return tc.wouldChildBeTraversed(parent, parentVerdicts, slot, child) && !((VisitedSet.Queryable) visited).contains(child);
+    }
+
+    private int topMark() {
+        return marks == null ? ShallowCollections.UNMARKED : marks[stackSize - 1];
+    }
+
+    private Object pop() {
+        --stackSize;
+        return stack.pop();
+    }
+
+    private void pushArrayElement(@Nullable InitialNode parent, int index, Object e, long weight, int mark) {
+        if (nodeFactory == null) {
+            push(e, mark);
+        } else {
+            InitialNode child = nodeFactory.createArrayIndexNode(parent, index, 0, e);
+            child.setWeight(weight);
+            if (parent != null) {
+                child.setDepth(parent.depth() + 1);
+                child.setParentPath(parent.getPath());
+            }
+            push(child, mark);
+        }
+    }
+
+    private void pushField(@Nullable InitialNode parent, String mergedLabel, Object child, int mark) {
+        if (nodeFactory == null) {
+            push(child, mark);
+        } else {
+            InitialNode node = nodeFactory.createMergedFieldNode(parent, mergedLabel, child);
+            node.setWeight(parent.getWeight());
+            node.setDepth(parent.depth() + 1);
+            node.setParentPath(parent.getPath());
+            push(node, mark);
+        }
+    }
+
+    private void push(Object item, int mark) {
+        stack.push(item);
+        if (marks != null) {
+            if (stackSize == marks.length) {
+                marks = Arrays.copyOf(marks, stackSize << 1);
+            }
+            marks[stackSize] = mark;
+        } else if (mark != ShallowCollections.UNMARKED) {
+            // all items below are unmarked
+            marks = new int[Math.max(16, stackSize << 1)];
+            marks[stackSize] = mark;
+        }
+        if (++stackSize > maxStackSize) {
+            maxStackSize = stackSize;
+        }
+    }
+
+    private void visitNext() {
+        if (stackSize <= sampledElementBase) {
+            endSampledElement(); // its subtree is done with
+        }
+        final int mark = topMark();
+        final Object item = pop();
+        if (sampledElementBase < 0 && samplingStride > 1 && ((InitialNode) item).getWeight() > 1) {
+            // weighted, but not within the subtree of another sampled element: the element itself
+            sampledElementBase = stackSize;
+            builder.beginSampledElement(((InitialNode) item).getWeight());
+        }
+        visit(item, mark);
+    }
+
+    private void endSampledElement() {
+        if (sampledElementBase >= 0) {
+            builder.endSampledElement();
+            sampledElementBase = -1;
+        }
+    }
+
+    private void visit(Object item, int mark) {
+        final InitialNode node = nodeFactory == null ? null : (InitialNode) item;
+        final Object o = node == null ? item : node.obj();
+        final Class<?> cl = o.getClass();
+        final boolean expand = node == null || node.depth() < budget.getMaxDepth();
+
+        final long size;
+        final int index = layouts.indexOf(cl);
+        final ReferenceFieldLayout layout = layouts.get(index);
+        if (cl.isArray()) {
+            size = vm.sizeOf(o);
+            if (o instanceof Object[]) {
+                Object[] array = (Object[]) o;
+                int length = array.length;
+                if (!expand) {
+                    truncateIfAnyToBeVisited(node, array, mark);
+                } else if (length >= samplingThreshold && samplingStride > 1) {
+                    addSampledArrayElements(node, array, mark);
+                } else if (length >= largeArrayThreshold && largeArrayHandler != null) {
+                    largeArrayHandler.handle(node, array, mark);
+                } else {
+                    addArrayElements(node, array, 0, length, mark);
+                }
+            }
+            if (node != null) { // array info is of no interest to stats
+                node.setLength(Array.getLength(o));
+                node.setUsed(countUsed(o));
+            }
+        } else {
+            size = objectSizeCache == null ? layout.getShallowSize(o) : objectSizeCache.get(cl, o);
+            final TraversalControl.Verdicts verdicts = tc.getVerdicts(cl);
+            if (!expand) {
+                truncateIfAnyToBeVisited(node, o, layout, verdicts, mark);
+            } else {
+                for (int i = 0, n = layout.size(); i < n; ++i) {
+                    Object child = getChild(o, layout, i);
+                    if (child != null) {
+                        int childMark = ShallowCollections.fieldMark(mark, layout.getShallowCollectionCode(i));
+                        if (childMark != ShallowCollections.CUT && isToBeVisited(o, verdicts, i, child)) {
+                            pushField(node, layout.getLabel(i), child, childMark);
+                        }
+                    }
+                }
+            }
+        }
+
+        visitedBytes += size; // walked, not extrapolated by the sampling weight
+        if (node != null) {
+            node.setSize(size);
+            if (metrics != null && visitedObjects % CLOCK_CHECK_INTERVAL == 0) {
+                final long start = System.nanoTime();
+                builder.addNode(node);
+                sampledAggregationNanos += System.nanoTime() - start;
+                ++sampledAggregations;
+            } else {
+                builder.addNode(node);
+            }
+            builder.addRecord(size);
+            nodeFactory.recycleNode(node);
+        } else if (histogram != null) {
+            histogram.addRecord(index, cl, size);
+        } else {
+            stats.addRecord(size);
+        }
+
+        if (budget.isExceeded(++visitedObjects, visitedBytes) && !stack.isEmpty()) {
+            truncateRemaining();
+        }
+    }
+
+    @Nullable
+    private Object getChild(Object o, ReferenceFieldLayout layout, int i) {
+        return referenceFieldCache == null ? vm.getObject(o, layout.getOffset(i)) : referenceFieldCache.get(layout.getField(i), o);
+    }
+
+    private void truncateIfAnyToBeVisited(InitialNode node, Object[] array, int mark) {
+        if (ShallowCollections.elementMark(mark) == ShallowCollections.CUT) {
+            return;
+        }
+        final TraversalControl.Verdicts verdicts = tc.getVerdicts(array.getClass());
+        for (Object e : array) {
+            if (e != null && isToBeVisitedLater(array, verdicts, -1, e)) {
+                truncate(node.getPath());
+                return;
+            }
+        }
+    }
+
+    private void truncateIfAnyToBeVisited(InitialNode node, Object o, ReferenceFieldLayout layout, TraversalControl.Verdicts verdicts,
+                                          int mark) {
+        for (int i = 0, n = layout.size(); i < n; ++i) {
+            Object child = getChild(o, layout, i);
+            if (child != null && ShallowCollections.fieldMark(mark, layout.getShallowCollectionCode(i)) != ShallowCollections.CUT
+                    && isToBeVisitedLater(o, verdicts, i, child)) {
+                truncate(node.getPath());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take everything off the stack, bottom first, e.g. to be continued by another traversal.
+     *
+     * @param consumer receives each item along with its shallow collection mark; nodes are recycled as soon as it returns
+     */
+    void drainStack(ObjIntConsumer<Object> consumer) {
+        final int n = stackSize;
+        final Object[] items = new Object[n];
+        final int[] itemMarks = new int[n];
+        for (int i = n - 1; i >= 0; --i) {
+            itemMarks[i] = topMark();
+            items[i] = pop();
+        }
+        for (int i = 0; i < n; ++i) {
+            consumer.accept(items[i], itemMarks[i]);
+            if (nodeFactory != null) {
+                nodeFactory.recycleNode((InitialNode) items[i]);
+            }
+        }
+    }
+
+    /**
+     * Drop whatever is left on the stack, marking the paths it was discovered from.
+     */
+    private void truncateRemaining() {
+        while (!stack.isEmpty()) {
+            Object item = pop();
+            if (nodeFactory != null) {
+                InitialNode node = (InitialNode) item;
+                truncate(node.getParentPath() != null ? node.getParentPath() : node.getPath());
+                nodeFactory.recycleNode(node);
+            }
+        }
+        truncated = true;
+    }
+
+    private void truncate(ClassPathImpl path) {
+        builder.markTruncated(path);
+        truncated = true;
+    }
+
+    @FunctionalInterface
+    interface LargeArrayHandler {
+        /**
+         * @param node  the node describing the array, about to be recycled; null when gathering stats only
+         * @param array the array whose elements are to be taken care of
+         * @param mark  shallow collection mark of the array, to be passed on to {@link #claimArrayElements}
+         */
+        void handle(@Nullable InitialNode node, Object[] array, int mark);
+    }
+}
@@ -24,37 +24,36 @@
  */
 package org.openjdk.jol.addons;
 
-import com.google.common.base.Strings;
-
-import java.io.PrintWriter;
-
-import static org.openjdk.jol.addons.HeapLayout.humanReadableByteCountBin;
-
 
 final class HeapTreeReporter extends HeapLayoutReporter {
 
-    public HeapTreeReporter(PermNode root, int stackDepth) {
-        super(root, stackDepth);
+    public HeapTreeReporter(PermNode root, int stackDepth, boolean withErrorBounds) {
+        super(root, stackDepth, withErrorBounds);
     }
 
     @Override
-    protected void printHeadline(PrintWriter pw) {
-        pw.printf("%15s %10s %12s %10s %15s %15s %10s %12s %15s %10s   %s%n", //
-                "COUNT", "AVG SIZE", "RAW AVG SZ", "TOTAL SIZE", "RAW T SZ", "RETAINED CT", "PAR% R CT", "RETAINED SZ", "RAW R SZ", "PAR% R SZ", "DESCRIPTION");
+    protected void printHeadline(ReportWriter w) {
+        w.format("%15s %10s %12s %10s %15s %15s %10s %12s %15s %10s", //
+                "COUNT", "AVG SIZE", "RAW AVG SZ", "TOTAL SIZE", "RAW T SZ", "RETAINED CT", "PAR% R CT", "RETAINED SZ", "RAW R SZ", "PAR% R SZ");
+        printErrorBoundsHeadline(w);
+        w.format("   %s%n", "DESCRIPTION");
     }
 
     @Override
-    protected void printRow(PermNode node, int depth, PrintWriter pw) {
-        if (Strings.isNullOrEmpty(node.getPrefix())) {
-            pw.printf("%,15d %10s %,12d %10s %,15d %,15d %8.2f %% %12s %,15d %8.2f %%   %s%s%s%n", //
-                    node.getCount(), humanReadableByteCountBin(node.getAverage()), node.getAverage(), humanReadableByteCountBin(node.getSize()), node.getSize(),
-                    node.getTotalCount(), node.getParentCountPercentage(), humanReadableByteCountBin(node.getTotalSize()), node.getTotalSize(),
-                    node.getParentSizePercentage(), getIndentFor(depth), node.getLabel(), node.getArrayLabel());
-        } else {
-            pw.printf("%,15d %10s %,12d %10s %,15d %,15d %8.2f %% %12s %,15d %8.2f %%   %s%s %s%s%n", //
-                    node.getCount(), humanReadableByteCountBin(node.getAverage()), node.getAverage(), humanReadableByteCountBin(node.getSize()), node.getSize(),
-                    node.getTotalCount(), node.getParentCountPercentage(), humanReadableByteCountBin(node.getTotalSize()), node.getTotalSize(),
-                    node.getParentSizePercentage(), getIndentFor(depth), node.getPrefix(), node.getLabel(), node.getArrayLabel());
-        }
+    protected void printRow(PermNode node, int depth, ReportWriter w) {
+        w.integer(node.getCount(), 15, true).append(' ') //
+                .byteCount(node.getAverage(), 10).append(' ') //
+                .integer(node.getAverage(), 12, true).append(' ') //
+                .byteCount(node.getSize(), 10).append(' ') //
+                .integer(node.getSize(), 15, true).append(' ') //
+                .integer(node.getTotalCount(), 15, true).append(' ') //
+                .decimal(node.getParentCountPercentage(), 8, 2).append(" % ") //
+                .byteCount(node.getTotalSize(), 12).append(' ') //
+                .integer(node.getTotalSize(), 15, true).append(' ') //
+                .decimal(node.getParentSizePercentage(), 8, 2).append(" %");
+        printErrorBounds(node, w);
+        printLabel(node, depth, w);
+        node.printArrayLabel(w);
+        w.newLine();
     }
-}
\ No newline at end of file
+}
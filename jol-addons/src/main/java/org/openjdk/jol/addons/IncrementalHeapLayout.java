@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.openjdk.jol.util.SimpleStack;
+
+import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * Traversal of an object graph spread across many short slices, e.g. to keep latency of request threads in check.
+ * <p>
+ * Stack, identity set and aggregates are kept between calls to {@link #step()}. Since the application continues in between slices,
+ * objects mutated meanwhile are seen in whatever state they are in when visited, not as a consistent snapshot.
+ * <p>
+ * Not thread-safe; slices may run on different threads as long as they do not overlap, and are properly published.
+ */
+public final class IncrementalHeapLayout {
+
+    private final long maxObjectsPerSlice;
+    private final long maxNanosPerSlice;
+
+    private HeapTraversal traversal;
+    private HeapLayout.Builder builder;
+    @Nullable
+    private HeapLayoutEvent event; // begun by the first slice, null unless recorded
+    private HeapLayout result;
+    private int slices;
+
+    private IncrementalHeapLayout(TraversalControl tc, HistogramDeduplicator hd, int stackCapacity, int identitySetCapacity, int objectSizeCacheCapacity,
+                                  long maxObjectsPerSlice, long maxNanosPerSlice, TraversalBudget budget, Set<HeapLayout.View> views,
+                                  ReportPruning pruning, HeapLayoutMetrics metrics, Object... roots) {
+        this.maxObjectsPerSlice = maxObjectsPerSlice;
+        this.maxNanosPerSlice = maxNanosPerSlice;
+
+        builder = new HeapLayout.Builder(roots).withViews(views).withPruning(pruning).withMetrics(metrics);
+        traversal = new HeapTraversal(tc, new VisitedSet.WithReferenceOpenHashSet(identitySetCapacity),
+                new ReferenceFieldLayout.Cache(objectSizeCacheCapacity), new SimpleStack<>(stackCapacity), new InitialNodeFactory(hd, stackCapacity),
+                builder).withBudget(budget).withMetrics(metrics);
+        traversal.addRoots(roots);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Run one slice of the traversal, within the configured budget.
+     *
+     * @return true if the traversal is exhausted, and the result is available
+     */
+    public boolean step() {
+        if (result == null) {
+            if (slices++ == 0) {
+                event = HeapLayoutEvent.beginIfEnabled();
+            }
+            if (traversal.step(maxObjectsPerSlice, maxNanosPerSlice)) {
+                traversal.reportContainerCapacities();
+                traversal.reportMetrics();
+                result = HeapLayout.build(builder, event);
+                event = null;
+                traversal = null; // release stack, identity set and aggregates
+                builder = null;
+            }
+        }
+        return result != null;
+    }
+
+    public boolean isExhausted() {
+        return result != null;
+    }
+
+    /**
+     * @return the number of slices run so far
+     */
+    public int getSlices() {
+        return slices;
+    }
+
+    /**
+     * @return the object graph
+     * @throws IllegalStateException unless exhausted
+     */
+    public HeapLayout getResult() {
+        if (result == null) {
+            throw new IllegalStateException("traversal not exhausted yet");
+        }
+        return result;
+    }
+
+    public static class Builder {
+
+        private TraversalControl traversalControl = TraversalControl.instance();
+        private HistogramDeduplicator histogramDeduplicator = HistogramDeduplicator.instance();
+        private int stackCapacity = 1 << 5;
+        private int identitySetCapacity = 1 << 5;
+        private int objectSizeCacheCapacity = 1 << 5;
+        private long maxObjectsPerSlice = Long.MAX_VALUE;
+        private long maxNanosPerSlice = Long.MAX_VALUE;
+        private TraversalBudget budget = TraversalBudget.unlimited();
+        private Set<HeapLayout.View> views = EnumSet.allOf(HeapLayout.View.class);
+        private ReportPruning pruning = ReportPruning.none();
+        private HeapLayoutMetrics metrics;
+
+        /**
+         * @param roots root instance(s) to start from
+         */
+        public IncrementalHeapLayout build(Object... roots) {
+            return new IncrementalHeapLayout(traversalControl, histogramDeduplicator, stackCapacity, identitySetCapacity, objectSizeCacheCapacity,
+                    maxObjectsPerSlice, maxNanosPerSlice, budget, views, pruning, metrics, roots);
+        }
+
+        /**
+         * @param budget limits for the traversal as a whole, as opposed to those per slice
+         */
+        public Builder withBudget(TraversalBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public Builder withHistogramDeduplicator(HistogramDeduplicator histogramDeduplicator) {
+            this.histogramDeduplicator = histogramDeduplicator;
+            return this;
+        }
+
+        /**
+         * @param maxObjects maximum number of objects visited per slice
+         */
+        public Builder withMaxObjectsPerSlice(long maxObjects) {
+            if (maxObjects < 1) {
+                throw new IllegalArgumentException("maxObjects must be positive: " + maxObjects);
+            }
+            this.maxObjectsPerSlice = maxObjects;
+            return this;
+        }
+
+        /**
+         * @param maxNanos maximum time spent per slice; may be exceeded by the time it takes to visit a few dozen objects
+         */
+        public Builder withMaxNanosPerSlice(long maxNanos) {
+            if (maxNanos < 1) {
+                throw new IllegalArgumentException("maxNanos must be positive: " + maxNanos);
+            }
+            this.maxNanosPerSlice = maxNanos;
+            return this;
+        }
+
+        /**
+         * @param stackCapacity           pass the value from the previous run or a guesstimate to reduce incremental growth costs
+         * @param identitySetCapacity     pass the value from the previous run or a guesstimate to reduce incremental growth costs
+         * @param objectSizeCacheCapacity pass the value from the previous run or a guesstimate to reduce incremental growth costs
+         */
+        public Builder withCapacities(int stackCapacity, int identitySetCapacity, int objectSizeCacheCapacity) {
+            this.stackCapacity = stackCapacity;
+            this.identitySetCapacity = identitySetCapacity;
+            this.objectSizeCacheCapacity = objectSizeCacheCapacity;
+            return this;
+        }
+
+        /**
+         * @param metrics listener for the cost of the traversal and of rendering its reports, or null to measure nothing
+         */
+        public Builder withMetrics(HeapLayoutMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param pruning limits on the rows of the reports
+         */
+        public Builder withPruning(ReportPruning pruning) {
+            this.pruning = pruning;
+            return this;
+        }
+
+        /**
+         * @param views views to collect, e.g. only the class histogram if just footprints are needed
+         */
+        public Builder withViews(Set<HeapLayout.View> views) {
+            this.views = HeapLayout.View.copyOf(views);
+            return this;
+        }
+
+        public Builder withTraversalControl(TraversalControl traversalControl) {
+            this.traversalControl = traversalControl;
+            return this;
+        }
+    }
+}
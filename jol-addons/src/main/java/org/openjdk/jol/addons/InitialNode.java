@@ -29,28 +29,63 @@ import org.openjdk.jol.info.HeapWalker;
 
 class InitialNode extends BaseNode implements HeapWalker.Node {
 
-    private ClassPath path;
+    private ClassPathImpl path;
     private Object object;
+    private ClassPathImpl parentPath;
+    private long weight = 1L;
+    private int depth;
 
     @Override
     public int depth() {
-        return 0;
+        return depth;
+    }
+
+    void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @return path of the object this one was discovered from, null for roots and unless set by the traversal
+     */
+    ClassPathImpl getParentPath() {
+        return parentPath;
+    }
+
+    void setParentPath(ClassPathImpl parentPath) {
+        this.parentPath = parentPath;
     }
 
     @Override
     public long getCount() {
-        return 1L; // one InitialNode per heap object
+        return weight; // one InitialNode per heap object, standing in for that many if sampled
+    }
+
+    @Override
+    public long getSize() {
+        return Math.multiplyExact(super.getSize(), weight);
+    }
+
+    /**
+     * @return the inverse probability of this object having been sampled; 1 unless sampled. Objects reached through the same sampled
+     * array element are sampled together, so the builder accounts for the variance per element rather than per node.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    void setWeight(long weight) {
+        this.weight = weight;
     }
 
     public Class<?> getObjectClass() {
         return object.getClass();
     }
 
-    public ClassPath getPath() {
+    public ClassPathImpl getPath() {
         return path;
     }
 
-    void setPath(ClassPath path) {
+    void setPath(ClassPathImpl path) {
         this.path = path;
     }
 
@@ -64,7 +99,10 @@ class InitialNode extends BaseNode implements HeapWalker.Node {
         super.reset();
 
         path = null;
+        parentPath = null;
         object = null;
+        weight = 1L;
+        depth = 0;
 
         return this;
     }
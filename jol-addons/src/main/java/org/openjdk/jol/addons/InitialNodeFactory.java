@@ -27,7 +27,6 @@ package org.openjdk.jol.addons;
 import org.openjdk.jol.util.SimpleStack;
 
 import javax.annotation.Nonnull;
-import java.util.List;
 
 
 public final class InitialNodeFactory {
@@ -35,13 +34,11 @@ public final class InitialNodeFactory {
     private final HistogramDeduplicator histogramDeduplicator;
     private final SimpleStack<InitialNode> recyclerForObjects;
     private final SimpleStack<InitialNode> recyclerForArrays;
-    private final List<Object> tailCache;
 
     public InitialNodeFactory(HistogramDeduplicator histogramDeduplicator, int expectedStackDepth) {
         this.histogramDeduplicator = histogramDeduplicator;
         recyclerForObjects = new SimpleStack<>(expectedStackDepth);
         recyclerForArrays = new SimpleStack<>(Math.max(1 << 5, expectedStackDepth >>> 4));
-        tailCache = new TwoItemArrayList<>();
     }
 
     InitialNode createArrayIndexNode(InitialNode parent, int idx, int depth, Object o) {
@@ -52,6 +49,15 @@ public final class InitialNodeFactory {
         return getNode(parent, label, o, false);
     }
 
+    /**
+     * @param mergedLabel field name already merged by {@link HistogramDeduplicator#getMergedField(Class, String)}
+     */
+    InitialNode createMergedFieldNode(InitialNode parent, String mergedLabel, Object o) {
+        ClassPathImpl path = getMergedPath(parent, o, mergedLabel, false);
+
+        return tryReuseNode(path, o, o.getClass().isArray());
+    }
+
     private SimpleStack<InitialNode> getRecyclerFor(InitialNode node) {
         return getRecyclerFor(node.isArrayInfo());
     }
@@ -66,26 +72,26 @@ public final class InitialNodeFactory {
 
     @Nonnull
     private InitialNode getNode(InitialNode parent, String label, Object o, boolean arrayIndexed) {
-        ClassPath path = getPath(parent, o, label, arrayIndexed);
+        ClassPathImpl path = getPath(parent, o, label, arrayIndexed);
 
         return tryReuseNode(path, o, o.getClass().isArray());
     }
 
-    private ClassPath getPath(InitialNode parent, Object o, String label, boolean arrayIndexed) {
+    private ClassPathImpl getPath(InitialNode parent, Object o, String label, boolean arrayIndexed) {
         String mergedLabel = arrayIndexed || parent == null ? label : HistogramDeduplicator.getMergedField(parent.getObjectClass(), label);
 
+        return getMergedPath(parent, o, mergedLabel, arrayIndexed);
+    }
+
+    private ClassPathImpl getMergedPath(InitialNode parent, Object o, String mergedLabel, boolean arrayIndexed) {
         if (parent != null) {
-            tailCache.set(0, mergedLabel);
-            tailCache.set(1, o.getClass());
-            return parent.getPath().computeIfAbsent(mergedLabel, o.getClass(), tailCache, histogramDeduplicator, arrayIndexed);
+            return parent.getPath().computeIfAbsent(mergedLabel, o.getClass(), histogramDeduplicator, arrayIndexed);
         } else {
-            ClassPathImpl root = new ClassPathImpl(1);
-            root.add(o.getClass());
-            return root;
+            return ClassPathImpl.root(o.getClass());
         }
     }
 
-    private InitialNode tryReuseNode(ClassPath path, Object o, boolean isArray) {
+    private InitialNode tryReuseNode(ClassPathImpl path, Object o, boolean isArray) {
         SimpleStack<InitialNode> recycler = getRecyclerFor(isArray);
         InitialNode node = recycler.isEmpty() ? isArray ? new InitialNodeForArray() : new InitialNode() : recycler.pop();
 
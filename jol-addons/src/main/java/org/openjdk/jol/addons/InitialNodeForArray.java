@@ -45,7 +45,7 @@ class InitialNodeForArray extends InitialNode {
 
     @Override
     public long getLength() {
-        return _length;
+        return Math.multiplyExact(_length, getWeight());
     }
 
     @Override
@@ -60,7 +60,7 @@ class InitialNodeForArray extends InitialNode {
 
     @Override
     public long getUsed() {
-        return _used;
+        return Math.multiplyExact(_used, getWeight());
     }
 
     @Override
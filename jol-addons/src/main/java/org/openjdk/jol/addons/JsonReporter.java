@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import com.google.common.base.Strings;
+
+import javax.annotation.Nullable;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+
+/**
+ * Streams the reports as JSON, one node at a time. Nesting is derived from the depth of consecutive nodes of the pre-order walk, so
+ * memory use is bounded by the walk's stack and the writer's buffer, regardless of the size of the tree.
+ * <p>
+ * Children appear in the order of the text reports, i.e. largest first.
+ */
+final class JsonReporter {
+
+    private final ReportWriter w;
+    private final String description;
+    private final boolean withErrorBounds;
+    private final boolean truncated;
+
+    private int previousDepth;
+
+    JsonReporter(OutputStream out, String description, boolean withErrorBounds, boolean truncated) {
+        this.w = new ReportWriter(null, Channels.newChannel(out), StandardCharsets.UTF_8, Locale.ROOT);
+        this.description = description;
+        this.withErrorBounds = withErrorBounds;
+        this.truncated = truncated;
+    }
+
+    JsonReporter withMetrics(@Nullable HeapLayoutMetrics metrics) {
+        w.withMetrics(metrics);
+        return this;
+    }
+
+    /**
+     * {@code {"description": ..., "sampled": ..., "truncated": ..., "root": {"label": ..., ..., "children": [...]}}}
+     */
+    void toTree(PermNode root, int stackDepth) {
+        printPreamble();
+        w.append(",\"root\":");
+        previousDepth = -1;
+        NodeWithChildren.walk(root, 0, NodeWithChildren.UNLIMITED, 0, this::printNested, stackDepth);
+        if (previousDepth >= 0) {
+            w.append('}');
+            for (int depth = previousDepth; depth > 0; --depth) {
+                w.append("]}");
+            }
+        }
+        w.append('}').newLine();
+        w.flush();
+    }
+
+    /**
+     * {@code {"description": ..., "sampled": ..., "truncated": ..., "total": {...}, "classes": [{...}, ...]}}
+     */
+    void toFootprint(PermNode root, int stackDepth) {
+        printPreamble();
+        w.append(",\"total\":{");
+        printCounts(root, true);
+        w.append("},\"classes\":[");
+        previousDepth = -1;
+        NodeWithChildren.walk(root, 1, 1, 0, (node, depth) -> {
+            if (previousDepth >= 0) {
+                w.append(',');
+            }
+            w.append('{');
+            printLabel(node);
+            w.append(',');
+            printCounts(node, false);
+            w.append(",\"average\":").integer(node.getAverage(), 0, false);
+            w.append('}');
+            previousDepth = depth;
+        }, stackDepth);
+        w.append("]}").newLine();
+        w.flush();
+    }
+
+    private void printPreamble() {
+        w.append("{\"description\":");
+        string(description);
+        w.append(",\"sampled\":").append(String.valueOf(withErrorBounds));
+        w.append(",\"truncated\":").append(String.valueOf(truncated));
+    }
+
+    private void printNested(PermNode node, int depth) {
+        if (previousDepth >= 0) {
+            if (depth > previousDepth) {
+                w.append(",\"children\":[");
+            } else {
+                w.append('}');
+                for (int d = previousDepth; d > depth; --d) {
+                    w.append("]}");
+                }
+                w.append(',');
+            }
+        }
+        previousDepth = depth;
+
+        w.append('{');
+        printLabel(node);
+        w.append(',');
+        printCounts(node, false);
+        w.append(",\"totalCount\":").integer(node.getTotalCount(), 0, false);
+        w.append(",\"totalSize\":").integer(node.getTotalSize(), 0, false);
+        w.append(",\"retainedChildCount\":").integer(node.getRetainedChildCount(), 0, false);
+        w.append(",\"retainedChildSize\":").integer(node.getRetainedChildSize(), 0, false);
+        if (node.isArrayInfo()) {
+            w.append(",\"length\":").integer(node.getLength(), 0, false);
+            w.append(",\"used\":").integer(node.getUsed(), 0, false);
+        }
+        if (node instanceof Ellipsis) {
+            w.append(((Ellipsis) node).isTruncated() ? ",\"truncated\":true" : ",\"terminal\":true");
+        }
+    }
+
+    private void printLabel(PermNode node) {
+        w.append("\"label\":");
+        string(node.getLabel());
+        if (!Strings.isNullOrEmpty(node.getPrefix())) {
+            w.append(",\"prefix\":");
+            string(node.getPrefix());
+        }
+    }
+
+    private void printCounts(PermNode node, boolean total) {
+        w.append("\"count\":").integer(total ? node.getTotalCount() : node.getCount(), 0, false);
+        w.append(",\"size\":").integer(node.getSize(), 0, false);
+        if (withErrorBounds) {
+            w.append(",\"countErrorBound\":").integer(node.getCountErrorBound(), 0, false);
+            w.append(",\"sizeErrorBound\":").integer(node.getSizeErrorBound(), 0, false);
+        }
+    }
+
+    private void string(String s) {
+        w.append('"');
+        for (int i = 0, n = s.length(); i < n; ++i) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    w.append("\\\"");
+                    break;
+                case '\\':
+                    w.append("\\\\");
+                    break;
+                case '\n':
+                    w.append("\\n");
+                    break;
+                case '\r':
+                    w.append("\\r");
+                    break;
+                case '\t':
+                    w.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        w.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        w.append(c);
+                    }
+            }
+        }
+        w.append('"');
+    }
+}
@@ -24,9 +24,9 @@
  */
 package org.openjdk.jol.addons;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.openjdk.jol.util.SimpleStack;
 
+import java.util.Arrays;
 import java.util.function.BiConsumer;
 
 
@@ -47,13 +47,16 @@ interface NodeWithChildren<N> {
     static <N extends NodeWithChildren<N>> void walk(N root, int minDepth, int maxDepth, int depthOffset, BiConsumer<N, Integer> preOrder,
                                                      int expectedStackDepth) {
 
-        final SimpleStack<Pair<Integer, N>> stack = new SimpleStack<>(expectedStackDepth);
-        stack.push(Pair.of(0, root));
+        // depths in a parallel array rather than pairs, so walking allocates nothing per node
+        final SimpleStack<N> stack = new SimpleStack<>(expectedStackDepth);
+        int[] depths = new int[Math.max(expectedStackDepth, 1 << 4)];
+        stack.push(root);
+        depths[0] = 0;
+        int top = 0;
 
         while (!stack.isEmpty()) {
-            final Pair<Integer, N> top = stack.pop();
-            final int depth = top.getLeft();
-            final N node = top.getRight();
+            final N node = stack.pop();
+            final int depth = depths[top--];
 
             if (depth >= minDepth) {
                 preOrder.accept(node, depth + depthOffset);
@@ -62,8 +65,12 @@ interface NodeWithChildren<N> {
             if (UNLIMITED == maxDepth || depth < maxDepth) {
                 final N[] children = node.getChildren();
                 if (children != null) {
+                    if (top + children.length >= depths.length) {
+                        depths = Arrays.copyOf(depths, Math.max(depths.length << 1, top + children.length + 1));
+                    }
                     for (N child : children) {
-                        stack.push(Pair.of(depth + 1, child));
+                        stack.push(child);
+                        depths[++top] = depth + 1;
                     }
                 }
             }
@@ -32,6 +32,7 @@ import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.openjdk.jol.vm.VM;
 import org.openjdk.jol.vm.VirtualMachine;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ToLongFunction;
 
 
@@ -92,4 +93,63 @@ public interface ObjectSizeCache extends org.openjdk.jol.info.ObjectSizeCache {
             return value;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Lock-free and backed by per-class sizes shared process-wide, so any number of concurrent traversals may use it without warming
+     * up first. The traversals of this package take the shallow sizes of instances from it.
+     */
+    final class WithClassValue implements ObjectSizeCache {
+
+        private static final VirtualMachine VM_INSTANCE = VM.current();
+
+        private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+        private static final ClassValue<ShallowSize> SIZES = new ClassValue<>() {
+            @Override
+            protected ShallowSize computeValue(Class<?> type) {
+                CLASS_COUNT.incrementAndGet();
+                return new ShallowSize();
+            }
+        };
+
+        private static final WithClassValue INSTANCE = new WithClassValue();
+
+        private WithClassValue() {
+        }
+
+        public static WithClassValue instance() {
+            return INSTANCE;
+        }
+
+        /**
+         * @return size of the given instance, measured once per class unless an array
+         */
+        @Override
+        public long get(Class<?> cl, Object e) {
+            if (cl.isArray()) {
+                return VM_INSTANCE.sizeOf(e);
+            }
+            ShallowSize shallowSize = SIZES.get(cl);
+            long size = shallowSize.value;
+            if (size == 0) {
+                size = VM_INSTANCE.sizeOf(e);
+                shallowSize.value = size;
+            }
+            return size;
+        }
+
+        /**
+         * @return number of classes measured so far
+         */
+        @Override
+        public int size() {
+            return CLASS_COUNT.get();
+        }
+
+        private static final class ShallowSize {
+
+            // racy single-check idiom; all threads compute the same value
+            private volatile long value;
+        }
+    }
+}
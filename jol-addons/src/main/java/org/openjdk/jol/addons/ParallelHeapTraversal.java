@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import org.openjdk.jol.util.SimpleStack;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Fork-join traversal, splitting work per root and per chunk of large reference arrays, and handing whatever is left on the stack
+ * after such an array to a task of its own.
+ * <p>
+ * Tasks run speculatively, each with its own builder resp. stats. They share a table of claims, in which an object is held by the
+ * task coming first in the order of the sequential traversal among those that have claimed it so far. A task records the objects it
+ * claims as well as those it skips for being held by an earlier task. Once all tasks have completed, they are resolved in that order:
+ * a task that claimed nothing committed before, and skipped nothing that was not, saw exactly what the sequential traversal would have
+ * seen, so its results are committed, and its subtasks resolved in turn. Any other task is run again sequentially, along with its
+ * subtasks, skipping the objects committed so far. Results thus equal those of the sequential traversal, objects reachable along
+ * several paths included; the more of them are shared between tasks, though, the more work is repeated.
+ * <p>
+ * Each worker thread owns its stack, class layout cache and node factory.
+ */
+final class ParallelHeapTraversal {
+
+    static final int ARRAY_CHUNK_SIZE = 1 << 10;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // nesting of tasks beyond which large arrays are left to the task at hand, bounding the length of keys to compare
+    private static final int MAX_NESTING = 1 << 6;
+
+    // key of the roots, which are claimed up front and come before any task
+    private static final int[] ROOTS_KEY = new int[0];
+
+    private final TraversalControl tc;
+    @Nullable
+    private final HistogramDeduplicator hd;
+    private final Object[] roots;
+    private final ClaimTable claims;
+    private final List<Task> rootTasks = new ArrayList<>();
+    private final Map<Thread, Worker> workers = new ConcurrentHashMap<>();
+
+    // resolution, confined to the calling thread
+    private final VisitedSet.Queryable committed = new VisitedSet.WithReferenceOpenHashSet(INITIAL_CAPACITY);
+    private final ReferenceFieldLayout.Cache layouts = new ReferenceFieldLayout.Cache(INITIAL_CAPACITY);
+    private HeapTraversal sequential;
+    private int maxStackSize;
+
+    private ParallelHeapTraversal(TraversalControl tc, @Nullable HistogramDeduplicator hd, int parallelism, Object[] roots) {
+        this.tc = tc;
+        this.hd = hd;
+        this.roots = roots;
+        claims = new ClaimTable(INITIAL_CAPACITY, parallelism << 2);
+
+        List<Object> claimedRoots = new ArrayList<>(roots.length);
+        for (Object root : roots) {
+            if (root != null && tc.isChildToBeTraversed(null, null, -1, root) && committed.add(root)) {
+                claims.claim(root, ROOTS_KEY);
+                claimedRoots.add(root);
+            }
+        }
+        // the sequential traversal pushes all roots before visiting the last one first
+        for (int i = claimedRoots.size() - 1; i >= 0; --i) {
+            rootTasks.add(new RootTask(new int[]{rootTasks.size()}, claimedRoots.get(i)));
+        }
+    }
+
+    static HeapLayout parseInstance(ForkJoinPool pool, TraversalControl tc, HistogramDeduplicator hd, Object... roots) {
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        ParallelHeapTraversal traversal = new ParallelHeapTraversal(tc, hd, pool.getParallelism(), roots);
+        pool.invoke(traversal.new RootsTask());
+
+        HeapLayout.Builder builder = new HeapLayout.Builder(roots);
+        traversal.resolve(builder, null);
+        builder.setContainerCapacities(traversal.maxStackSize, traversal.committed.size(), traversal.sizeCacheCapacity());
+
+        return HeapLayout.build(builder, event);
+    }
+
+    static HeapStats parseInstance(ForkJoinPool pool, TraversalControl tc, Object... roots) {
+        HeapLayoutEvent event = HeapLayoutEvent.beginIfEnabled();
+        ParallelHeapTraversal traversal = new ParallelHeapTraversal(tc, null, pool.getParallelism(), roots);
+        pool.invoke(traversal.new RootsTask());
+
+        HeapStats stats = new HeapStats(roots);
+        traversal.resolve(null, stats);
+        stats.setContainerCapacities(traversal.maxStackSize, traversal.committed.size(), traversal.sizeCacheCapacity());
+
+        HeapLayoutEvent.commit(event, stats, roots);
+        return stats;
+    }
+
+    /**
+     * Commit the tasks in the order of the sequential traversal, running those again whose speculation failed.
+     */
+    private void resolve(@Nullable HeapLayout.Builder builder, @Nullable HeapStats stats) {
+        Deque<Task> pending = new ArrayDeque<>();
+        pushInReverse(pending, rootTasks);
+        while (!pending.isEmpty()) {
+            Task task = pending.pop();
+            if (task.isConsistentWith(committed)) {
+                task.commitTo(committed, builder, stats);
+                maxStackSize = Math.max(maxStackSize, task.maxStackSize);
+                pushInReverse(pending, task.subtasks);
+            } else {
+                runSequentially(task, builder, stats);
+            }
+        }
+    }
+
+    private static void pushInReverse(Deque<Task> pending, List<Task> tasks) {
+        for (int i = tasks.size() - 1; i >= 0; --i) {
+            pending.push(tasks.get(i));
+        }
+    }
+
+    /**
+     * Run the task again, including the work it handed to subtasks, skipping everything committed so far.
+     */
+    private void runSequentially(Task task, @Nullable HeapLayout.Builder builder, @Nullable HeapStats stats) {
+        if (sequential == null) {
+            SimpleStack<Object> stack = new SimpleStack<>(INITIAL_CAPACITY);
+            sequential = hd != null
+                    ? new HeapTraversal(tc, committed, layouts, stack, new InitialNodeFactory(hd, INITIAL_CAPACITY), builder)
+                    : new HeapTraversal(tc, committed, layouts, stack, stats);
+        }
+        task.seed(sequential);
+        sequential.run();
+        maxStackSize = Math.max(maxStackSize, sequential.maxStackSize());
+    }
+
+    private int sizeCacheCapacity() {
+        int capacity = layouts.size();
+        for (Worker worker : workers.values()) {
+            capacity = Math.max(capacity, worker.layouts.size());
+        }
+        return capacity;
+    }
+
+    private Worker worker() {
+        return workers.computeIfAbsent(Thread.currentThread(), ignored -> new Worker());
+    }
+
+    /**
+     * @return true if the task of the first key comes before the task of the second one in the order of the sequential traversal
+     */
+    private static boolean precedes(int[] key, int[] other) {
+        for (int i = 0, n = Math.min(key.length, other.length); i < n; ++i) {
+            if (key[i] != other[i]) {
+                return key[i] < other[i];
+            }
+        }
+        return key.length < other.length; // a task comes before the subtasks it spawned
+    }
+
+    private static boolean isAncestor(int[] key, int[] other) {
+        return key.length < other.length && Arrays.equals(key, 0, key.length, other, 0, key.length);
+    }
+
+    /**
+     * @return copy of the node with the given path, carrying everything the traversal needs to push it or its children
+     */
+    private static InitialNode copyOf(InitialNode node, ClassPathImpl path) {
+        InitialNode copy = node instanceof InitialNodeForArray ? new InitialNodeForArray() : new InitialNode();
+        copy.setPath(path);
+        copy.setObject(node.obj());
+        copy.setWeight(node.getWeight());
+        copy.setDepth(node.depth());
+        return copy;
+    }
+
+    /**
+     * @return copy of the node to be used by another thread, since paths are owned by the worker that created them
+     */
+    private static InitialNode detachedCopyOf(InitialNode node) {
+        return copyOf(node, node.getPath().detachedCopy());
+    }
+
+
+    private final class Worker {
+
+        private final ReferenceFieldLayout.Cache layouts = new ReferenceFieldLayout.Cache(INITIAL_CAPACITY);
+        private final SimpleStack<Object> stack = new SimpleStack<>(INITIAL_CAPACITY);
+        @Nullable
+        private final InitialNodeFactory nodeFactory = hd == null ? null : new InitialNodeFactory(hd, INITIAL_CAPACITY);
+
+        HeapTraversal newTraversal(Task task) {
+            final HeapTraversal traversal;
+            if (nodeFactory != null) {
+                task.builder = new HeapLayout.Builder(roots);
+                traversal = new HeapTraversal(tc, task, layouts, stack, nodeFactory, task.builder);
+            } else {
+                task.stats = new HeapStats(roots);
+                traversal = new HeapTraversal(tc, task, layouts, stack, task.stats);
+            }
+            return traversal.withLargeArrayHandler(ARRAY_CHUNK_SIZE,
+                    (node, array, mark) -> task.forkArrayChunks(traversal, node, array, mark));
+        }
+    }
+
+
+    /**
+     * Unit of speculative work, serving as the visited set of its own traversal.
+     */
+    private abstract class Task extends RecursiveAction implements VisitedSet {
+
+        private static final long serialVersionUID = 1L;
+
+        // position in the order of the sequential traversal: that of the parent task, followed by the index among its subtasks
+        private final int[] key;
+        private final List<Object> claimed = new ArrayList<>();
+        private final List<Object> skipped = new ArrayList<>();
+        private final List<Task> subtasks = new ArrayList<>(0);
+
+        private HeapLayout.Builder builder;
+        private HeapStats stats;
+        private int maxStackSize;
+
+        Task(int[] key) {
+            this.key = key;
+        }
+
+        @Override
+        protected final void compute() {
+            HeapTraversal traversal = worker().newTraversal(this);
+            seed(traversal);
+            traversal.run();
+            maxStackSize = traversal.maxStackSize();
+            // the worker's stack is drained, so tasks executed by this thread while joining may use it
+            for (Task task : subtasks) {
+                task.join();
+            }
+        }
+
+        /**
+         * Seed the traversal, either the speculative one of this task or the sequential one of the resolution.
+         */
+        protected abstract void seed(HeapTraversal traversal);
+
+        /**
+         * Hand the elements of the array, and whatever is left on the stack below them, to subtasks.
+         */
+        private void forkArrayChunks(HeapTraversal traversal, @Nullable InitialNode node, Object[] array, int mark) {
+            Object[] elements = traversal.claimArrayElements(array, mark);
+            if (elements == null) {
+                return;
+            }
+            if (key.length >= MAX_NESTING) {
+                traversal.addClaimedArrayElements(node, elements, 0, array.length, mark);
+                return;
+            }
+            // the sequential traversal visits the last elements first
+            for (int to = array.length; to > 0; ) {
+                int from = (to - 1) / ARRAY_CHUNK_SIZE * ARRAY_CHUNK_SIZE;
+                // the node is about to be recycled, and its path is owned by this worker
+                InitialNode parent = node == null ? null : detachedCopyOf(node);
+                subtasks.add(new ArrayChunkTask(nextKey(), parent, elements, from, to, mark));
+                to = from;
+            }
+            List<Object> items = new ArrayList<>();
+            IntArrayList marks = new IntArrayList();
+            traversal.drainStack((item, itemMark) -> {
+                items.add(item instanceof InitialNode ? detachedCopyOf((InitialNode) item) : item);
+                marks.add(itemMark);
+            });
+            if (!items.isEmpty()) {
+                subtasks.add(new ContinuationTask(nextKey(), items, marks.toIntArray()));
+            }
+            for (Task task : subtasks) {
+                task.fork();
+            }
+        }
+
+        private int[] nextKey() {
+            int[] next = Arrays.copyOf(key, key.length + 1);
+            next[key.length] = subtasks.size();
+            return next;
+        }
+
+        /**
+         * @return true if the task saw the objects committed so far just as the sequential traversal would have
+         */
+        boolean isConsistentWith(VisitedSet.Queryable committed) {
+            for (Object o : claimed) {
+                if (committed.contains(o)) {
+                    return false;
+                }
+            }
+            for (Object o : skipped) {
+                if (!committed.contains(o)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void commitTo(VisitedSet committed, @Nullable HeapLayout.Builder builder, @Nullable HeapStats stats) {
+            for (Object o : claimed) {
+                committed.add(o);
+            }
+            if (builder != null) {
+                builder.merge(this.builder);
+            } else {
+                stats.add(this.stats);
+            }
+        }
+
+        @Override
+        public boolean add(Object o) {
+            int[] holder = claims.claim(o, key);
+            if (holder == null || precedes(key, holder)) {
+                claimed.add(o);
+                return true;
+            }
+            if (holder != key && !isAncestor(holder, key)) {
+                skipped.add(o); // to be committed by an earlier task, or this one is run again
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return claimed.size();
+        }
+    }
+
+
+    private final class RootTask extends Task {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object root;
+
+        RootTask(int[] key, Object root) {
+            super(key);
+            this.root = root;
+        }
+
+        @Override
+        protected void seed(HeapTraversal traversal) {
+            traversal.addClaimedRoot(root);
+        }
+    }
+
+
+    private final class ArrayChunkTask extends Task {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nullable
+        private final InitialNode parent;
+        private final Object[] elements;
+        private final int from;
+        private final int to;
+        private final int mark;
+
+        /**
+         * @param elements as claimed by the task that spawned this one
+         */
+        ArrayChunkTask(int[] key, @Nullable InitialNode parent, Object[] elements, int from, int to, int mark) {
+            super(key);
+            this.parent = parent;
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+            this.mark = mark;
+        }
+
+        @Override
+        protected void seed(HeapTraversal traversal) {
+            traversal.addClaimedArrayElements(parent, elements, from, to, mark);
+        }
+    }
+
+
+    private final class ContinuationTask extends Task {
+
+        private static final long serialVersionUID = 1L;
+
+        // bottom of the stack first; nodes are copied when seeding, since traversals recycle the nodes they visit
+        private final List<Object> items;
+        private final int[] marks;
+
+        ContinuationTask(int[] key, List<Object> items, int[] marks) {
+            super(key);
+            this.items = items;
+            this.marks = marks;
+        }
+
+        @Override
+        protected void seed(HeapTraversal traversal) {
+            for (int i = 0; i < marks.length; ++i) {
+                Object item = items.get(i);
+                if (item instanceof InitialNode) {
+                    InitialNode node = (InitialNode) item;
+                    item = copyOf(node, node.getPath());
+                }
+                traversal.addClaimed(item, marks[i]);
+            }
+        }
+    }
+
+
+    private final class RootsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            invokeAll(rootTasks);
+        }
+    }
+
+
+    /**
+     * Claims of all tasks by object identity, striped by identity hash code. An object is held by the task coming first in the order
+     * of the sequential traversal among those that have claimed it so far.
+     */
+    private static final class ClaimTable {
+
+        private final Reference2ObjectOpenHashMap<Object, int[]>[] stripes;
+        private final int mask;
+
+        ClaimTable(int capacity, int concurrency) {
+            int n = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+            stripes = newStripes(n);
+            for (int i = 0; i < n; ++i) {
+                stripes[i] = new Reference2ObjectOpenHashMap<>(Math.max(16, capacity / n));
+            }
+            mask = n - 1;
+        }
+
+        // generic arrays cannot be created; the array never escapes and only ever holds maps of the declared type
+        @SuppressWarnings("unchecked")
+        private static Reference2ObjectOpenHashMap<Object, int[]>[] newStripes(int n) {
+            return (Reference2ObjectOpenHashMap<Object, int[]>[]) new Reference2ObjectOpenHashMap<?, ?>[n];
+        }
+
+        /**
+         * Hand the object to the task of the given key, unless held by an earlier one.
+         *
+         * @return key of the task holding the object before, or null if none
+         */
+        @Nullable
+        int[] claim(Object o, int[] key) {
+            Reference2ObjectOpenHashMap<Object, int[]> stripe = stripeFor(o);
+            synchronized (stripe) {
+                int[] holder = stripe.get(o);
+                if (holder == null || precedes(key, holder)) {
+                    stripe.put(o, key);
+                }
+                return holder;
+            }
+        }
+
+        private Reference2ObjectOpenHashMap<Object, int[]> stripeFor(Object o) {
+            int h = System.identityHashCode(o);
+            return stripes[(h ^ (h >>> 16)) & mask];
+        }
+    }
+}
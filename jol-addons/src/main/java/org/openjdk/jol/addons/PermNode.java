@@ -51,6 +51,16 @@ class PermNode extends BaseNode implements NodeWithChildren<PermNode> {
         }
     }
 
+    /**
+     * Same as {@link #getArrayLabel()}, without the intermediate string
+     */
+    void printArrayLabel(ReportWriter w) {
+        if (isArrayInfo()) {
+            w.append(" [").integer(getUsed(), 0, false).append(" of ").integer(getLength(), 0, false).append(" used (")
+                    .decimal(getUsePercentage(), 0, 2).append(" %)]");
+        }
+    }
+
     @Override
     public PermNode[] getChildren() {
         return _children;
@@ -63,10 +73,25 @@ class PermNode extends BaseNode implements NodeWithChildren<PermNode> {
         }
     }
 
+    void setParent(PermNode parent) {
+        _parent = parent;
+    }
+
     public String getLabel() {
         return Strings.isNullOrEmpty(_parentClassName) ? _label : _parentClassName + "." + _label;
     }
 
+    /**
+     * @return the label without the parent class name, see {@link #getLabel()}
+     */
+    String getOwnLabel() {
+        return _label;
+    }
+
+    String getParentClassName() {
+        return _parentClassName;
+    }
+
     public double getParentCountPercentage() {
         return _parent == null ? 100.0 : percent(getTotalCount(), _parent.getTotalCount());
     }
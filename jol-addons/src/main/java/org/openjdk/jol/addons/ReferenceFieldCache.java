@@ -32,6 +32,8 @@ import org.openjdk.jol.vm.VM;
 import org.openjdk.jol.vm.VirtualMachine;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ToLongFunction;
 
 public interface ReferenceFieldCache extends org.openjdk.jol.info.ReferenceFieldCache {
@@ -93,4 +95,90 @@ public interface ReferenceFieldCache extends org.openjdk.jol.info.ReferenceField
         }
     }
 
+    /**
+     * Lock-free, with offsets precomputed per declaring class and shared process-wide, so any number of concurrent traversals may use it
+     * without warming up first. A field is resolved to its slot in the declaring class by comparing names, which the VM interns, so no
+     * hashing is involved per lookup. The traversals of this package take the offsets of reference fields from it.
+     */
+    final class WithClassValue implements ReferenceFieldCache {
+
+        private static final VirtualMachine VM_INSTANCE = VM.current();
+
+        private static final AtomicInteger FIELD_COUNT = new AtomicInteger();
+
+        // effectively immutable once computed, and safely published by ClassValue
+        private static final ClassValue<DeclaredOffsets> OFFSETS = new ClassValue<>() {
+            @Override
+            protected DeclaredOffsets computeValue(Class<?> type) {
+                DeclaredOffsets offsets = new DeclaredOffsets(type.getDeclaredFields());
+                FIELD_COUNT.addAndGet(offsets.names.length);
+                return offsets;
+            }
+        };
+
+        private static final WithClassValue INSTANCE = new WithClassValue();
+
+        private WithClassValue() {
+        }
+
+        public static WithClassValue instance() {
+            return INSTANCE;
+        }
+
+        @Override
+        public Object get(Field f, Object e) {
+            return VM_INSTANCE.getObject(e, offsetOf(f));
+        }
+
+        /**
+         * @return offset of the given instance field
+         */
+        static long offsetOf(Field f) {
+            long offset = OFFSETS.get(f.getDeclaringClass()).getOffset(f);
+            if (offset == -1L) {
+                offset = VM_INSTANCE.fieldOffset(f); // static or primitive, not expected to happen
+            }
+            return offset;
+        }
+
+        @Override
+        public int size() {
+            return FIELD_COUNT.get();
+        }
+
+        private static final class DeclaredOffsets {
+
+            private final String[] names;
+            private final long[] offsets;
+
+            DeclaredOffsets(Field[] fields) {
+                int count = 0;
+                for (Field f : fields) {
+                    if (!Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+                        count++;
+                    }
+                }
+                names = new String[count];
+                offsets = new long[count];
+                int index = 0;
+                for (Field f : fields) {
+                    if (!Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+                        names[index] = f.getName();
+                        offsets[index] = VM_INSTANCE.fieldOffset(f);
+                        index++;
+                    }
+                }
+            }
+
+            long getOffset(Field f) {
+                String name = f.getName();
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i] == name) { // names are interned, and unique within the declaring class
+                        return offsets[i];
+                    }
+                }
+                return -1L;
+            }
+        }
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Per-class metadata needed to visit instances: offsets of reference fields, their labels as merged by
+ * {@link HistogramDeduplicator#getMergedField(Class, String)}, their roles within collections, and the shallow size of instances.
+ * <p>
+ * Computed once per class and process, and shared by all traversals. Each traversal looks layouts up through a {@link Cache} owned by
+ * its caller, e.g. a session, so visiting an object involves one lookup per object rather than one per field. Offsets and sizes are
+ * taken from {@link ReferenceFieldCache.WithClassValue} and {@link ObjectSizeCache.WithClassValue}.
+ */
+final class ReferenceFieldLayout {
+
+    private static final AtomicInteger LAYOUT_COUNT = new AtomicInteger();
+
+    private static final ClassValue<ReferenceFieldLayout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected ReferenceFieldLayout computeValue(Class<?> type) {
+            LAYOUT_COUNT.incrementAndGet();
+            return new ReferenceFieldLayout(type);
+        }
+    };
+
+    private final Field[] fields;
+    private final long[] offsets;
+    private final String[] labels;
+    @Nullable
+    private final byte[] shallowCollectionCodes;
+
+    // copied from the process-wide size cache, saving a lookup per instance
+    private volatile long shallowSize;
+
+    private ReferenceFieldLayout(Class<?> type) {
+
+        List<Field> referenceFields = new ArrayList<>();
+        if (!type.isArray()) {
+            for (Class<?> cl = type; cl != null; cl = cl.getSuperclass()) {
+                for (Field f : cl.getDeclaredFields()) {
+                    if (!Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+                        referenceFields.add(f);
+                    }
+                }
+            }
+        }
+
+        int n = referenceFields.size();
+        fields = referenceFields.toArray(new Field[n]);
+        offsets = new long[n];
+        labels = new String[n];
+        for (int i = 0; i < n; ++i) {
+            offsets[i] = ReferenceFieldCache.WithClassValue.offsetOf(fields[i]);
+            labels[i] = HistogramDeduplicator.getMergedField(type, fields[i].getName());
+        }
+        shallowCollectionCodes = ShallowCollections.codesOf(fields);
+    }
+
+    static ReferenceFieldLayout of(Class<?> cl) {
+        return LAYOUTS.get(cl);
+    }
+
+    /**
+     * @return number of layouts computed so far, i.e. distinct classes seen by any traversal
+     */
+    static int count() {
+        return LAYOUT_COUNT.get();
+    }
+
+    Field getField(int i) {
+        return fields[i];
+    }
+
+    String getLabel(int i) {
+        return labels[i];
+    }
+
+    long getOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @return role of the field within a collection and annotations present on it, as interpreted by {@link ShallowCollections}
+     */
+    int getShallowCollectionCode(int i) {
+        return shallowCollectionCodes == null ? 0 : shallowCollectionCodes[i];
+    }
+
+    /**
+     * @param instance an instance of the class, not an array
+     */
+    long getShallowSize(Object instance) {
+        long size = shallowSize;
+        if (size == 0) {
+            size = ObjectSizeCache.WithClassValue.instance().get(instance.getClass(), instance);
+            shallowSize = size;
+        }
+        return size;
+    }
+
+    int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Layouts of the classes seen by one owner, e.g. a session, in front of the process-wide ones. Classes are numbered densely in order
+     * of appearance, suitable for indexing primitive tables of the owner.
+     * <p>
+     * Not thread-safe.
+     */
+    static final class Cache {
+
+        private final Reference2IntOpenHashMap<Class<?>> indices;
+        private ReferenceFieldLayout[] layouts;
+        private long misses;
+
+        /**
+         * @param capacity expected number of classes; pass the size cache capacity of the previous run or a guesstimate
+         */
+        Cache(int capacity) {
+            indices = new Reference2IntOpenHashMap<>(capacity);
+            indices.defaultReturnValue(-1);
+            layouts = new ReferenceFieldLayout[Math.max(1, capacity)];
+        }
+
+        /**
+         * @return index of the given class, assigned on first use
+         */
+        int indexOf(Class<?> cl) {
+            int index = indices.getInt(cl);
+            if (index < 0) {
+                index = indices.size();
+                if (index == layouts.length) {
+                    layouts = Arrays.copyOf(layouts, index << 1);
+                }
+                layouts[index] = ReferenceFieldLayout.of(cl);
+                indices.put(cl, index);
+                ++misses;
+            }
+            return index;
+        }
+
+        /**
+         * @return index of the given class, or -1 unless seen before
+         */
+        int findIndexOf(Class<?> cl) {
+            return indices.getInt(cl);
+        }
+
+        /**
+         * @param index as returned by {@link #indexOf(Class)}
+         */
+        ReferenceFieldLayout get(int index) {
+            return layouts[index];
+        }
+
+        /**
+         * @return number of lookups of classes not seen before
+         */
+        long misses() {
+            return misses;
+        }
+
+        /**
+         * @return number of classes seen
+         */
+        int size() {
+            return indices.size();
+        }
+    }
+}
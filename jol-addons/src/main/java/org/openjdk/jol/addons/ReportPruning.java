@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+/**
+ * Limits on the rows of the drill-down reports and the footprint. Children of a row beyond the configured rank, or below the configured
+ * size or share of their parent, are folded into a single "(others)" row carrying their summed counts and sizes, so totals are retained.
+ */
+public final class ReportPruning {
+
+    static final String OTHERS_LABEL = "(others)";
+
+    private static final ReportPruning NONE = builder().build();
+
+    private final int maxChildren;
+    private final long minSize;
+    private final double minParentPercentage;
+
+    private ReportPruning(int maxChildren, long minSize, double minParentPercentage) {
+        this.maxChildren = maxChildren;
+        this.minSize = minSize;
+        this.minParentPercentage = minParentPercentage;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static ReportPruning none() {
+        return NONE;
+    }
+
+    public int getMaxChildren() {
+        return maxChildren;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public double getMinParentPercentage() {
+        return minParentPercentage;
+    }
+
+    boolean isEnabled() {
+        return maxChildren != Integer.MAX_VALUE || minSize > 0 || minParentPercentage > 0;
+    }
+
+    /**
+     * @param rank       position among siblings by total size, 0 being the largest
+     * @param size       total size of the child
+     * @param parentSize total size of its parent
+     */
+    boolean isKept(int rank, long size, long parentSize) {
+        return rank < maxChildren && size >= minSize && BaseNode.percent(size, parentSize) >= minParentPercentage;
+    }
+
+    public static class Builder {
+
+        private int maxChildren = Integer.MAX_VALUE;
+        private long minSize;
+        private double minParentPercentage;
+
+        public ReportPruning build() {
+            return new ReportPruning(maxChildren, minSize, minParentPercentage);
+        }
+
+        /**
+         * @param maxChildren number of largest children kept per row
+         */
+        public Builder withMaxChildren(int maxChildren) {
+            if (maxChildren < 1) {
+                throw new IllegalArgumentException("maxChildren must be positive: " + maxChildren);
+            }
+            this.maxChildren = maxChildren;
+            return this;
+        }
+
+        /**
+         * @param minSize total size in bytes a child must reach to be kept
+         */
+        public Builder withMinSize(long minSize) {
+            if (minSize < 0) {
+                throw new IllegalArgumentException("minSize must not be negative: " + minSize);
+            }
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * @param minParentPercentage share of the total size of its parent a child must reach to be kept, from 0 to 100
+         */
+        public Builder withMinParentPercentage(double minParentPercentage) {
+            if (!(minParentPercentage >= 0.0 && minParentPercentage <= 100.0)) {
+                throw new IllegalArgumentException("minParentPercentage must be within [0, 100]: " + minParentPercentage);
+            }
+            this.minParentPercentage = minParentPercentage;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+
+/**
+ * Renders report rows into a reusable buffer, producing the very same characters as {@link java.util.Formatter} would for the few
+ * conversions the reports use, i.e. {@code %,Nd}, {@code %N.Pf} and {@code %Ns}, localized for the default format locale. Rounding is
+ * done in binary unless the value is too close to a tie to tell, in which case the formatter's decimal rounding is deferred to.
+ * <p>
+ * Not thread-safe; one instance per report.
+ */
+final class ReportWriter {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+    private static final int SCRATCH_SIZE = 1 << 9;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L};
+    private static final String[] DECIMAL_FORMATS = {"%.0f", "%.1f", "%.2f", "%.3f"};
+
+    private static final String UNITS = "KMGTPE";
+
+    private final Writer writer;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] scratch = new char[SCRATCH_SIZE];
+    private int position;
+
+    private final Locale locale;
+    private final char zero;
+    private final char decimalSeparator;
+    private final char groupingSeparator; // 0 unless grouping is used
+    private final int groupingSize;
+
+    @Nullable
+    private HeapLayoutMetrics metrics;
+    private long started;
+    private long lines;
+
+    ReportWriter(Writer writer) {
+        this(writer, null, null, Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    ReportWriter(WritableByteChannel channel, Charset charset) {
+        this(null, channel, charset, Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    ReportWriter(Writer writer, WritableByteChannel channel, Charset charset, Locale locale) {
+        this.writer = writer;
+        this.channel = channel;
+        if (channel != null) {
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bytes = ByteBuffer.allocate(BUFFER_SIZE * 2);
+            chars = CharBuffer.wrap(buffer);
+        } else {
+            encoder = null;
+            bytes = null;
+            chars = null;
+        }
+
+        this.locale = locale;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        zero = symbols.getZeroDigit();
+        decimalSeparator = symbols.getDecimalSeparator();
+
+        // mirrors java.util.Formatter
+        NumberFormat nf = NumberFormat.getIntegerInstance(locale);
+        if (nf instanceof DecimalFormat && nf.isGroupingUsed() && ((DecimalFormat) nf).getGroupingSize() > 0) {
+            groupingSeparator = symbols.getGroupingSeparator();
+            groupingSize = ((DecimalFormat) nf).getGroupingSize();
+        } else {
+            groupingSeparator = 0;
+            groupingSize = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Report the time and lines from now until each {@link #flush()} as {@link HeapLayoutMetrics.Phase#RENDERING}.
+     */
+    ReportWriter withMetrics(@Nullable HeapLayoutMetrics metrics) {
+        this.metrics = metrics;
+        started = metrics == null ? 0 : System.nanoTime();
+        return this;
+    }
+
+    ReportWriter append(char c) {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = c;
+        return this;
+    }
+
+    ReportWriter append(String s) {
+        for (int offset = 0, length = s.length(); offset < length; ) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int n = Math.min(length - offset, buffer.length - position);
+            s.getChars(offset, offset + n, buffer, position);
+            position += n;
+            offset += n;
+        }
+        return this;
+    }
+
+    ReportWriter append(char[] chars, int offset, int length) {
+        for (int end = offset + length; offset < end; ) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int n = Math.min(end - offset, buffer.length - position);
+            System.arraycopy(chars, offset, buffer, position, n);
+            position += n;
+            offset += n;
+        }
+        return this;
+    }
+
+    ReportWriter newLine() {
+        ++lines;
+        return append(LINE_SEPARATOR);
+    }
+
+    /**
+     * For headlines and the like, rendered once per report.
+     */
+    ReportWriter format(String format, Object... args) {
+        final String s = String.format(locale, format, args);
+        for (int i = s.indexOf(LINE_SEPARATOR); i >= 0; i = s.indexOf(LINE_SEPARATOR, i + LINE_SEPARATOR.length())) {
+            ++lines;
+        }
+        return append(s);
+    }
+
+    /**
+     * {@code %Ns}
+     */
+    ReportWriter string(String s, int width) {
+        pad(width - s.length());
+        return append(s);
+    }
+
+    /**
+     * {@code %,Nd} if grouped, {@code %Nd} otherwise
+     */
+    ReportWriter integer(long value, int width, boolean grouped) {
+        return emit(renderInteger(value, grouped, SCRATCH_SIZE), width);
+    }
+
+    /**
+     * {@code %N.Pf}
+     */
+    ReportWriter decimal(double value, int width, int precision) {
+        return emit(renderDecimal(value, precision, SCRATCH_SIZE), width);
+    }
+
+    /**
+     * {@code %+,Nd} if grouped, {@code %+Nd} otherwise
+     */
+    ReportWriter signedInteger(long value, int width, boolean grouped) {
+        return emit(sign(value, renderInteger(value, grouped, SCRATCH_SIZE)), width);
+    }
+
+    /**
+     * {@code %Ns} of {@link HeapLayout#humanReadableByteCountBin(long)}
+     */
+    ReportWriter byteCount(long bytes, int width) {
+        return emit(renderByteCount(bytes, SCRATCH_SIZE), width);
+    }
+
+    /**
+     * Same as {@link #byteCount(long, int)}, with a plus sign unless negative
+     */
+    ReportWriter signedByteCount(long bytes, int width) {
+        return emit(sign(bytes, renderByteCount(bytes, SCRATCH_SIZE)), width);
+    }
+
+    void flush() {
+        drain();
+        try {
+            if (channel != null) {
+                chars.position(0).limit(position);
+                encode(true);
+                position = 0;
+                while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+                    write();
+                }
+                write();
+                encoder.reset();
+            } else {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (metrics != null) {
+            final long now = System.nanoTime();
+            metrics.onPhase(HeapLayoutMetrics.Phase.RENDERING, now - started, lines);
+            started = now;
+            lines = 0;
+        }
+    }
+
+    private ReportWriter pad(int count) {
+        for (int i = 0; i < count; ++i) {
+            append(' ');
+        }
+        return this;
+    }
+
+    private ReportWriter emit(int start, int width) {
+        pad(width - (SCRATCH_SIZE - start));
+        for (int offset = start; offset < SCRATCH_SIZE; ) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int n = Math.min(SCRATCH_SIZE - offset, buffer.length - position);
+            System.arraycopy(scratch, offset, buffer, position, n);
+            position += n;
+            offset += n;
+        }
+        return this;
+    }
+
+    private int renderByteCount(long bytes, int end) {
+        long absB = bytes == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(bytes);
+        int start = end;
+        if (absB < 1024) {
+            scratch[--start] = 'B';
+            scratch[--start] = ' ';
+            start = renderAsciiInteger(bytes, start); // plain string concatenation, not localized
+        } else {
+            long value = absB;
+            int unit = 0;
+            for (int i = 40; i >= 0 && absB > 0xfffccccccccccccL >> i; i -= 10) {
+                value >>= 10;
+                ++unit;
+            }
+            value *= Long.signum(bytes);
+            scratch[--start] = 'B';
+            scratch[--start] = 'i';
+            scratch[--start] = UNITS.charAt(unit);
+            scratch[--start] = ' ';
+            start = renderDecimal(value / 1024.0, 1, start);
+        }
+        return start;
+    }
+
+    private int sign(long value, int start) {
+        if (value >= 0) {
+            scratch[--start] = '+';
+        }
+        return start;
+    }
+
+    /**
+     * Renders right-aligned into the scratch buffer, ending before {@code end}.
+     *
+     * @return start of the rendered value
+     */
+    private int renderInteger(long value, boolean grouped, int end) {
+        final int groupSize = grouped && groupingSeparator != 0 ? groupingSize : Integer.MAX_VALUE;
+        int start = end;
+        long v = value > 0 ? -value : value; // non-positive covers Long.MIN_VALUE
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % groupSize == 0) {
+                scratch[--start] = groupingSeparator;
+            }
+            scratch[--start] = (char) (zero - v % 10);
+            v /= 10;
+            ++digits;
+        } while (v != 0);
+        if (value < 0) {
+            scratch[--start] = '-';
+        }
+        return start;
+    }
+
+    private int renderAsciiInteger(long value, int end) {
+        int start = end;
+        long v = value > 0 ? -value : value;
+        do {
+            scratch[--start] = (char) ('0' - v % 10);
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            scratch[--start] = '-';
+        }
+        return start;
+    }
+
+    private int renderDecimal(double value, int precision, int end) {
+        final double magnitude = Math.abs(value);
+        final double scaled = magnitude * POWERS_OF_TEN[precision];
+        if (!(scaled < 0x1p52)) { // also NaN and infinities
+            return renderFormatted(value, precision, end);
+        }
+
+        long units = (long) scaled;
+        final double fraction = scaled - units;
+        if (Math.abs(fraction - 0.5) <= Math.max(1e-6, 4 * Math.ulp(scaled))) {
+            // the formatter rounds the shortest decimal representation half up, which may differ from the binary value
+            return renderFormatted(value, precision, end);
+        }
+        if (fraction > 0.5) {
+            ++units;
+        }
+
+        int start = end;
+        for (int i = 0; i < precision; ++i) {
+            scratch[--start] = (char) (zero + units % 10);
+            units /= 10;
+        }
+        if (precision > 0) {
+            scratch[--start] = decimalSeparator;
+        }
+        do {
+            scratch[--start] = (char) (zero + units % 10);
+            units /= 10;
+        } while (units != 0);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            scratch[--start] = '-';
+        }
+        return start;
+    }
+
+    private int renderFormatted(double value, int precision, int end) {
+        String s = String.format(locale, DECIMAL_FORMATS[precision], value);
+        int start = Math.max(0, end - s.length());
+        s.getChars(s.length() - (end - start), s.length(), scratch, start);
+        return start;
+    }
+
+    private void drain() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            if (channel != null) {
+                chars.position(0).limit(position);
+                encode(false);
+                // keep a dangling high surrogate for the next round
+                int remaining = chars.remaining();
+                System.arraycopy(buffer, chars.position(), buffer, 0, remaining);
+                position = remaining;
+            } else {
+                writer.write(buffer, 0, position);
+                position = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        while (encoder.encode(chars, bytes, endOfInput) == CoderResult.OVERFLOW) {
+            write();
+        }
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
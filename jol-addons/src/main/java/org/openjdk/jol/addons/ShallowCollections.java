@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Implements {@link ExcludeKeys} and {@link ExcludeValues}: collections reached through annotated fields are marked, the mark spreads
+ * along the fields known to hold their internal structure, and edges from marked objects to keys or values are cut.
+ * <p>
+ * Marks depend on the path an object is reached through, so they are not kept here but carried along with the items on the stack of
+ * each traversal; a mark of 0 means unmarked. What this class keeps is a code per reference field slot of a class' {@link
+ * ReferenceFieldLayout}, combining the role of the field within a collection with the annotations present on it.
+ */
+final class ShallowCollections {
+
+    static final int UNMARKED = 0;
+    static final int CUT = -1;
+
+    private static final int EXCLUDE_KEYS = 1;
+    private static final int EXCLUDE_VALUES = 2;
+    private static final int MODE_MASK = EXCLUDE_KEYS | EXCLUDE_VALUES;
+    private static final int ELEMENTS_ARE_VALUES = 4;
+    private static final int REFERENT_IS_VALUE = 8;
+
+    private static final int NONE = 0;
+    private static final int KEY = 1;
+    private static final int VALUE = 2;
+    private static final int STRUCTURE = 3;
+    private static final int VALUE_STORE = 4; // array whose elements are values
+    private static final int VALUE_REFERENCE = 5; // java.lang.ref.Reference whose referent is the value
+    private static final int REFERENT = 6; // key or value, depending on the mark
+
+    private static final int ROLE_MASK = 7;
+    private static final int MODE_SHIFT = 3;
+
+    private static final String GUAVA_LOCAL_CACHE = "com.google.common.cache.LocalCache";
+
+    private static final Object2IntMap<String> NO_ROLES = roles(NONE);
+
+    private static final Map<String, Object2IntMap<String>> ROLES_PER_CLASS;
+    private static final Object2IntMap<String> GUAVA_ROLES;
+
+    static {
+        Map<String, Object2IntMap<String>> roles = new HashMap<>();
+
+        // java.util
+        roles.put("java.util.ArrayList", roles(VALUE_STORE, "elementData"));
+        roles.put("java.util.HashMap", roles(STRUCTURE, "table"));
+        roles.put("java.util.HashMap$Node", entryRoles("key", "value", "next"));
+        roles.put("java.util.HashMap$TreeNode", roles(STRUCTURE, "parent", "left", "right", "prev"));
+        roles.put("java.util.LinkedHashMap", roles(STRUCTURE, "head", "tail"));
+        roles.put("java.util.LinkedHashMap$Entry", roles(STRUCTURE, "before", "after"));
+        roles.put("java.util.HashSet", roles(STRUCTURE, "map"));
+        roles.put("java.util.TreeMap", roles(STRUCTURE, "root"));
+        roles.put("java.util.TreeMap$Entry", entryRoles("key", "value", "left", "right", "parent"));
+        roles.put("java.util.TreeSet", roles(STRUCTURE, "m"));
+        roles.put("java.util.Collections$UnmodifiableMap", roles(STRUCTURE, "m"));
+        roles.put("java.util.Collections$UnmodifiableCollection", roles(STRUCTURE, "c"));
+        roles.put("java.util.Collections$SynchronizedMap", roles(STRUCTURE, "m"));
+        roles.put("java.util.Collections$SynchronizedCollection", roles(STRUCTURE, "c"));
+
+        // java.util.concurrent
+        roles.put("java.util.concurrent.ConcurrentHashMap", roles(STRUCTURE, "table", "nextTable"));
+        roles.put("java.util.concurrent.ConcurrentHashMap$Node", entryRoles("key", "val", "next"));
+        roles.put("java.util.concurrent.ConcurrentHashMap$TreeBin", roles(STRUCTURE, "root", "first"));
+        roles.put("java.util.concurrent.ConcurrentHashMap$TreeNode", roles(STRUCTURE, "parent", "left", "right", "prev"));
+        roles.put("java.util.concurrent.ConcurrentHashMap$ForwardingNode", roles(STRUCTURE, "nextTable"));
+        roles.put("java.util.concurrent.ConcurrentLinkedQueue", roles(STRUCTURE, "head", "tail"));
+        roles.put("java.util.concurrent.ConcurrentLinkedQueue$Node", roles(STRUCTURE, "item", "next"));
+        roles.put("java.util.concurrent.atomic.AtomicReferenceArray", roles(STRUCTURE, "array"));
+
+        // weak keys and values of guava caches
+        roles.put("java.lang.ref.Reference", roles(REFERENT, "referent"));
+
+        ROLES_PER_CLASS = Collections.unmodifiableMap(roles);
+
+        // guava, matched by prefix as it consists of dozens of nested and anonymous classes
+        GUAVA_ROLES = roles(STRUCTURE, "localCache", "segments", "table", "recencyQueue", "accessQueue", "writeQueue", "head", "next",
+                "nextAccess", "previousAccess", "nextWrite", "previousWrite");
+        GUAVA_ROLES.put("key", KEY);
+        GUAVA_ROLES.put("referent", VALUE);
+        GUAVA_ROLES.put("valueReference", VALUE_REFERENCE);
+        GUAVA_ROLES.put("oldValue", VALUE_REFERENCE);
+    }
+
+    private static final ClassValue<Object2IntMap<String>> ROLES = new ClassValue<>() {
+        @Override
+        protected Object2IntMap<String> computeValue(Class<?> type) {
+            String name = type.getName();
+            if (name.startsWith(GUAVA_LOCAL_CACHE)) {
+                return GUAVA_ROLES;
+            }
+            return ROLES_PER_CLASS.getOrDefault(name, NO_ROLES);
+        }
+    };
+
+    private ShallowCollections() {
+    }
+
+    private static Object2IntMap<String> roles(int role, String... fields) {
+        Object2IntMap<String> roles = new Object2IntOpenHashMap<>(fields.length);
+        roles.defaultReturnValue(NONE);
+        for (String field : fields) {
+            roles.put(field, role);
+        }
+        return roles;
+    }
+
+    private static Object2IntMap<String> entryRoles(String key, String value, String... structure) {
+        Object2IntMap<String> roles = roles(STRUCTURE, structure);
+        roles.put(key, KEY);
+        roles.put(value, VALUE);
+        return roles;
+    }
+
+    /**
+     * @param fields reference fields of a class, in layout order
+     * @return code per field, or null if none of them plays a role
+     */
+    @Nullable
+    static byte[] codesOf(Field[] fields) {
+        byte[] codes = null;
+        for (int i = 0; i < fields.length; ++i) {
+            Field field = fields[i];
+            int role = ROLES.get(field.getDeclaringClass()).getInt(field.getName());
+            int mode = (field.isAnnotationPresent(ExcludeKeys.class) ? EXCLUDE_KEYS : 0)
+                    | (field.isAnnotationPresent(ExcludeValues.class) ? EXCLUDE_VALUES : 0);
+            if (role != NONE || mode != 0) {
+                if (codes == null) {
+                    codes = new byte[fields.length];
+                }
+                codes[i] = (byte) (role | mode << MODE_SHIFT);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * @param parentMark mark of the object holding the field
+     * @param code       code of the field, see {@link ReferenceFieldLayout#getShallowCollectionCode(int)}
+     * @return mark of the child, or {@link #CUT} if the edge is not to be followed
+     */
+    static int fieldMark(int parentMark, int code) {
+        int mode = code >>> MODE_SHIFT;
+        if (mode != 0) {
+            return mode;
+        }
+        if (parentMark == UNMARKED) {
+            return UNMARKED;
+        }
+
+        int role = code & ROLE_MASK;
+        if (role == REFERENT) {
+            role = (parentMark & REFERENT_IS_VALUE) != 0 ? VALUE : KEY;
+        }
+        return childMark(parentMark & MODE_MASK, role);
+    }
+
+    /**
+     * @param arrayMark mark of the array holding the element
+     * @return mark of the element, or {@link #CUT} if the edge is not to be followed
+     */
+    static int elementMark(int arrayMark) {
+        if (arrayMark == UNMARKED) {
+            return UNMARKED;
+        }
+        return childMark(arrayMark & MODE_MASK, (arrayMark & ELEMENTS_ARE_VALUES) != 0 ? VALUE : STRUCTURE);
+    }
+
+    private static int childMark(int mode, int role) {
+        switch (role) {
+            case NONE:
+                return UNMARKED;
+            case KEY:
+                return (mode & EXCLUDE_KEYS) == 0 ? UNMARKED : CUT;
+            case VALUE:
+                return (mode & EXCLUDE_VALUES) == 0 ? UNMARKED : CUT;
+            case VALUE_STORE:
+                return mode | ELEMENTS_ARE_VALUES;
+            case VALUE_REFERENCE:
+                return mode | REFERENT_IS_VALUE;
+            default:
+                return mode;
+        }
+    }
+}
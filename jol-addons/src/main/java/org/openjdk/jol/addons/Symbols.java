@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Process-wide interning of the symbols {@link ClassPath}s are made of, i.e. classes and field labels, to dense int ids.
+ * <p>
+ * Classes are looked up by ClassValue and referenced weakly, so interning them does not keep class loaders from being unloaded. A
+ * {@link ClassPathImpl} keeps its classes reachable, so the ids held by live paths always resolve. Once a class has been unloaded, no
+ * path refers to its id anymore, and the id is handed out again, so the table is bounded by the classes loaded plus the distinct
+ * field labels seen.
+ */
+final class Symbols {
+
+    private static final ClassValue<Integer> CLASS_IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return registerClass(type);
+        }
+    };
+
+    private static final ConcurrentMap<String, Integer> LABEL_IDS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Class<?>> UNLOADED = new ReferenceQueue<>();
+
+    private static final Object LOCK = new Object();
+
+    // String, or ClassReference; grown under LOCK, and entries are written before their id is published
+    private static volatile Object[] symbols = new Object[1 << 8];
+    private static int count;
+
+    private Symbols() {
+    }
+
+    static int of(Class<?> cl) {
+        return CLASS_IDS.get(cl);
+    }
+
+    static int of(String label) {
+        Integer id = LABEL_IDS.get(label);
+        if (id == null) {
+            id = LABEL_IDS.computeIfAbsent(label, Symbols::register);
+        }
+        return id;
+    }
+
+    static int of(Object symbol) {
+        return symbol instanceof Class<?> ? of((Class<?>) symbol) : of((String) symbol);
+    }
+
+    /**
+     * @return the class or label; null only if the class has been unloaded, which cannot happen while a path refers to it
+     */
+    static Object get(int id) {
+        Object symbol = symbols[id];
+        return symbol instanceof ClassReference ? ((ClassReference) symbol).get() : symbol;
+    }
+
+    /**
+     * @return hash code of the class or label, as used by {@link java.util.List#hashCode()}
+     */
+    static int hashOf(int id) {
+        Object symbol = get(id);
+        return symbol == null ? 0 : symbol.hashCode();
+    }
+
+    static boolean isClass(int id) {
+        return symbols[id] instanceof ClassReference;
+    }
+
+    private static int registerClass(Class<?> type) {
+        synchronized (LOCK) {
+            ClassReference unloaded = (ClassReference) UNLOADED.poll();
+            if (unloaded == null) {
+                return register(new ClassReference(type, count));
+            }
+            Object[] table = symbols;
+            table[unloaded.id] = new ClassReference(type, unloaded.id);
+            symbols = table;
+            return unloaded.id;
+        }
+    }
+
+    private static int register(Object symbol) {
+        synchronized (LOCK) {
+            Object[] table = symbols;
+            if (count == table.length) {
+                table = Arrays.copyOf(table, count << 1);
+            }
+            table[count] = symbol;
+            symbols = table;
+            return count++;
+        }
+    }
+
+    private static final class ClassReference extends WeakReference<Class<?>> {
+
+        private final int id;
+
+        ClassReference(Class<?> type, int id) {
+            super(type, UNLOADED);
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+/**
+ * Hard limits for a traversal. Once the object or byte limit is reached, the traversal stops; objects beyond the depth limit are not
+ * visited. Either way, the result remains valid, with the heap tree rows whose subtrees were cut marked as truncated.
+ */
+public final class TraversalBudget {
+
+    private static final TraversalBudget UNLIMITED = builder().build();
+
+    private final int maxDepth;
+    private final long maxObjects;
+    private final long maxBytes;
+
+    private TraversalBudget(int maxDepth, long maxObjects, long maxBytes) {
+        this.maxDepth = maxDepth;
+        this.maxObjects = maxObjects;
+        this.maxBytes = maxBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static TraversalBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return maximum distance from the roots, which are at depth 0
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxObjects() {
+        return maxObjects;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    boolean isDepthLimited() {
+        return maxDepth != Integer.MAX_VALUE;
+    }
+
+    boolean isExceeded(long objects, long bytes) {
+        return objects >= maxObjects || bytes >= maxBytes;
+    }
+
+    public static class Builder {
+
+        private int maxDepth = Integer.MAX_VALUE;
+        private long maxObjects = Long.MAX_VALUE;
+        private long maxBytes = Long.MAX_VALUE;
+
+        public TraversalBudget build() {
+            return new TraversalBudget(maxDepth, maxObjects, maxBytes);
+        }
+
+        public Builder withMaxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        public Builder withMaxObjects(long maxObjects) {
+            if (maxObjects < 1) {
+                throw new IllegalArgumentException("maxObjects must be positive: " + maxObjects);
+            }
+            this.maxObjects = maxObjects;
+            return this;
+        }
+
+        /**
+         * @param maxBytes maximum sum of the shallow sizes of the objects visited; when sampling, objects count once rather than for
+         *                 the elements they stand in for
+         */
+        public Builder withMaxBytes(long maxBytes) {
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+    }
+}
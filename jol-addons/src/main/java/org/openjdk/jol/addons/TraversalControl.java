@@ -36,6 +36,15 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 
+/**
+ * Decides which edges of the object graph are followed. Decisions only depend on classes and fields, so they are computed once per
+ * class and cached, the ones on fields as a bitset over the reference field slots of the class' {@link ReferenceFieldLayout}; the
+ * configured sets and lists must therefore not change once passed in.
+ * <p>
+ * Fields annotated with {@link ExcludeKeys} or {@link ExcludeValues} are honoured by the traversals of this package for
+ * {@code ArrayList}, {@code HashMap}, {@code LinkedHashMap}, {@code HashSet}, {@code TreeMap}, {@code TreeSet},
+ * {@code ConcurrentHashMap}, their unmodifiable and synchronized wrappers, and guava's {@code LocalCache}.
+ */
 public class TraversalControl {
 
     private static final Logger LOG = LoggerFactory.getLogger(TraversalControl.class);
@@ -52,18 +61,51 @@ public class TraversalControl {
     private final List<Class<? extends Annotation>> annotations;
     private final Set<Class<?>> childBlacklistDirectClasses;
     private final List<Class<?>> childBlacklist;
+    private final TraversalRules rules;
     private final Map<String, Set<String>> firstDescents;
+    // true if a subclass decides on edges itself, which the cached verdicts know nothing about
+    private final boolean overridden;
+
+    private final ClassValue<Verdicts> verdicts = new ClassValue<>() {
+        @Override
+        protected Verdicts computeValue(Class<?> type) {
+            Boolean parentExcluded = rules.isParentExcluded(type);
+            Boolean childExcluded = rules.isChildExcluded(type);
+
+            ReferenceFieldLayout layout = ReferenceFieldLayout.of(type);
+            long[] excludedSlots = null;
+            for (int i = 0, n = layout.size(); i < n; ++i) {
+                if (isFieldExcluded(type, layout.getField(i))) {
+                    if (excludedSlots == null) {
+                        excludedSlots = new long[(n + 63) >>> 6];
+                    }
+                    excludedSlots[i >>> 6] |= 1L << i;
+                }
+            }
+
+            return new Verdicts(parentExcluded != null ? parentExcluded : isBlacklisted(type, parentBlacklistDirectClasses, parentBlacklist),
+                    childExcluded != null ? childExcluded : isBlacklisted(type, childBlacklistDirectClasses, childBlacklist), excludedSlots);
+        }
+    };
 
     public TraversalControl(Set<Class<?>> parentBlacklistDirectClasses, List<Class<?>> parentBlacklist, List<Class<? extends Annotation>> annotations,
                             Set<Class<?>> childBlacklistDirectClasses, List<Class<?>> childBlacklist, boolean takeNote) {
 
+        this(parentBlacklistDirectClasses, parentBlacklist, annotations, childBlacklistDirectClasses, childBlacklist, TraversalRules.none(), takeNote);
+    }
+
+    public TraversalControl(Set<Class<?>> parentBlacklistDirectClasses, List<Class<?>> parentBlacklist, List<Class<? extends Annotation>> annotations,
+                            Set<Class<?>> childBlacklistDirectClasses, List<Class<?>> childBlacklist, TraversalRules rules, boolean takeNote) {
+
         this.parentBlacklistDirectClasses = parentBlacklistDirectClasses;
         this.parentBlacklist = parentBlacklist;
         this.annotations = annotations;
         this.childBlacklistDirectClasses = childBlacklistDirectClasses;
         this.childBlacklist = childBlacklist;
+        this.rules = rules;
 
-        this.firstDescents = takeNote ? new HashMap<>() : null;
+        this.firstDescents = takeNote ? new ConcurrentHashMap<>() : null;
+        this.overridden = isOverridden(getClass());
     }
 
     public static Builder builder() {
@@ -74,26 +116,86 @@ public class TraversalControl {
         return INSTANCE;
     }
 
+    /**
+     * Decide on a single edge. {@link ExcludeKeys} and {@link ExcludeValues} are not taken into account, as they depend on the path
+     * the parent was reached through; only the traversals of this package track that.
+     * <p>
+     * Subclasses may override this; the traversals of this package then call it for every edge instead of using the cached verdicts.
+     */
     public boolean isChildToBeTraversed(@Nullable Object parent, @Nullable Field field, Object child) {
         takeNote(parent, child);
 
-        if (parent != null && isParentBlacklisted(parent.getClass())) {
+        if (parent != null && getVerdicts(parent.getClass()).isParentBlacklisted()) {
             return false;
         }
-        // TODO introduce and handle annotations @ExcludeKeys / @ExcludeValues that allow for ADTs to be counted without contents
 
-        if (isChildBlacklisted(child.getClass())) {
+        if (getVerdicts(child.getClass()).isChildBlacklisted()) {
             return false;
         }
 
-        if (isFieldExcludedByAnnotations(field)) {
+        if (field != null && isFieldExcluded(parent, field)) {
             return false;
         }
+
         // TODO find setters with @Autowired annotation matching fields ;) Perhaps then the child blacklist on DAOs can disappear...
 
         return true;
     }
 
+    /**
+     * Same decision as {@link #isChildToBeTraversed(Object, Field, Object)}, for traversals which know the slot of the field in the
+     * {@link ReferenceFieldLayout} of the parent class, so that no field needs to be looked up per edge.
+     *
+     * @param parentVerdicts verdicts on the class of the parent, null for roots
+     * @param slot           index of the field in the layout of the parent class, or -1 for array elements and roots
+     */
+    boolean isChildToBeTraversed(@Nullable Object parent, @Nullable Verdicts parentVerdicts, int slot, Object child) {
+        if (overridden) {
+            return isChildToBeTraversed(parent, getField(parent, slot), child);
+        }
+        if (firstDescents != null) {
+            takeNote(parent, child);
+        }
+
+        return wouldChildBeTraversed(parent, parentVerdicts, slot, child);
+    }
+
+    /**
+     * Same decision as {@link #isChildToBeTraversed(Object, Verdicts, int, Object)} without taking note, for looking ahead. An
+     * overriding {@link #isChildToBeTraversed(Object, Field, Object)} is asked as well, whatever it does besides deciding.
+     */
+    boolean wouldChildBeTraversed(@Nullable Object parent, @Nullable Verdicts parentVerdicts, int slot, Object child) {
+        if (overridden) {
+            return isChildToBeTraversed(parent, getField(parent, slot), child);
+        }
+        if (parentVerdicts != null && (parentVerdicts.isParentBlacklisted() || slot >= 0 && parentVerdicts.isSlotExcluded(slot))) {
+            return false;
+        }
+
+        return !getVerdicts(child.getClass()).isChildBlacklisted();
+    }
+
+    /**
+     * @return verdicts on the given class, computed once per class and instance of TraversalControl
+     */
+    Verdicts getVerdicts(Class<?> cl) {
+        return verdicts.get(cl);
+    }
+
+    @Nullable
+    private static Field getField(@Nullable Object parent, int slot) {
+        return slot >= 0 ? ReferenceFieldLayout.of(parent.getClass()).getField(slot) : null;
+    }
+
+    private static boolean isOverridden(Class<?> cl) {
+        try {
+            return cl != TraversalControl.class
+                    && cl.getMethod("isChildToBeTraversed", Object.class, Field.class, Object.class).getDeclaringClass() != TraversalControl.class;
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     private boolean isBlacklisted(Class<?> cl, Set<Class<?>> blackset, List<Class<?>> blacklist) {
         if (blackset.contains(cl)) {
             return true;
@@ -106,15 +208,25 @@ public class TraversalControl {
         return false;
     }
 
-    private boolean isChildBlacklisted(Class<?> cl) {
-        return isBlacklisted(cl, childBlacklistDirectClasses, childBlacklist);
+    private boolean isFieldExcluded(@Nullable Object parent, Field field) {
+        if (parent != null) {
+            ReferenceFieldLayout layout = ReferenceFieldLayout.of(parent.getClass());
+            for (int i = 0, n = layout.size(); i < n; ++i) {
+                if (layout.getField(i).equals(field)) {
+                    return getVerdicts(parent.getClass()).isSlotExcluded(i);
+                }
+            }
+        }
+        // not a reference field of the parent's class, not worth caching
+        return isFieldExcluded(parent != null ? parent.getClass() : field.getDeclaringClass(), field);
     }
 
-    private boolean isFieldExcludedByAnnotations(@Nullable Field field) {
-        if (field == null) {
-            return false;
-        }
+    private boolean isFieldExcluded(Class<?> owner, Field field) {
+        Boolean excluded = rules.isFieldExcluded(owner, field);
+        return excluded != null ? excluded : isAnnotated(field);
+    }
 
+    private boolean isAnnotated(Field field) {
         for (int i = 0, n = annotations.size(); i < n; ++i) {
             if (field.isAnnotationPresent(annotations.get(i))) {
                 return true;
@@ -124,10 +236,6 @@ public class TraversalControl {
         return false;
     }
 
-    private boolean isParentBlacklisted(Class<?> cl) {
-        return isBlacklisted(cl, parentBlacklistDirectClasses, parentBlacklist);
-    }
-
     private void takeNote(Object parent, Object child) {
         if (firstDescents != null) {
             final String parentName = (parent == null ? Root.class : parent.getClass()).getName();
@@ -148,13 +256,16 @@ public class TraversalControl {
         private Set<Class<?>> childBlacklistDirectClasses = Collections.emptySet();
         private List<Class<?>> childBlacklist = Collections.emptyList();
 
+        private TraversalRules rules = TraversalRules.none();
+
         @Override
         public Object clone() throws CloneNotSupportedException {
             return super.clone();
         }
 
         public TraversalControl build(boolean takeNote) {
-            return new TraversalControl(parentBlacklistDirectClasses, parentBlacklist, annotations, childBlacklistDirectClasses, childBlacklist, takeNote);
+            return new TraversalControl(parentBlacklistDirectClasses, parentBlacklist, annotations, childBlacklistDirectClasses, childBlacklist, rules,
+                    takeNote);
         }
 
         public Builder withAnnotations(List<Class<? extends Annotation>> annotations) {
@@ -181,9 +292,49 @@ public class TraversalControl {
             parentBlacklistDirectClasses = classes;
             return this;
         }
+
+        /**
+         * @param rules rules taking precedence over the configured lists, see {@link TraversalRules}
+         */
+        public Builder withRules(TraversalRules rules) {
+            this.rules = rules;
+            return this;
+        }
     }
 
 
+    /**
+     * Verdicts on one class, both as a parent and as a child, and on the reference fields of its layout.
+     */
+    static final class Verdicts {
+
+        private final boolean parentBlacklisted;
+        private final boolean childBlacklisted;
+        @Nullable
+        private final long[] excludedSlots;
+
+        private Verdicts(boolean parentBlacklisted, boolean childBlacklisted, @Nullable long[] excludedSlots) {
+            this.parentBlacklisted = parentBlacklisted;
+            this.childBlacklisted = childBlacklisted;
+            this.excludedSlots = excludedSlots;
+        }
+
+        boolean isParentBlacklisted() {
+            return parentBlacklisted;
+        }
+
+        boolean isChildBlacklisted() {
+            return childBlacklisted;
+        }
+
+        /**
+         * @param slot index of a reference field in the layout of the class
+         */
+        boolean isSlotExcluded(int slot) {
+            return excludedSlots != null && (excludedSlots[slot >>> 6] & 1L << slot) != 0;
+        }
+    }
+
     /**
      * dummy class to use as key in HashMap
      */
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Declarative rules for {@link TraversalControl}, one per line:
+ * <pre>
+ * # comment
+ * exclude parent  java.lang.Thread+
+ * exclude child   com.example.dao.**
+ * include child   com.example.dao.CachedDao
+ * exclude field   com.example.*Service#.*Cache
+ * exclude annotation javax.persistence.Transient
+ * </pre>
+ * Comments must take a whole line, as {@code #} also separates class and field patterns.
+ * <p>
+ * Class names are globs where {@code *} matches within a package segment and {@code **} across segments. A trailing {@code +}
+ * matches subtypes as well. Fields are given as a class glob and a regular expression on the field name, separated by {@code #}.
+ * The class glob of a field rule is matched against the runtime class of the object holding the field, not the declaring class, so
+ * {@code com.example.CachedDao#cache} also covers a {@code cache} field inherited from a superclass, and {@code Base+#cache} covers
+ * it in all subclasses. Annotations are globs matched against the names of the annotations present on a field.
+ * <p>
+ * The last matching rule wins. Where no rule matches, the lists configured on {@link TraversalControl.Builder} decide. Verdicts are
+ * cached per class by {@link TraversalControl}, so matching cost is paid once per class rather than per edge.
+ */
+public final class TraversalRules {
+
+    private static final TraversalRules NONE = new TraversalRules(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+    private final List<Rule> parentRules;
+    private final List<Rule> childRules;
+    private final List<Rule> fieldRules;
+
+    private TraversalRules(List<Rule> parentRules, List<Rule> childRules, List<Rule> fieldRules) {
+        this.parentRules = parentRules;
+        this.childRules = childRules;
+        this.fieldRules = fieldRules;
+    }
+
+    public static TraversalRules none() {
+        return NONE;
+    }
+
+    public static TraversalRules load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    public static TraversalRules parse(String rules) {
+        try {
+            return parse(new StringReader(rules));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param reader rules to parse, not closed
+     * @return compiled rules
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static TraversalRules parse(Reader reader) throws IOException {
+        List<Rule> parentRules = new ArrayList<>();
+        List<Rule> childRules = new ArrayList<>();
+        List<Rule> fieldRules = new ArrayList<>();
+
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        for (int lineNumber = 1; (line = lines.readLine()) != null; ++lineNumber) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = trimmed.split("\\s+");
+            if (tokens.length != 3) {
+                throw new IllegalArgumentException("line " + lineNumber + ": expected <include|exclude> <target> <pattern>: " + line);
+            }
+
+            boolean exclude;
+            switch (tokens[0]) {
+                case "include":
+                    exclude = false;
+                    break;
+                case "exclude":
+                    exclude = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("line " + lineNumber + ": unknown verdict " + tokens[0]);
+            }
+
+            try {
+                switch (tokens[1]) {
+                    case "parent":
+                        parentRules.add(Rule.forClass(exclude, tokens[2]));
+                        break;
+                    case "child":
+                        childRules.add(Rule.forClass(exclude, tokens[2]));
+                        break;
+                    case "field":
+                        fieldRules.add(Rule.forField(exclude, tokens[2]));
+                        break;
+                    case "annotation":
+                        fieldRules.add(Rule.forAnnotation(exclude, tokens[2]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown target " + tokens[1]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        return new TraversalRules(List.copyOf(parentRules), List.copyOf(childRules), List.copyOf(fieldRules));
+    }
+
+    public boolean isEmpty() {
+        return parentRules.isEmpty() && childRules.isEmpty() && fieldRules.isEmpty();
+    }
+
+    /**
+     * @return verdict of the last matching rule, or {@code null} if none matches
+     */
+    @Nullable
+    Boolean isParentExcluded(Class<?> cl) {
+        return verdict(parentRules, cl);
+    }
+
+    /**
+     * @return verdict of the last matching rule, or {@code null} if none matches
+     */
+    @Nullable
+    Boolean isChildExcluded(Class<?> cl) {
+        return verdict(childRules, cl);
+    }
+
+    /**
+     * @param owner class of the object holding the field, i.e. the declaring class or a subclass thereof
+     * @return verdict of the last matching rule, or {@code null} if none matches
+     */
+    @Nullable
+    Boolean isFieldExcluded(Class<?> owner, Field field) {
+        for (int i = fieldRules.size() - 1; i >= 0; --i) {
+            Rule rule = fieldRules.get(i);
+            if (rule.matches(owner, field)) {
+                return rule.exclude;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Boolean verdict(List<Rule> rules, Class<?> cl) {
+        for (int i = rules.size() - 1; i >= 0; --i) {
+            Rule rule = rules.get(i);
+            if (rule.matches(cl)) {
+                return rule.exclude;
+            }
+        }
+        return null;
+    }
+
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        for (int i = 0, n = glob.length(); i < n; ++i) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    ++i;
+                } else {
+                    regex.append("[^.]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^.]");
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                regex.append(c);
+            } else {
+                regex.append('\\').append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class Rule {
+
+        final boolean exclude;
+
+        @Nullable
+        final Pattern classPattern;
+        final boolean subtypes;
+
+        @Nullable
+        final Pattern fieldPattern;
+
+        @Nullable
+        final Pattern annotationPattern;
+
+        private Rule(boolean exclude, @Nullable Pattern classPattern, boolean subtypes, @Nullable Pattern fieldPattern,
+                     @Nullable Pattern annotationPattern) {
+            this.exclude = exclude;
+            this.classPattern = classPattern;
+            this.subtypes = subtypes;
+            this.fieldPattern = fieldPattern;
+            this.annotationPattern = annotationPattern;
+        }
+
+        static Rule forClass(boolean exclude, String glob) {
+            boolean subtypes = glob.endsWith("+");
+            return new Rule(exclude, compileGlob(subtypes ? glob.substring(0, glob.length() - 1) : glob), subtypes, null, null);
+        }
+
+        static Rule forField(boolean exclude, String pattern) {
+            int separator = pattern.indexOf('#');
+            if (separator <= 0 || separator == pattern.length() - 1) {
+                throw new IllegalArgumentException("expected <class glob>#<field regex>: " + pattern);
+            }
+            String glob = pattern.substring(0, separator);
+            boolean subtypes = glob.endsWith("+");
+            Pattern fieldPattern;
+            try {
+                fieldPattern = Pattern.compile(pattern.substring(separator + 1));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("malformed field regex: " + e.getMessage(), e);
+            }
+            return new Rule(exclude, compileGlob(subtypes ? glob.substring(0, glob.length() - 1) : glob), subtypes, fieldPattern, null);
+        }
+
+        static Rule forAnnotation(boolean exclude, String glob) {
+            return new Rule(exclude, null, false, null, compileGlob(glob));
+        }
+
+        boolean matches(Class<?> cl) {
+            if (!subtypes) {
+                return classPattern.matcher(cl.getName()).matches();
+            }
+
+            Set<Class<?>> seen = new HashSet<>();
+            Deque<Class<?>> pending = new ArrayDeque<>();
+            pending.add(cl);
+            while (!pending.isEmpty()) {
+                Class<?> type = pending.poll();
+                if (!seen.add(type)) {
+                    continue;
+                }
+                if (classPattern.matcher(type.getName()).matches()) {
+                    return true;
+                }
+                if (type.getSuperclass() != null) {
+                    pending.add(type.getSuperclass());
+                }
+                Collections.addAll(pending, type.getInterfaces());
+            }
+            return false;
+        }
+
+        boolean matches(Class<?> owner, Field field) {
+            if (annotationPattern != null) {
+                for (Annotation annotation : field.getDeclaredAnnotations()) {
+                    if (annotationPattern.matcher(annotation.annotationType().getName()).matches()) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return fieldPattern.matcher(field.getName()).matches() && matches(owner);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import org.openjdk.jol.info.VisitedIdentities;
+
+
+/**
+ * Identity based set of objects already visited during traversal, as used by the traversals implemented within this package.
+ */
+interface VisitedSet {
+
+    /**
+     * @return true if the object was not visited before
+     */
+    boolean add(Object o);
+
+    /**
+     * @return a hint on the capacity to prepare for the next run
+     */
+    int size();
+
+    /**
+     * Visited set which can also be queried, as needed for looking ahead under a depth budget, and cleared for reuse across runs.
+     */
+    interface Queryable extends VisitedSet {
+
+        boolean contains(Object o);
+
+        void clear();
+
+        /**
+         * Clear in place, shrinking the underlying table if it is far too large for the expected number of elements.
+         */
+        void clear(int expectedSize);
+    }
+
+    class WithReferenceOpenHashSet implements Queryable {
+
+        private final ReferenceOpenHashSet<Object> set;
+
+        public WithReferenceOpenHashSet(int capacity) {
+            set = new ReferenceOpenHashSet<>(capacity);
+        }
+
+        @Override
+        public boolean add(Object o) {
+            return set.add(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return set.contains(o);
+        }
+
+        @Override
+        public void clear() {
+            set.clear();
+        }
+
+        @Override
+        public void clear(int expectedSize) {
+            set.clear();
+            set.trim(expectedSize);
+        }
+
+        /**
+         * @return number of objects visited
+         */
+        @Override
+        public int size() {
+            return set.size();
+        }
+    }
+
+    /**
+     * Adapter for identity sets prepared by callers of the public entry points. These only support adding, and are cleared by the
+     * caller.
+     */
+    class WithVisitedIdentities implements VisitedSet {
+
+        private final VisitedIdentities identities;
+
+        public WithVisitedIdentities(VisitedIdentities identities) {
+            this.identities = identities;
+        }
+
+        @Override
+        public boolean add(Object o) {
+            return identities.add(o);
+        }
+
+        /**
+         * @return capacity of the identity set rather than the number of objects visited, to be fed back into the next run like
+         * HeapWalker does
+         */
+        @Override
+        public int size() {
+            return identities.capacity();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.openjdk.jol.info.VisitedIdentities;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Locale;
+import java.util.function.BiConsumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -79,4 +80,12 @@ abstract class BaseHeapLayoutTest {
 
         assertEquals(expected, footprint);
     }
+
+    static <L> String render(L layout, BiConsumer<L, PrintWriter> report) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        report.accept(layout, pw);
+        pw.close();
+        return sw.toString();
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ClassHistogramTest extends BaseHeapLayoutTest {
+
+    @Test
+    void footprintMatchesHeapLayout() {
+        Map<String, List<Integer>> root = new HashMap<>();
+        for (int i = 0; i < 20; ++i) {
+            List<Integer> list = new ArrayList<>();
+            for (int j = 0; j < i; ++j) {
+                list.add(1000 + j);
+            }
+            root.put("key" + i, list);
+        }
+        givenRoot(root);
+
+        ClassHistogram histogram = ClassHistogram.parseInstance(TraversalControl.instance(), root);
+
+        assertEquals(render(heapLayout, HeapLayout::toFootprint), render(histogram, ClassHistogram::toFootprint));
+        assertEquals(heapLayout.totalCount(), histogram.totalCount());
+        assertEquals(heapLayout.totalSize(), histogram.totalSize());
+    }
+
+    @Test
+    void countsAndSizes() {
+        List<Integer> root = new ArrayList<>(List.of(1000, 1001, 1002));
+
+        ClassHistogram histogram = ClassHistogram.parseInstance(TraversalControl.instance(), root);
+
+        assertEquals(3, histogram.getCount(Integer.class));
+        assertEquals(48, histogram.getSize(Integer.class));
+        assertEquals(1, histogram.getCount(ArrayList.class));
+        assertEquals(0, histogram.getCount(String.class));
+        assertEquals(3, histogram.getClasses().size());
+        assertTrue(histogram.getClasses().contains(Object[].class));
+    }
+
+    @Test
+    void lookupOfUnseenClassesHasNoSideEffects() {
+        ClassHistogram histogram = ClassHistogram.parseInstance(TraversalControl.instance(), new ArrayList<>(List.of(1000)));
+        int layouts = ReferenceFieldLayout.count();
+
+        assertEquals(0, histogram.getCount(Unseen.class));
+        assertEquals(0, histogram.getSize(Unseen.class));
+        assertEquals(layouts, ReferenceFieldLayout.count());
+    }
+
+    @Test
+    void session() {
+        HeapLayoutSession session = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance());
+        List<Integer> root = new ArrayList<>(List.of(1000, 1001, 1002));
+
+        ClassHistogram first = session.parseHistogram(root);
+        ClassHistogram second = session.parseHistogram(root);
+
+        assertEquals(first.totalSize(), second.totalSize());
+        assertEquals(3, second.getCount(Integer.class));
+        assertSame(second, session.getLastStats());
+    }
+
+    private static String render(ClassHistogram histogram, BiConsumer<ClassHistogram, PrintWriter> report) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        report.accept(histogram, pw);
+        pw.close();
+        return sw.toString();
+    }
+
+    private static final class Unseen {
+    }
+}
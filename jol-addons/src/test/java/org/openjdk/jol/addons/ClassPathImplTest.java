@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ClassPathImplTest {
+
+    private final HistogramDeduplicator hd = HistogramDeduplicator.instance();
+
+    @Test
+    void views() {
+        ClassPathImpl path = ClassPathImpl.root(Object.class)
+                .computeIfAbsent("a", String.class, hd, false)
+                .computeIfAbsent("value", byte[].class, hd, false);
+
+        assertEquals(List.of(Object.class, "a", String.class, "value", byte[].class), path);
+        assertEquals(List.of(Object.class, String.class, "a", byte[].class, "value"), path.getTreeBasedOrder());
+        assertEquals(List.of(byte[].class, String.class, "value", Object.class, "a"), path.getClassBasedOrder());
+        assertSame(path, path.getTreeBasedOrder().getOriginal());
+        assertSame(path, path.getClassBasedOrder().getOriginal());
+    }
+
+    @Test
+    void equality() {
+        ClassPathImpl root = ClassPathImpl.root(Object.class);
+        ClassPathImpl path = root.computeIfAbsent("a", String.class, hd, false);
+        ClassPathImpl copy = new ClassPathImpl(List.of(Object.class, "a", String.class));
+
+        assertSame(path, root.computeIfAbsent("a", String.class, hd, false));
+        assertEquals(path, copy);
+        assertEquals(path.hashCode(), copy.hashCode());
+        assertEquals(path.getTreeBasedOrder(), copy.getTreeBasedOrder());
+        assertEquals(path.getTreeBasedOrder().hashCode(), copy.getTreeBasedOrder().hashCode());
+        assertNotEquals(path.getTreeBasedOrder(), path.getClassBasedOrder());
+        assertNotEquals(path, root.computeIfAbsent("b", String.class, hd, false));
+    }
+
+    @Test
+    void listContract() {
+        ClassPathImpl path = ClassPathImpl.root(Object.class).computeIfAbsent("a", String.class, hd, false);
+        List<Object> elements = List.of(Object.class, "a", String.class);
+        List<Object> treeBased = List.of(Object.class, String.class, "a");
+
+        assertEquals(elements, path);
+        assertEquals(path, elements);
+        assertEquals(elements.hashCode(), path.hashCode());
+        assertEquals(treeBased, path.getTreeBasedOrder());
+        assertEquals(path.getTreeBasedOrder(), treeBased);
+        assertEquals(treeBased.hashCode(), path.getTreeBasedOrder().hashCode());
+        assertNotEquals(path, List.of(Object.class, "a"));
+    }
+
+    @Test
+    void repetitionsAreDeduplicated() {
+        ClassPathImpl root = ClassPathImpl.root(Object.class);
+        ClassPathImpl a = root.computeIfAbsent("x", Integer.class, hd, false);
+        ClassPathImpl b = a.computeIfAbsent("y", Long.class, hd, false);
+        ClassPathImpl c = b.computeIfAbsent("x", Integer.class, hd, false);
+        ClassPathImpl d = c.computeIfAbsent("y", Long.class, hd, false);
+
+        assertSame(b, d);
+    }
+
+    @Test
+    void aggregatesAreOwned() {
+        ClassPathImpl path = ClassPathImpl.root(Object.class);
+        Object owner = new Object();
+        GatheringNode classBased = new GatheringNode();
+        GatheringNode treeBased = new GatheringNode();
+
+        assertFalse(path.isAggregatedBy(owner));
+        path.setAggregates(owner, classBased, treeBased);
+        assertTrue(path.isAggregatedBy(owner));
+        assertFalse(path.isAggregatedBy(new Object()));
+        assertSame(classBased, path.getClassBasedAggregate());
+        assertSame(treeBased, path.getTreeBasedAggregate());
+    }
+
+    @Test
+    void detachedCopy() {
+        ClassPathImpl path = ClassPathImpl.root(Object.class).computeIfAbsent("a", String.class, hd, false);
+        path.markTruncated();
+
+        ClassPathImpl copy = path.detachedCopy();
+
+        assertEquals(path, copy);
+        assertNotSame(path, copy);
+        assertTrue(copy.isTruncated());
+        assertEquals(path.getParent(), copy.getParent());
+    }
+}
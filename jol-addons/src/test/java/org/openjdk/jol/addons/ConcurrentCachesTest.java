@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.VisitedIdentities;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ConcurrentCachesTest {
+
+    @Test
+    void sizesMatchUnsharedCache() {
+        ObjectSizeCache shared = ObjectSizeCache.WithClassValue.instance();
+        ObjectSizeCache unshared = new ObjectSizeCache.WithObject2LongMap(16);
+        Object[] samples = { "a", 1L, new ArrayList<>(), new int[3], new Object[7] };
+
+        for (Object o : samples) {
+            assertEquals(unshared.get(o.getClass(), o), shared.get(o.getClass(), o));
+        }
+        assertEquals(32, shared.get(int[].class, new int[3]));
+        assertEquals(48, shared.get(Object[].class, new Object[7]));
+    }
+
+    @Test
+    void fieldsMatchUnsharedCache() throws Exception {
+        ReferenceFieldCache shared = ReferenceFieldCache.WithClassValue.instance();
+        ReferenceFieldCache unshared = new ReferenceFieldCache.WithObject2LongMap(16);
+        ArrayList<Object> list = new ArrayList<>();
+        list.add("a");
+        Field elementData = ArrayList.class.getDeclaredField("elementData");
+
+        assertSame(unshared.get(elementData, list), shared.get(elementData, list));
+        assertTrue(shared.size() > 0);
+    }
+
+    @Test
+    void eachFieldResolvesToItsOwnSlot() throws Exception {
+        ReferenceFieldCache shared = ReferenceFieldCache.WithClassValue.instance();
+        Pair pair = new Pair("left", "right");
+
+        assertSame(pair.left, shared.get(Pair.class.getDeclaredField("left"), pair));
+        assertSame(pair.right, shared.get(Pair.class.getDeclaredField("right"), pair));
+    }
+
+    @Test
+    void traversalsMeasureThroughSharedCache() {
+        ObjectSizeCache shared = ObjectSizeCache.WithClassValue.instance();
+        int before = shared.size();
+
+        long size = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                new VisitedIdentities.WithSimpleIdentityHashSet(32), 32, 32, new Unseen()).totalSize();
+
+        assertEquals(before + 1, shared.size());
+        assertEquals(size, shared.get(Unseen.class, new Unseen()));
+    }
+
+    @Test
+    void concurrentUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Object root = new ArrayList<>(List.of("a", "b", 1, 2L));
+            Callable<HeapLayout> task = () -> HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                    new VisitedIdentities.WithSimpleIdentityHashSet(32), 32, 32, root);
+            List<Future<HeapLayout>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(task));
+            }
+            long expected = task.call().totalSize();
+            for (Future<HeapLayout> future : futures) {
+                assertEquals(expected, future.get().totalSize());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // measured by no other test
+    private static final class Unseen {
+        private final long value = 1;
+    }
+
+    private static final class Pair {
+        private final Object left;
+        private final int between = 1;
+        private final Object right;
+
+        Pair(Object left, Object right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class DiyTrieTest {
+
+    private final HistogramDeduplicator hd = HistogramDeduplicator.instance();
+
+    @Test
+    void sharedPrefixes() {
+        ClassPathImpl root = ClassPathImpl.root(Object.class);
+        ClassPathImpl a = root.computeIfAbsent("a", String.class, hd, false);
+        ClassPathImpl b = root.computeIfAbsent("b", String.class, hd, false);
+        ClassPathImpl c = root.computeIfAbsent("c", Integer.class, hd, false);
+
+        DiyTrie<String> trie = new DiyTrie<>();
+        assertEquals("b", trie.computeIfAbsent(b, k -> "b"));
+        assertEquals("c", trie.computeIfAbsent(c, k -> "c"));
+        assertEquals("a", trie.computeIfAbsent(a, k -> "a"));
+        assertEquals("a", trie.computeIfAbsent(a, k -> "other"));
+
+        DiyTrie.Node<String> node = trie.get(root);
+        assertNotNull(node);
+        assertEquals(Object.class, node.getKeyElement());
+        assertEquals(3, node.size());
+        assertSame(a, trie.get(a).getKey());
+        assertNull(trie.get(root.computeIfAbsent("d", Long.class, hd, false)));
+    }
+
+    @Test
+    void iteration() {
+        ClassPathImpl root = ClassPathImpl.root(Object.class);
+        ClassPathImpl leaf = root.computeIfAbsent("a", String.class, hd, false).computeIfAbsent("value", byte[].class, hd, false);
+
+        DiyTrie<String> trie = new DiyTrie<>();
+        trie.computeIfAbsent(root, k -> "root");
+        trie.computeIfAbsent(leaf, k -> "leaf");
+
+        List<Object> pre = new ArrayList<>();
+        List<Object> post = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        trie.iterator() //
+                .withPreOrder(c -> pre.add(c.getNode().getKeyElement())) //
+                .withPostOrder(c -> {
+                    post.add(c.getNode().getKeyElement());
+                    if (c.getDepth() > 0) {
+                        assertEquals(c.getDepth() - 1, c.getParent().getDepth());
+                    }
+                }) //
+                .forEachRemaining(c -> depths.add(c.getDepth()));
+
+        assertEquals(List.of(Object.class, "a", String.class, "value", byte[].class), pre);
+        assertEquals(List.of(byte[].class, "value", String.class, "a", Object.class), post.subList(0, 5));
+        assertNull(post.get(5)); // root
+        assertEquals(List.of(0, 1, 2, 3, 4), depths);
+    }
+}
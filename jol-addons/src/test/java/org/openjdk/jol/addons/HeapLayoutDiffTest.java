@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutDiffTest extends BaseHeapLayoutTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void growthIsAttributed() {
+        Map<String, String> map = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayout before = HeapLayout.parseSimpleInstance(map);
+        map.put("grown1", "value1");
+        map.put("grown2", "value2");
+        HeapLayout after = HeapLayout.parseSimpleInstance(map);
+
+        HeapLayoutDiff diff = HeapLayoutDiff.builder().build(before, after);
+        assertEquals("java.util.HashMap@" + Integer.toHexString(System.identityHashCode(map)) + "d footprint change:\n"
+                + "   COUNT BEFORE     COUNT AFTER         COUNT \u0394  SIZE BEFORE   SIZE AFTER       SIZE \u0394      RAW SIZE \u0394   DESCRIPTION\n"
+                + "             27              37             +10        736 B      1.0 KiB       +288 B            +288   (total)\n"
+                + "             10              14              +4        240 B        336 B        +96 B             +96   java.lang.String\n"
+                + "             10              14              +4        240 B        336 B        +96 B             +96   [B\n"
+                + "              5               7              +2        160 B        224 B        +64 B             +64   java.util.HashMap$Node\n"
+                + "              1               1              +0         48 B         80 B        +32 B             +32   [Ljava.util.HashMap$Node;\n"
+                + "              1               1              +0         48 B         48 B         +0 B              +0   java.util.HashMap\n",
+                render(diff, HeapLayoutDiff::toFootprint));
+
+        assertEquals(after.totalCount() - before.totalCount(), diff.totalCountDelta());
+        assertEquals(after.totalSize() - before.totalSize(), diff.totalSizeDelta());
+        assertEquals(2, diff.getClassCountDelta("java.util.HashMap$Node"));
+        assertEquals(4, diff.getClassCountDelta("java.lang.String"));
+        assertEquals(4, diff.getClassCountDelta("[B"));
+        assertEquals(0, diff.getClassCountDelta("java.util.HashMap"));
+        assertEquals(0, diff.getClassCountDelta("java.lang.Integer"));
+    }
+
+    @Test
+    void identicalLayoutsHaveNoChanges() {
+        Map<String, String> map = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayoutDiff diff = HeapLayoutDiff.builder().build(HeapLayout.parseSimpleInstance(map), HeapLayout.parseSimpleInstance(map));
+
+        assertEquals(0, diff.totalCountDelta());
+        assertEquals(0, diff.totalSizeDelta());
+        for (String report : new String[]{render(diff, HeapLayoutDiff::toClassHistogramDrillDown), render(diff, HeapLayoutDiff::toHeapTreeDrillDown)}) {
+            report.lines().skip(1).forEach(line -> assertTrue(line.matches("(?:\\s+[\\d,]+){2}\\s+\\+0(?:\\s+\\S+ B){2}\\s+\\+0 B\\s+\\+0\\s.*"), line));
+        }
+    }
+
+    @Test
+    void snapshotsAreAlignedLikeLayouts() throws IOException {
+        Map<String, String> map = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayout before = HeapLayout.parseSimpleInstance(map);
+        map.put("grown", "value");
+        HeapLayout after = HeapLayout.parseSimpleInstance(map);
+        HeapLayoutDiff expected = HeapLayoutDiff.builder().build(before, after);
+
+        Path beforeFile = dir.resolve("before.jols");
+        Path afterFile = dir.resolve("after.jols");
+        HeapLayoutSnapshot.write(before, beforeFile);
+        HeapLayoutSnapshot.write(after, afterFile);
+
+        for (HeapLayoutDiff diff : new HeapLayoutDiff[]{HeapLayoutDiff.builder().build(HeapLayoutSnapshot.open(beforeFile), after),
+                HeapLayoutDiff.builder().build(HeapLayoutSnapshot.open(beforeFile), HeapLayoutSnapshot.open(afterFile))}) {
+            assertEquals(render(expected, HeapLayoutDiff::toFootprint), render(diff, HeapLayoutDiff::toFootprint));
+            assertEquals(render(expected, HeapLayoutDiff::toClassHistogramDrillDown), render(diff, HeapLayoutDiff::toClassHistogramDrillDown));
+            assertEquals(render(expected, HeapLayoutDiff::toHeapTreeDrillDown), render(diff, HeapLayoutDiff::toHeapTreeDrillDown));
+            assertEquals(expected.totalSizeDelta(), diff.totalSizeDelta());
+        }
+    }
+
+    @Test
+    void disappearedPathsAreAligned() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", new ArrayList<>(List.of("a", "b")));
+        HeapLayout before = HeapLayout.parseSimpleInstance(map);
+        map.put("list", new Object[]{"a", "b"});
+        HeapLayout after = HeapLayout.parseSimpleInstance(map);
+
+        HeapLayoutDiff diff = HeapLayoutDiff.builder().build(before, after);
+        assertEquals(-1, diff.getClassCountDelta("java.util.ArrayList"));
+        assertEquals(0, diff.getClassCountDelta("[Ljava.lang.Object;"));
+        assertEquals(after.totalSize() - before.totalSize(), diff.totalSizeDelta());
+        String tree = render(diff, HeapLayoutDiff::toHeapTreeDrillDown);
+        assertTrue(tree.contains("-6        144 B          0 B       -144 B            -144      |  |  |  +--java.util.ArrayList Node.value"), tree);
+        assertTrue(tree.contains("+5          0 B        120 B       +120 B            +120      |  |  |  +--[Ljava.lang.Object; Node.value"), tree);
+    }
+
+    @Test
+    void changesArePruned() {
+        List<Object> list = new ArrayList<>();
+        HeapLayout before = HeapLayout.parseSimpleInstance(list);
+        list.addAll(List.of("a", 1, 2L, 3.0, new int[100]));
+        HeapLayout after = HeapLayout.parseSimpleInstance(list);
+
+        HeapLayoutDiff diff = HeapLayoutDiff.builder().withPruning(ReportPruning.builder().withMaxChildren(2).build()).build(before, after);
+        String tree = render(diff, HeapLayoutDiff::toHeapTreeDrillDown);
+        assertTrue(tree.contains(ReportPruning.OTHERS_LABEL), tree);
+        assertTrue(tree.contains("[I"), tree);
+        assertFalse(tree.contains("java.lang.Integer"), tree);
+        // totals are retained
+        assertEquals(after.totalCount() - before.totalCount(), diff.totalCountDelta());
+    }
+
+    @Test
+    void viewsMissingOnEitherSideAreRejected() {
+        Map<String, String> map = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayout before = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()) //
+                .withViews(EnumSet.of(HeapLayout.View.CLASS_HISTOGRAM)).parseInstance(map);
+        HeapLayoutDiff diff = HeapLayoutDiff.builder().build(before, HeapLayout.parseSimpleInstance(map));
+
+        assertTrue(diff.hasView(HeapLayout.View.CLASS_HISTOGRAM));
+        assertFalse(diff.hasView(HeapLayout.View.HEAP_TREE));
+        assertEquals(0, diff.getClassSizeDelta("java.lang.String"));
+        assertThrows(IllegalStateException.class, () -> render(diff, HeapLayoutDiff::toHeapTreeDrillDown));
+    }
+}
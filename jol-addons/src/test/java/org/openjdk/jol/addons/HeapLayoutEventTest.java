@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openjdk.jol.info.VisitedIdentities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutEventTest extends BaseHeapLayoutTest {
+
+    private static final String ROOT_NAME = "org.openjdk.jol.addons.HeapLayoutRoot";
+    private static final String CLASS_NAME = "org.openjdk.jol.addons.HeapLayoutClass";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void nothingIsStartedUnlessRecorded() {
+        assertNull(HeapLayoutEvent.beginIfEnabled());
+    }
+
+    @Test
+    void traversalIsRecorded() throws IOException {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        List<RecordedEvent> events = record(() -> heapLayout = HeapLayout.parseSimpleInstance(root), HeapLayoutEvent.NAME);
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(heapLayout.getDescription(), event.getString("roots"));
+        assertEquals(27, event.getLong("objects"));
+        assertEquals(736, event.getLong("size"));
+        assertFalse(event.getBoolean("sampled"));
+        assertFalse(event.getBoolean("truncated"));
+        assertFalse(event.getDuration().isNegative());
+    }
+
+    @Test
+    void everyEntryPointRecordsOneEvent() throws IOException {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Runnable> entryPoints = List.of(
+                    () -> HeapStats.parseSimpleInstance(root),
+                    () -> HeapStats.parseInstance(TraversalControl.instance(), new VisitedIdentities.WithSimpleIdentityHashSet(16), 16, 16, root),
+                    () -> ClassHistogram.parseInstance(TraversalControl.instance(), root),
+                    () -> new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()).parseStats(root),
+                    () -> new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()).parseHistogram(root),
+                    () -> HeapLayout.parseInstanceInParallel(pool, TraversalControl.instance(), HistogramDeduplicator.instance(), root),
+                    () -> HeapStats.parseInstanceInParallel(pool, TraversalControl.instance(), root));
+            for (Runnable entryPoint : entryPoints) {
+                List<RecordedEvent> events = record(entryPoint, HeapLayoutEvent.NAME);
+
+                assertEquals(1, events.size());
+                assertEquals(27, events.get(0).getLong("objects"));
+                assertEquals(736, events.get(0).getLong("size"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void incrementalLayoutIsRecordedOnceExhausted() throws IOException {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        IncrementalHeapLayout incremental = IncrementalHeapLayout.builder().withMaxObjectsPerSlice(5).build(root);
+
+        List<RecordedEvent> events = record(() -> {
+            while (!incremental.step()) {
+                // next slice
+            }
+        }, HeapLayoutEvent.NAME);
+
+        assertTrue(incremental.getSlices() > 1);
+        assertEquals(1, events.size());
+        assertEquals(27, events.get(0).getLong("objects"));
+    }
+
+    @Test
+    void largestClassesAndRootsAreRecordedOnDemand() throws IOException {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        List<RecordedEvent> events = record(() -> HeapLayout.parseSimpleInstance(root, new int[10]), ROOT_NAME, CLASS_NAME);
+
+        List<RecordedEvent> classes = events.stream().filter(e -> e.getEventType().getName().equals(CLASS_NAME)).collect(Collectors.toList());
+        assertEquals(6, classes.size());
+        assertEquals("java.lang.String", classes.get(0).getString("className"));
+        assertEquals(0, classes.get(0).getInt("rank"));
+        assertEquals(10, classes.get(0).getLong("count"));
+        assertEquals(240, classes.get(0).getLong("size"));
+
+        List<RecordedEvent> roots = events.stream().filter(e -> e.getEventType().getName().equals(ROOT_NAME)).collect(Collectors.toList());
+        assertEquals(List.of("java.util.HashMap", "[I"), roots.stream().map(e -> e.getString("rootClass")).collect(Collectors.toList()));
+        assertEquals(736, roots.get(0).getLong("size"));
+        assertEquals(1, roots.get(1).getLong("objects"));
+    }
+
+    private List<RecordedEvent> record(Runnable run, String... names) throws IOException {
+        Path file = dir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : names) {
+                recording.enable(name);
+            }
+            recording.start();
+            run.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+}
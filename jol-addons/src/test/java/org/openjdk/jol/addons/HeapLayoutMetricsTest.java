@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutMetricsTest extends BaseHeapLayoutTest {
+
+    private final Recorder recorder = new Recorder();
+
+    private final HeapLayoutSession session = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance())
+            .withMetrics(recorder);
+
+    @Test
+    void traversalIsMeasured() {
+        heapLayout = session.parseInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        assertEquals(27, recorder.counts.get(HeapLayoutMetrics.Phase.TRAVERSAL));
+        assertTrue(recorder.nanos.get(HeapLayoutMetrics.Phase.TRAVERSAL) > 0);
+        assertEquals(27, recorder.counts.get(HeapLayoutMetrics.Phase.AGGREGATION));
+        assertTrue(recorder.nanos.get(HeapLayoutMetrics.Phase.AGGREGATION) <= recorder.nanos.get(HeapLayoutMetrics.Phase.TRAVERSAL) * 64);
+        assertTrue(recorder.objectsPerSecond > 0);
+
+        assertEquals(27, recorder.identityLookups);
+        assertEquals(0, recorder.identityDuplicates);
+        assertEquals(27, recorder.identitySetSize);
+        assertEquals(27, recorder.layoutHits + recorder.layoutMisses);
+        assertTrue(recorder.pathsCreated > 0);
+
+        // views are converted on first use only
+        assertFalse(recorder.counts.containsKey(HeapLayoutMetrics.Phase.CONVERSION));
+    }
+
+    @Test
+    void layoutsAreMissedOncePerSession() {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+
+        session.parseInstance(root);
+        assertEquals(5, recorder.layoutMisses); // map, table, entries, strings and their bytes
+        assertEquals(22, recorder.layoutHits);
+
+        session.parseInstance(root);
+        assertEquals(0, recorder.layoutMisses);
+        assertEquals(27, recorder.layoutHits);
+    }
+
+    @Test
+    void sharedObjectsAreLookedUpAgain() {
+        String shared = "shared";
+        session.parseInstance(new ArrayList<>(List.of(shared, shared, shared)));
+
+        assertEquals(4, recorder.counts.get(HeapLayoutMetrics.Phase.TRAVERSAL)); // list, elements, string and its bytes
+        assertEquals(6, recorder.identityLookups);
+        assertEquals(2, recorder.identityDuplicates);
+    }
+
+    @Test
+    void conversionAndRenderingAreMeasured() {
+        heapLayout = session.parseInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        String report = render(heapLayout, HeapLayout::toHeapTreeDrillDown);
+        assertTrue(recorder.counts.get(HeapLayoutMetrics.Phase.CONVERSION) > 0);
+        assertEquals(report.lines().count(), recorder.counts.get(HeapLayoutMetrics.Phase.RENDERING));
+
+        render(heapLayout, HeapLayout::toHeapTreeDrillDown);
+        assertEquals(1, recorder.calls.get(HeapLayoutMetrics.Phase.CONVERSION));
+        assertEquals(2, recorder.calls.get(HeapLayoutMetrics.Phase.RENDERING));
+    }
+
+    @Test
+    void slicesAreSummedUp() {
+        IncrementalHeapLayout incremental = IncrementalHeapLayout.builder().withMaxObjectsPerSlice(5).withMetrics(recorder)
+                .build(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+        while (!incremental.step()) {
+            assertFalse(recorder.counts.containsKey(HeapLayoutMetrics.Phase.TRAVERSAL));
+        }
+
+        assertEquals(1, recorder.calls.get(HeapLayoutMetrics.Phase.TRAVERSAL));
+        assertEquals(27, recorder.counts.get(HeapLayoutMetrics.Phase.TRAVERSAL));
+        assertEquals(27, recorder.identityLookups);
+    }
+
+    private static final class Recorder implements HeapLayoutMetrics {
+
+        final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+        final Map<Phase, Long> counts = new EnumMap<>(Phase.class);
+        final Map<Phase, Integer> calls = new EnumMap<>(Phase.class);
+        double objectsPerSecond;
+        long identityLookups;
+        long identityDuplicates;
+        int identitySetSize;
+        long layoutHits;
+        long layoutMisses;
+        long pathsCreated;
+
+        @Override
+        public void onPhase(Phase phase, long nanos, long count) {
+            this.nanos.merge(phase, nanos, Long::sum);
+            counts.merge(phase, count, Long::sum);
+            calls.merge(phase, 1, Integer::sum);
+        }
+
+        @Override
+        public void onThroughput(double objectsPerSecond) {
+            this.objectsPerSecond = objectsPerSecond;
+        }
+
+        @Override
+        public void onIdentitySet(long lookups, long duplicates, int size) {
+            identityLookups = lookups;
+            identityDuplicates = duplicates;
+            identitySetSize = size;
+        }
+
+        @Override
+        public void onLayoutCache(long hits, long misses) {
+            layoutHits = hits;
+            layoutMisses = misses;
+        }
+
+        @Override
+        public void onClassPaths(long created, long deduplicated) {
+            pathsCreated = created;
+        }
+    }
+}
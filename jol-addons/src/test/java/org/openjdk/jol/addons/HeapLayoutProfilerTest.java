@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutProfilerTest extends BaseHeapLayoutTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    private final List<HeapLayout> layouts = new ArrayList<>();
+
+    private HeapLayoutProfiler profiler;
+
+    @AfterEach
+    void close() {
+        if (profiler != null) {
+            profiler.close();
+        }
+    }
+
+    @Test
+    void intervalsShareTheBudgetInProportionToCost() {
+        // 1 ms at 1% of one core leaves 99 ms idle
+        assertEquals(100_000_000, HeapLayoutProfiler.intervalFor(1_000_000, 1, 0.01, 0));
+        assertEquals(200_000_000, HeapLayoutProfiler.intervalFor(2_000_000, 1, 0.01, 0));
+        // two roots get half the budget each
+        assertEquals(200_000_000, HeapLayoutProfiler.intervalFor(1_000_000, 2, 0.01, 0));
+        assertEquals(10_000_000, HeapLayoutProfiler.intervalFor(1_000_000, 1, 0.1, 0));
+    }
+
+    @Test
+    void intervalsAreClamped() {
+        assertEquals(SECOND, HeapLayoutProfiler.intervalFor(1_000, 1, 0.01, SECOND));
+        assertEquals(SECOND, HeapLayoutProfiler.intervalFor(0, 0, 0.01, SECOND));
+        assertEquals(Long.MAX_VALUE, HeapLayoutProfiler.intervalFor(1e18, 1, 0.01, SECOND));
+    }
+
+    @Test
+    void measurementsAreDeliveredToTheListener() throws InterruptedException {
+        profiler = HeapLayoutProfiler.builder().withMinInterval(Duration.ZERO).withCpuBudget(1.0).build(new HeapLayoutProfiler.Listener() {
+            @Override
+            public void onMeasurement(String name, HeapLayout layout) {
+                synchronized (layouts) {
+                    layouts.add(layout);
+                }
+                events.add(name);
+            }
+        });
+        profiler.register("map", () -> root);
+
+        // the full budget lets a cheap root be measured again and again
+        assertEquals("map", events.poll(10, TimeUnit.SECONDS));
+        assertEquals("map", events.poll(10, TimeUnit.SECONDS));
+
+        heapLayout = HeapLayout.parseSimpleInstance(root);
+        synchronized (layouts) {
+            assertEquals(render(heapLayout, HeapLayout::toFootprint), render(layouts.get(0), HeapLayout::toFootprint));
+        }
+    }
+
+    @Test
+    void rootsAreRescheduledAfterTheirCost() throws InterruptedException {
+        profiler = HeapLayoutProfiler.builder().withMinInterval(Duration.ofMillis(1)).withCpuBudget(1e-9).build((name, layout) -> events.add(name));
+        profiler.register("map", () -> root);
+
+        assertEquals("map", events.poll(10, TimeUnit.SECONDS));
+        Duration interval = awaitInterval("map");
+        // any cost at all is stretched a billionfold
+        assertTrue(interval.compareTo(Duration.ofSeconds(1)) > 0, interval::toString);
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void failuresAreReportedAndRetried() throws InterruptedException {
+        profiler = HeapLayoutProfiler.builder().withMinInterval(Duration.ZERO).build(new HeapLayoutProfiler.Listener() {
+            @Override
+            public void onMeasurement(String name, HeapLayout layout) {
+                fail("unexpected measurement");
+            }
+
+            @Override
+            public void onFailure(String name, RuntimeException e) {
+                events.add(name + ": " + e.getMessage());
+            }
+        });
+        profiler.register("broken", () -> {
+            throw new IllegalStateException("not ready");
+        });
+
+        assertEquals("broken: not ready", events.poll(10, TimeUnit.SECONDS));
+        assertEquals("broken: not ready", events.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void errorsDoNotEndTheSchedule() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        profiler = HeapLayoutProfiler.builder().withMinInterval(Duration.ZERO).build((name, layout) -> events.add(name));
+        profiler.register("flaky", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new AssertionError("not ready");
+            }
+            return root;
+        });
+
+        assertEquals("flaky", events.poll(10, TimeUnit.SECONDS));
+        assertTrue(attempts.get() >= 2);
+    }
+
+    @Test
+    void rootsMayBeRegisteredAfterClosing() {
+        profiler = HeapLayoutProfiler.builder().build((name, layout) -> events.add(name));
+        profiler.close();
+
+        assertDoesNotThrow(() -> profiler.register("map", () -> root));
+    }
+
+    @Test
+    void unregisteredRootsAreNoLongerMeasured() throws InterruptedException {
+        profiler = HeapLayoutProfiler.builder().withMinInterval(Duration.ofMillis(10)).withCpuBudget(1.0).build((name, layout) -> events.add(name));
+        profiler.register("map", () -> root);
+        assertEquals("map", events.poll(10, TimeUnit.SECONDS));
+
+        profiler.unregister("map");
+        events.poll(100, TimeUnit.MILLISECONDS); // at most one measurement already under way
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+        assertNull(profiler.getInterval("map"));
+    }
+
+    @Test
+    void budgetMustBeAFractionOfOneCore() {
+        assertThrows(IllegalArgumentException.class, () -> HeapLayoutProfiler.builder().withCpuBudget(0));
+        assertThrows(IllegalArgumentException.class, () -> HeapLayoutProfiler.builder().withCpuBudget(1.5));
+        assertThrows(IllegalArgumentException.class, () -> HeapLayoutProfiler.builder().withMinInterval(Duration.ofSeconds(-1)));
+    }
+
+    private Duration awaitInterval(String name) throws InterruptedException {
+        for (long deadline = System.nanoTime() + 10 * SECOND; System.nanoTime() < deadline; Thread.sleep(1)) {
+            Duration interval = profiler.getInterval(name);
+            if (interval != null) {
+                return interval;
+            }
+        }
+        return fail("no interval for " + name);
+    }
+}
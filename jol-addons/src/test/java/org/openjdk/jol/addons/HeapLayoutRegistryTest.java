@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutRegistryTest extends BaseHeapLayoutTest {
+
+    private final HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+
+    private final AtomicInteger measurements = new AtomicInteger();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final HeapLayoutRegistry registry = HeapLayoutRegistry.builder().withTtl(Duration.ofSeconds(10)).withClock(clock::get).build();
+
+    @Test
+    void reportsMatchThoseOfTheLayout() {
+        registry.register("map", () -> root);
+        heapLayout = HeapLayout.parseSimpleInstance(root);
+
+        assertArrayEquals(new String[]{"map"}, registry.getRootNames());
+        assertEquals(render(heapLayout, HeapLayout::toFootprint), registry.footprint("map"));
+        assertEquals(render(heapLayout, HeapLayout::toClassHistogramDrillDown), registry.classHistogramDrillDown("map"));
+        assertEquals(render(heapLayout, HeapLayout::toHeapTreeDrillDown), registry.heapTreeDrillDown("map"));
+        assertTrue(registry.footprintJson("map").contains("\"total\":{\"count\":27,\"size\":736}"));
+        assertTrue(registry.measure("map").endsWith(": 27 objects, 736 B"), registry.measure("map"));
+        assertEquals(10_000, registry.getTtlMillis());
+    }
+
+    @Test
+    void measurementsAreCachedUntilExpired() {
+        registry.register("map", this::countedRoot);
+
+        registry.footprint("map");
+        registry.heapTreeDrillDown("map");
+        assertEquals(1, measurements.get());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        registry.footprint("map");
+        assertEquals(2, measurements.get());
+
+        registry.measure("map");
+        registry.footprint("map");
+        assertEquals(3, measurements.get());
+    }
+
+    @Test
+    void concurrentRequestsCoalesce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        registry.register("slow", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return countedRoot();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> registry.footprint("slow")));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; ++i) {
+                results.add(executor.submit(() -> registry.footprint("slow")));
+            }
+            Thread.sleep(50); // let them pile up
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertFalse(result.get(10, TimeUnit.SECONDS).isEmpty());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, measurements.get());
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        AtomicInteger attempts = new AtomicInteger();
+        registry.register("flaky", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("not yet");
+            }
+            return root;
+        });
+
+        assertThrows(IllegalStateException.class, () -> registry.footprint("flaky"));
+        assertFalse(registry.footprint("flaky").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> registry.footprint("unknown"));
+    }
+
+    @Test
+    void operationsAreExposedOverJmx() throws JMException {
+        registry.register("map", () -> root);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(HeapLayoutRegistry.OBJECT_NAME + ",name=test");
+        registry.registerMBean(server, name);
+        try {
+            assertArrayEquals(new String[]{"map"}, (String[]) server.getAttribute(name, "RootNames"));
+            assertEquals(registry.footprint("map"), server.invoke(name, "footprint", new Object[]{"map"}, new String[]{String.class.getName()}));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private Object countedRoot() {
+        measurements.incrementAndGet();
+        return root;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutSessionTest extends BaseHeapLayoutTest {
+
+    private final HeapLayoutSession session = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance());
+
+    @Test
+    void repeatedRunsYieldSameLayout() {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        String expected = render(HeapLayout.parseSimpleInstance(root), HeapLayout::toHeapTreeDrillDown);
+
+        assertNull(session.getLastStats());
+        for (int i = 0; i < 3; ++i) {
+            heapLayout = session.parseInstance(root);
+            assertEquals(expected, render(heapLayout, HeapLayout::toHeapTreeDrillDown));
+        }
+    }
+
+    @Test
+    void capacitiesAreFedBack() {
+        heapLayout = session.parseInstance(new ArrayList<>(HeapLayout_CollectionsTest._templateList));
+
+        HeapStats stats = session.getLastStats();
+        assertEquals(22, stats.totalCount());
+        assertEquals(22, stats.identitySetCapacity());
+        assertTrue(stats.stackCapacity() > 0);
+        assertTrue(stats.sizeCacheCapacity() > 0);
+    }
+
+    @Test
+    void skippedViewsAreNotCollected() {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayout full = HeapLayout.parseSimpleInstance(root);
+
+        heapLayout = session.withViews(EnumSet.of(HeapLayout.View.CLASS_HISTOGRAM)).parseInstance(root);
+
+        assertTrue(heapLayout.hasView(HeapLayout.View.CLASS_HISTOGRAM));
+        assertFalse(heapLayout.hasView(HeapLayout.View.HEAP_TREE));
+        assertEquals(render(full, HeapLayout::toFootprint), render(heapLayout, HeapLayout::toFootprint));
+        assertEquals(full.totalCount(), heapLayout.totalCount());
+        assertEquals(full.totalSize(), heapLayout.totalSize());
+        assertThrows(IllegalStateException.class, () -> render(heapLayout, HeapLayout::toHeapTreeDrillDown));
+    }
+
+    @Test
+    void anyEmptySetOfViewsIsAccepted() {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        HeapLayout full = HeapLayout.parseSimpleInstance(root);
+
+        heapLayout = session.withViews(Set.of()).parseInstance(root);
+
+        assertFalse(heapLayout.hasView(HeapLayout.View.CLASS_HISTOGRAM));
+        assertFalse(heapLayout.hasView(HeapLayout.View.HEAP_TREE));
+        assertEquals(full.totalCount(), heapLayout.totalCount());
+        assertEquals(full.totalSize(), heapLayout.totalSize());
+    }
+
+    @Test
+    void statsAndLayoutsMayBeMixed() {
+        Object root = new ArrayList<>(HeapLayout_CollectionsTest._templateList);
+
+        HeapStats stats = session.parseStats(root);
+        heapLayout = session.parseInstance(root);
+
+        assertEquals(stats.totalCount(), heapLayout.totalCount());
+        assertEquals(stats.totalSize(), heapLayout.totalSize());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayoutSnapshotTest extends BaseHeapLayoutTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reportsAreReproduced() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+        HeapLayoutSnapshot snapshot = roundTrip();
+
+        assertEquals(heapLayout.totalCount(), snapshot.totalCount());
+        assertEquals(heapLayout.totalSize(), snapshot.totalSize());
+        assertFalse(snapshot.isSampled());
+        assertFalse(snapshot.isTruncated());
+        assertReportsEqual(snapshot);
+    }
+
+    @Test
+    void sampledAndTruncatedLayouts() throws IOException {
+        List<Object> root = new ArrayList<>();
+        for (int i = 0; i < 1_000; ++i) {
+            root.add(new long[i % 17]);
+        }
+
+        heapLayout = HeapLayout.parseSampledInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), 0.1, 1, root);
+        HeapLayoutSnapshot snapshot = roundTrip();
+        assertTrue(snapshot.isSampled());
+        assertReportsEqual(snapshot);
+
+        heapLayout = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                TraversalBudget.builder().withMaxObjects(100).build(), root);
+        snapshot = roundTrip();
+        assertTrue(snapshot.isTruncated());
+        assertReportsEqual(snapshot);
+    }
+
+    @Test
+    void classesAreLookedUp() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+        HeapLayoutSnapshot snapshot = roundTrip();
+
+        assertEquals(10, snapshot.getClassCount("java.lang.String"));
+        assertEquals(240, snapshot.getClassSize("java.lang.String"));
+        assertEquals(5, snapshot.getClassCount("java.util.HashMap$Node"));
+        assertEquals(1, snapshot.getClassCount("[Ljava.util.HashMap$Node;"));
+        assertEquals(0, snapshot.getClassCount("java.lang.Integer"));
+        assertEquals(0, snapshot.getClassSize("java.lang.Integer"));
+    }
+
+    @Test
+    void skippedViews() throws IOException {
+        HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+        heapLayout = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()) //
+                .withViews(EnumSet.of(HeapLayout.View.CLASS_HISTOGRAM)).parseInstance(root);
+        HeapLayoutSnapshot snapshot = roundTrip();
+
+        assertTrue(snapshot.hasView(HeapLayout.View.CLASS_HISTOGRAM));
+        assertFalse(snapshot.hasView(HeapLayout.View.HEAP_TREE));
+        assertEquals(render(heapLayout, HeapLayout::toFootprint), render(snapshot, HeapLayoutSnapshot::toFootprint));
+        assertThrows(IllegalStateException.class, () -> render(snapshot, HeapLayoutSnapshot::toHeapTreeDrillDown));
+    }
+
+    @Test
+    void snapshotsAreCompact() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+        Path file = dir.resolve("compact.jols");
+        HeapLayoutSnapshot.write(heapLayout, file);
+
+        long text = render(heapLayout, HeapLayout::toHeapTreeDrillDown).length() + render(heapLayout, HeapLayout::toClassHistogramDrillDown).length();
+        assertTrue(Files.size(file) * 4 < text, Files.size(file) + " vs " + text);
+    }
+
+    @Test
+    void foreignFilesAreRejected() throws IOException {
+        Path file = dir.resolve("foreign.jols");
+        Files.write(file, new byte[128]);
+        assertThrows(IOException.class, () -> HeapLayoutSnapshot.open(file));
+
+        Files.write(file, new byte[3]);
+        assertThrows(IOException.class, () -> HeapLayoutSnapshot.open(file));
+    }
+
+    private HeapLayoutSnapshot roundTrip() throws IOException {
+        Path file = Files.createTempFile(dir, "layout", ".jols");
+        HeapLayoutSnapshot.write(heapLayout, file);
+        return HeapLayoutSnapshot.open(file);
+    }
+
+    private void assertReportsEqual(HeapLayoutSnapshot snapshot) {
+        assertEquals(render(heapLayout, HeapLayout::toFootprint), render(snapshot, HeapLayoutSnapshot::toFootprint));
+        assertEquals(render(heapLayout, HeapLayout::toClassHistogramDrillDown), render(snapshot, HeapLayoutSnapshot::toClassHistogramDrillDown));
+        assertEquals(render(heapLayout, HeapLayout::toHeapTreeDrillDown), render(snapshot, HeapLayoutSnapshot::toHeapTreeDrillDown));
+        assertEquals(heapLayout.getDescription(), snapshot.getDescription());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_BudgetTest extends BaseHeapLayoutTest {
+
+    private static final String TRUNCATED = "[...] (truncated)";
+
+    @Test
+    void unlimited() {
+        Link chain = chain(10);
+        givenRoot(chain);
+        HeapLayout unlimited = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), TraversalBudget.unlimited(), chain);
+
+        assertFalse(unlimited.isTruncated());
+        assertEquals(heapLayout.totalCount(), unlimited.totalCount());
+        assertEquals(heapLayout.totalSize(), unlimited.totalSize());
+        assertEquals(render(heapLayout, HeapLayout::toHeapTreeDrillDown), render(unlimited, HeapLayout::toHeapTreeDrillDown));
+    }
+
+    @Test
+    void maxDepth() {
+        HeapLayout layout = parse(TraversalBudget.builder().withMaxDepth(3).build(), chain(10));
+
+        assertTrue(layout.isTruncated());
+        assertEquals(4, layout.totalCount());
+        assertTrue(render(layout, HeapLayout::toHeapTreeDrillDown).contains(TRUNCATED));
+    }
+
+    @Test
+    void maxDepthNotReached() {
+        HeapLayout layout = parse(TraversalBudget.builder().withMaxDepth(9).build(), chain(10));
+
+        assertFalse(layout.isTruncated());
+        assertEquals(10, layout.totalCount());
+        assertFalse(render(layout, HeapLayout::toHeapTreeDrillDown).contains(TRUNCATED));
+    }
+
+    @Test
+    void maxObjects() {
+        HeapLayout layout = parse(TraversalBudget.builder().withMaxObjects(5).build(), numbers(10));
+
+        assertTrue(layout.isTruncated());
+        assertEquals(5, layout.totalCount());
+        assertTrue(render(layout, HeapLayout::toHeapTreeDrillDown).contains(TRUNCATED));
+    }
+
+    @Test
+    void truncationIsShownForRootsOfTheSameClass() {
+        // both roots meet in the same rows, whichever of their equal paths the tries keep
+        List<Integer> big = numbers(200);
+        List<Integer> small = numbers(2);
+        TraversalBudget budget = TraversalBudget.builder().withMaxObjects(100).build();
+
+        for (HeapLayout layout : List.of(parse(budget, big, small), parse(budget, small, big))) {
+            assertTrue(layout.isTruncated());
+            assertTrue(render(layout, HeapLayout::toHeapTreeDrillDown).contains(TRUNCATED));
+        }
+    }
+
+    @Test
+    void maxObjectsExactlySpent() {
+        HeapLayout layout = parse(TraversalBudget.builder().withMaxObjects(12).build(), numbers(10));
+
+        assertFalse(layout.isTruncated());
+        assertEquals(12, layout.totalCount());
+    }
+
+    @Test
+    void maxBytes() {
+        HeapLayout layout = parse(TraversalBudget.builder().withMaxBytes(100).build(), numbers(10));
+
+        assertTrue(layout.isTruncated());
+        assertTrue(layout.totalSize() >= 100);
+        assertTrue(layout.totalCount() < 12);
+    }
+
+    @Test
+    void incremental() {
+        IncrementalHeapLayout incremental = IncrementalHeapLayout.builder().withMaxObjectsPerSlice(2)
+                .withBudget(TraversalBudget.builder().withMaxObjects(5).build()).build(numbers(10));
+        while (!incremental.step()) {
+            assertTrue(incremental.getSlices() < 10);
+        }
+
+        assertTrue(incremental.getResult().isTruncated());
+        assertEquals(5, incremental.getResult().totalCount());
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> TraversalBudget.builder().withMaxDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> TraversalBudget.builder().withMaxObjects(0));
+        assertThrows(IllegalArgumentException.class, () -> TraversalBudget.builder().withMaxBytes(0));
+    }
+
+    private static HeapLayout parse(TraversalBudget budget, Object... roots) {
+        return HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), budget, roots);
+    }
+
+    private static Link chain(int length) {
+        Link head = null;
+        for (int i = 0; i < length; ++i) {
+            head = new Link(head);
+        }
+        return head;
+    }
+
+    private static List<Integer> numbers(int count) {
+        List<Integer> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            numbers.add(1000 + i);
+        }
+        return numbers;
+    }
+
+    private static final class Link {
+        private final Link next;
+
+        Link(Link next) {
+            this.next = next;
+        }
+    }
+}
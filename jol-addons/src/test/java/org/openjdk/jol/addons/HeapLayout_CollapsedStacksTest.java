@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_CollapsedStacksTest extends BaseHeapLayoutTest {
+
+    @Test
+    void framesAlternateFieldsAndClasses() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new ArrayList<>(List.of("a", "b")));
+
+        assertEquals(String.join(System.lineSeparator(),
+                "java.util.ArrayList 24",
+                "java.util.ArrayList;elementData;java.lang.Object[] 24",
+                "java.util.ArrayList;elementData;java.lang.Object[];[i];java.lang.String 48",
+                "java.util.ArrayList;elementData;java.lang.Object[];[i];java.lang.String;value;byte[] 48",
+                ""), stacks(HeapLayout.Weight.SIZE));
+        assertEquals(String.join(System.lineSeparator(),
+                "java.util.ArrayList 1",
+                "java.util.ArrayList;elementData;java.lang.Object[] 1",
+                "java.util.ArrayList;elementData;java.lang.Object[];[i];java.lang.String 2",
+                "java.util.ArrayList;elementData;java.lang.Object[];[i];java.lang.String;value;byte[] 2",
+                ""), stacks(HeapLayout.Weight.COUNT));
+    }
+
+    @Test
+    void arrayClassesDoNotSplitFrames() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance((Object) new Object[][] {{"a"}});
+
+        assertEquals(String.join(System.lineSeparator(),
+                "java.lang.Object[][] 24",
+                "java.lang.Object[][];[i];java.lang.Object[] 24",
+                "java.lang.Object[][];[i];java.lang.Object[];[i];java.lang.String 24",
+                "java.lang.Object[][];[i];java.lang.Object[];[i];java.lang.String;value;byte[] 24",
+                ""), stacks(HeapLayout.Weight.SIZE));
+    }
+
+    @Test
+    void weightsSumUpToTotals() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+        assertEquals(736, sum(stacks(HeapLayout.Weight.SIZE)));
+        assertEquals(27, sum(stacks(HeapLayout.Weight.COUNT)));
+    }
+
+    @Test
+    void prunedRowsKeepTheirWeight() throws IOException {
+        List<Object> root = new ArrayList<>(List.of("a", 1, 2L, 3.0, new int[4]));
+        heapLayout = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance())
+                .withPruning(ReportPruning.builder().withMaxChildren(2).build()).parseInstance(root);
+
+        String stacks = stacks(HeapLayout.Weight.SIZE);
+        assertTrue(stacks.contains("elementData;java.lang.Object[];" + ReportPruning.OTHERS_LABEL + " "), stacks);
+        assertEquals(heapLayout.totalSize(), sum(stacks));
+    }
+
+    @Test
+    void cutShortRowsAreMarked() throws IOException {
+        List<Object> root = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            root.add(new long[i]);
+        }
+        heapLayout = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                TraversalBudget.builder().withMaxObjects(10).build(), root);
+
+        String stacks = stacks(HeapLayout.Weight.COUNT);
+        assertTrue(stacks.contains(Ellipsis.TRUNCATED + " "), stacks);
+        assertEquals(heapLayout.totalCount(), sum(stacks));
+    }
+
+    private static long sum(String stacks) {
+        return stacks.lines().mapToLong(line -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1))).sum();
+    }
+
+    private String stacks(HeapLayout.Weight weight) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        heapLayout.toHeapTreeCollapsedStacks(out, weight);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
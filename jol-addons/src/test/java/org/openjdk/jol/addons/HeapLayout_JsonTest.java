@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_JsonTest extends BaseHeapLayoutTest {
+
+    private static final Pattern LABEL = Pattern.compile("\"label\":");
+
+    @FunctionalInterface
+    private interface JsonExport {
+        void export(HeapLayout layout, OutputStream out) throws IOException;
+    }
+
+    @Test
+    void footprint() throws IOException {
+        int[] root = new int[0];
+        heapLayout = HeapLayout.parseSimpleInstance(root);
+
+        assertEquals("{\"description\":\"" + HeapLayout.Builder.describe(root) + "\",\"sampled\":false,\"truncated\":false," +
+                "\"total\":{\"count\":1,\"size\":16},\"classes\":[{\"label\":\"[I\",\"count\":1,\"size\":16,\"average\":16}]}" +
+                System.lineSeparator(), json(HeapLayout::toFootprintJson));
+    }
+
+    @Test
+    void heapTreeMatchesText() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        String json = json(HeapLayout::toHeapTreeJson);
+        assertBalanced(json);
+        assertEquals(render(heapLayout, HeapLayout::toHeapTreeDrillDown).lines().count() - 1, count(json));
+        assertTrue(json.contains("\"label\":\"HashMap.table\",\"prefix\":\"[Ljava.util.HashMap$Node;\",\"count\":1,\"size\":48," +
+                "\"totalCount\":26,\"totalSize\":688,\"retainedChildCount\":25,\"retainedChildSize\":640,\"length\":8,\"used\":5"));
+    }
+
+    @Test
+    void classHistogramMatchesText() throws IOException {
+        heapLayout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        String json = json(HeapLayout::toClassHistogramJson);
+        assertBalanced(json);
+        assertEquals(render(heapLayout, HeapLayout::toClassHistogramDrillDown).lines().count() - 1, count(json));
+    }
+
+    @Test
+    void truncatedRowsAreMarked() throws IOException {
+        Object[] chain = new Object[1];
+        chain[0] = new Object[]{new Object[]{new Object[0]}};
+        heapLayout = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                TraversalBudget.builder().withMaxDepth(1).build(), chain);
+
+        String json = json(HeapLayout::toHeapTreeJson);
+        assertBalanced(json);
+        assertTrue(json.contains("\"truncated\":true"));
+    }
+
+    private String json(JsonExport export) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.export(heapLayout, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static long count(String json) {
+        Matcher matcher = LABEL.matcher(json);
+        long n = 0;
+        while (matcher.find()) {
+            ++n;
+        }
+        return n;
+    }
+
+    private static void assertBalanced(String json) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = 0; i < json.length(); ++i) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    ++i;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                ++depth;
+            } else if (c == '}' || c == ']') {
+                assertTrue(--depth >= 0, json);
+            } else if (c == ',') {
+                assertTrue(depth > 0, json);
+            }
+        }
+        assertEquals(0, depth, json);
+        assertFalse(inString);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class HeapLayout_ParallelTest extends BaseHeapLayoutTest {
+
+    private static final int RUNS = 5;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void arrayListBeyondChunkSize() {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 5 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE + 7; ++i) {
+            list.add("element" + i);
+        }
+        thenParallelEqualsSequential(list);
+    }
+
+    @Test
+    void hashMap() {
+        thenParallelEqualsSequential(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+    }
+
+    @Test
+    void concurrentHashMapOfLists() {
+        Map<Integer, List<Integer>> map = new ConcurrentHashMap<>();
+        for (int i = 0; i < 3 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE; ++i) {
+            map.put(i + 1000, new ArrayList<>(List.of(i * 3 + 1000, i * 3 + 1001)));
+        }
+        thenParallelEqualsSequential(map);
+    }
+
+    @Test
+    void multipleRoots() {
+        thenParallelEqualsSequential(new ArrayList<>(HeapLayout_CollectionsTest._templateList), new HashMap<>(Map.of(1000, 2000L, 1001, 2001L)));
+    }
+
+    @Test
+    void objectsSharedBetweenRoots() {
+        List<Object> shared = sharedObjects();
+        Map<Integer, Object> map = new HashMap<>();
+        for (int i = 0; i < shared.size(); ++i) {
+            map.put(i, shared.get(shared.size() - 1 - i));
+        }
+        thenParallelEqualsSequential(new ArrayList<>(shared), map, shared);
+    }
+
+    @Test
+    void objectsSharedBetweenChunks() {
+        List<Object> shared = sharedObjects();
+        List<Object[]> list = new ArrayList<>();
+        for (int i = 0; i < 5 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE + 7; ++i) {
+            // reached along different paths, so that the heap tree tells who got there first
+            list.add(i % 2 == 0
+                    ? new Object[] { shared.get(i % shared.size()) }
+                    : new Object[] { null, new Object[] { shared.get((i * 31) % shared.size()) } });
+        }
+        thenParallelEqualsSequential(list);
+    }
+
+    @Test
+    void objectsSharedBetweenNestedArrays() {
+        List<Object> shared = sharedObjects();
+        List<List<Object>> lists = new ArrayList<>();
+        for (int i = 0; i < ParallelHeapTraversal.ARRAY_CHUNK_SIZE + 1; ++i) {
+            List<Object> list = new ArrayList<>();
+            for (int j = 0; j < (i % 100 == 0 ? 2 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE : 3); ++j) {
+                list.add(j % 3 == 0 ? shared.get((i + j) % shared.size()) : new Object[] { shared.get(j % shared.size()) });
+            }
+            lists.add(list);
+        }
+        thenParallelEqualsSequential(lists);
+    }
+
+    @Test
+    void stats() {
+        List<Object[]> list = new ArrayList<>();
+        for (int i = 0; i < 3 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE; ++i) {
+            list.add(new Object[] { new Object() });
+        }
+        HeapStats sequential = HeapStats.parseSimpleInstance(list);
+        HeapStats parallel = HeapStats.parseInstanceInParallel(pool, TraversalControl.instance(), list);
+
+        assertEquals(sequential.totalCount(), parallel.totalCount());
+        assertEquals(sequential.totalSize(), parallel.totalSize());
+    }
+
+    @Test
+    void statsOfObjectsSharedBetweenChunks() {
+        List<Object> shared = sharedObjects();
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < 3 * ParallelHeapTraversal.ARRAY_CHUNK_SIZE; ++i) {
+            list.add(new Object[] { shared.get((i * 31) % shared.size()) });
+        }
+        HeapStats sequential = HeapStats.parseSimpleInstance(list);
+        for (int run = 0; run < RUNS; ++run) {
+            HeapStats parallel = HeapStats.parseInstanceInParallel(pool, TraversalControl.instance(), list);
+
+            assertEquals(sequential.totalCount(), parallel.totalCount());
+            assertEquals(sequential.totalSize(), parallel.totalSize());
+        }
+    }
+
+    /**
+     * @return small graphs, one per element, referring to each other
+     */
+    private static List<Object> sharedObjects() {
+        List<Object> shared = new ArrayList<>();
+        for (int i = 0; i < 16; ++i) {
+            shared.add(new ArrayList<>(List.of("shared" + i, i)));
+        }
+        for (int i = 0; i < 16; ++i) {
+            shared.add(new Object[] { shared.get(i), shared.get((i + 1) % 16) });
+        }
+        return shared;
+    }
+
+    private void thenParallelEqualsSequential(Object... roots) {
+        HeapLayout sequential = HeapLayout.parseSimpleInstance(roots);
+        String heapTree = render(sequential, HeapLayout::toHeapTreeDrillDown);
+        String classHistogram = render(sequential, HeapLayout::toClassHistogramDrillDown);
+
+        // which task gets to shared objects first varies from run to run
+        for (int run = 0; run < RUNS; ++run) {
+            HeapLayout parallel = HeapLayout.parseInstanceInParallel(pool, TraversalControl.instance(), HistogramDeduplicator.instance(), roots);
+
+            assertEquals(heapTree, render(parallel, HeapLayout::toHeapTreeDrillDown));
+            assertEquals(classHistogram, render(parallel, HeapLayout::toClassHistogramDrillDown));
+        }
+    }
+}
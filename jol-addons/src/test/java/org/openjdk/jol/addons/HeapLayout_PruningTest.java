@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_PruningTest extends BaseHeapLayoutTest {
+
+    private final HashMap<String, String> root = new HashMap<>(HeapLayout_CollectionsTest._templateMap);
+
+    @Test
+    void noPruningByDefault() {
+        HeapLayout full = HeapLayout.parseSimpleInstance(root);
+        heapLayout = parse(ReportPruning.none());
+
+        assertEquals(render(full, HeapLayout::toHeapTreeDrillDown), render(heapLayout, HeapLayout::toHeapTreeDrillDown));
+        assertEquals(render(full, HeapLayout::toFootprint), render(heapLayout, HeapLayout::toFootprint));
+    }
+
+    @Test
+    void topChildrenAreKept() {
+        HeapLayout full = HeapLayout.parseSimpleInstance(root);
+        heapLayout = parse(ReportPruning.builder().withMaxChildren(1).build());
+
+        String footprint = render(heapLayout, HeapLayout::toFootprint);
+        String fullFootprint = render(full, HeapLayout::toFootprint);
+        assertEquals(List.of("(total)", "java.lang.String", ReportPruning.OTHERS_LABEL), descriptions(footprint));
+        assertEquals(totalLine(fullFootprint), totalLine(footprint));
+        assertEquals(row(fullFootprint, "java.lang.String"), row(footprint, "java.lang.String"));
+
+        String[] total = columns(totalLine(fullFootprint));
+        String[] string = columns(row(fullFootprint, "java.lang.String"));
+        String[] others = columns(row(footprint, ReportPruning.OTHERS_LABEL));
+        assertEquals(Long.parseLong(total[0]) - Long.parseLong(string[0]), Long.parseLong(others[0])); // count
+        assertEquals(Long.parseLong(total[6]) - Long.parseLong(string[6]), Long.parseLong(others[6])); // raw size
+    }
+
+    @Test
+    void heapTreeRetainsTotals() {
+        ArrayList<Object> mixed = new ArrayList<>(List.of("a", 1, 2L, 3.0, new int[4]));
+        HeapLayout full = HeapLayout.parseSimpleInstance(mixed);
+        heapLayout = new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()) //
+                .withPruning(ReportPruning.builder().withMaxChildren(2).build()) //
+                .parseInstance(mixed);
+
+        String heapTree = render(heapLayout, HeapLayout::toHeapTreeDrillDown);
+        String fullHeapTree = render(full, HeapLayout::toHeapTreeDrillDown);
+        List<String> kept = List.of("(total)", "+--java.util.ArrayList", "|  +--[Ljava.lang.Object; ArrayList.elementData [5 of 5 used (100.00 %)]",
+                "|  |  +--java.lang.String [i]", "|  |  |  +--[B String.value [1 of 1 used (100.00 %)]", "|  |  +--[I [i] [0 of 4 used (0.00 %)]");
+        List<String> expected = new ArrayList<>(kept);
+        expected.add("|  |  +--" + ReportPruning.OTHERS_LABEL);
+        assertEquals(expected, descriptions(heapTree));
+        for (String description : kept) {
+            assertEquals(row(fullHeapTree, description), row(heapTree, description));
+        }
+        assertEquals(full.totalSize(), heapLayout.totalSize());
+
+        String[] others = columns(row(heapTree, ReportPruning.OTHERS_LABEL));
+        long count = 0;
+        long size = 0;
+        for (String folded : List.of("java.lang.Double [i]", "java.lang.Long [i]", "java.lang.Integer [i]")) {
+            String[] columns = columns(row(fullHeapTree, folded));
+            count += Long.parseLong(columns[0]);
+            size += Long.parseLong(columns[6]);
+        }
+        assertEquals(count, Long.parseLong(others[0]));
+        assertEquals(size, Long.parseLong(others[6])); // raw total size
+    }
+
+    @Test
+    void smallChildrenAreFolded() {
+        HeapLayout full = HeapLayout.parseSimpleInstance(root);
+        heapLayout = parse(ReportPruning.builder().withMinParentPercentage(100.0).build());
+
+        String footprint = render(heapLayout, HeapLayout::toFootprint);
+        assertEquals(totalLine(render(full, HeapLayout::toFootprint)), totalLine(footprint));
+        assertTrue(footprint.contains(ReportPruning.OTHERS_LABEL));
+    }
+
+    @Test
+    void invalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> ReportPruning.builder().withMaxChildren(0));
+        assertThrows(IllegalArgumentException.class, () -> ReportPruning.builder().withMinSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> ReportPruning.builder().withMinParentPercentage(100.5));
+        assertThrows(IllegalArgumentException.class, () -> ReportPruning.builder().withMinParentPercentage(Double.NaN));
+    }
+
+    private HeapLayout parse(ReportPruning pruning) {
+        return new HeapLayoutSession(TraversalControl.instance(), HistogramDeduplicator.instance()).withPruning(pruning).parseInstance(root);
+    }
+
+    private static String totalLine(String footprint) {
+        return footprint.lines().filter(l -> l.endsWith("(total)")).findFirst().orElseThrow();
+    }
+
+    private static String row(String report, String description) {
+        return report.lines().filter(l -> l.endsWith(description)).findFirst().orElseThrow();
+    }
+
+    private static String[] columns(String row) {
+        return row.trim().split("\\s+");
+    }
+
+    /**
+     * @return descriptions of the rows, including the tree drawing
+     */
+    private static List<String> descriptions(String report) {
+        String header = report.lines().filter(l -> l.endsWith("DESCRIPTION")).findFirst().orElseThrow();
+        int column = header.indexOf("DESCRIPTION");
+        return report.lines()
+                .dropWhile(l -> !l.equals(header))
+                .skip(1)
+                .filter(l -> !l.isBlank())
+                .map(l -> l.substring(column).trim())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.util.SimpleStack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_SamplingTest extends BaseHeapLayoutTest {
+
+    @Test
+    void homogeneousListIsExtrapolated() {
+        List<Integer> list = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; ++i) {
+            list.add(i + 1_000_000);
+        }
+
+        HeapLayout exact = HeapLayout.parseSimpleInstance(list);
+        heapLayout = HeapLayout.parseSampledInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), 0.1, 100, list);
+
+        assertTrue(heapLayout.isSampled());
+        assertEquals(exact.totalCount(), heapLayout.totalCount());
+        assertEquals(exact.totalSize(), heapLayout.totalSize());
+
+        String footprint = render(heapLayout, HeapLayout::toFootprint);
+        assertTrue(footprint.contains("±95% CT"), footprint);
+        // 1,000 samples standing in for 10 elements each: 1.96 * sqrt(1,000 * 10 * 9)
+        assertTrue(footprint.contains("          10,000    99.98 %           16  156.3 KiB         160,000    79.98 %          588    9.2 KiB   java.lang.Integer"),
+                footprint);
+    }
+
+    @Test
+    void errorBoundsCoverObjectsSampledTogether() {
+        // everything reached through one sampled element is sampled along with it, so bounds must cover the totals per element
+        Random random = new Random(42);
+        List<List<Integer>> lists = new ArrayList<>();
+        int integers = 0;
+        for (int i = 0; i < 3000; ++i) {
+            List<Integer> list = new ArrayList<>();
+            if (random.nextBoolean()) {
+                for (int j = 0; j < 12; ++j) {
+                    list.add(1_000_000 + 12 * i + j);
+                }
+                integers += 12;
+            }
+            lists.add(list);
+        }
+
+        int covered = 0;
+        int runs = 200;
+        for (int run = 0; run < runs; ++run) {
+            heapLayout = HeapLayout.parseSampledInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), 0.1, 100, lists);
+            PermNode row = classRow(Integer.class);
+            if (Math.abs(row.getCount() - integers) <= row.getCountErrorBound()) {
+                covered++;
+            }
+        }
+        // 95% bounds, give or take what 200 runs may stray
+        assertTrue(covered >= 0.88 * runs, covered + " of " + runs + " runs covered");
+    }
+
+    @Test
+    void shortArraysAreWalkedInFull() {
+        givenSampledRoot(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        assertTrue(heapLayout.isSampled());
+        assertEquals(27, heapLayout.totalCount());
+        assertTrue(render(heapLayout, HeapLayout::toHeapTreeDrillDown).contains(
+                "              5       32 B           32      160 B             160              25    96.15 %        640 B             640    93.02 %"
+                        + "            0        0 B      |  |  +--java.util.HashMap$Node [i]\n"));
+    }
+
+    @Test
+    void fullFractionIsNotSampled() {
+        heapLayout = HeapLayout.parseSampledInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), 1.0, 0,
+                new ArrayList<>(HeapLayout_CollectionsTest._templateList));
+
+        assertFalse(heapLayout.isSampled());
+        thenFootprintIs( //
+                "           COUNT    % COUNT       AVG SZ        SUM         RAW SUM      % SUM   DESCRIPTION\n"
+              + "              22   100.00 %           --      560 B             560   100.00 %   (total)\n"
+              + "              10    45.45 %           24      240 B             240    42.86 %   java.lang.String\n"
+              + "              10    45.45 %           24      240 B             240    42.86 %   [B\n"
+              + "               1     4.55 %           56       56 B              56    10.00 %   [Ljava.lang.Object;\n"
+              + "               1     4.55 %           24       24 B              24     4.29 %   java.util.ArrayList\n");
+    }
+
+    @Test
+    void byteBudgetCountsWalkedBytes() {
+        List<Integer> list = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; ++i) {
+            list.add(i + 1_000_000);
+        }
+        HeapLayout.Builder builder = new HeapLayout.Builder(list);
+        builder.setSampled(true);
+
+        // some 56 KiB walked, standing in for some 196 KiB
+        HeapTraversal traversal = new HeapTraversal(TraversalControl.instance(), new VisitedSet.WithReferenceOpenHashSet(16),
+                new ReferenceFieldLayout.Cache(16), new SimpleStack<>(16), new InitialNodeFactory(HistogramDeduplicator.instance(), 16), builder)
+                .withSampling(100, 10).withBudget(TraversalBudget.builder().withMaxBytes(100_000).build());
+        traversal.addRoots(list);
+        traversal.run();
+
+        assertFalse(traversal.isTruncated());
+        assertEquals(10_002, builder.build().totalCount());
+    }
+
+    @Test
+    void invalidFractionThrows() {
+        assertThrows(IllegalArgumentException.class, () -> givenSampledRoot(0.0, Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> givenSampledRoot(1.5, Map.of()));
+    }
+
+    private PermNode classRow(Class<?> cl) {
+        for (PermNode row : heapLayout.materializeClassHistogram().getChildren()) {
+            if (row.getLabel().equals(cl.getName())) {
+                return row;
+            }
+        }
+        throw new AssertionError("no row for " + cl.getName());
+    }
+
+    private void givenSampledRoot(Object root) {
+        givenSampledRoot(0.5, root);
+    }
+
+    private void givenSampledRoot(double fraction, Object root) {
+        heapLayout = HeapLayout.parseSampledInstance(TraversalControl.instance(), HistogramDeduplicator.instance(), fraction, 100, root);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HeapLayout_ShallowCollectionsTest extends BaseHeapLayoutTest {
+
+    private static final String KEY = "$Key";
+    private static final String VALUE = "$Value";
+
+    @Test
+    void unannotated() {
+        givenRoot(new Unannotated(filled(new HashMap<>())));
+
+        thenFootprintContains("java.util.HashMap$Node", KEY, VALUE);
+    }
+
+    @Test
+    void hashMap() {
+        givenRoot(new WithoutKeys(filled(new HashMap<>())));
+        thenFootprintContains("java.util.HashMap$Node", VALUE);
+        thenFootprintLacks(KEY);
+
+        givenRoot(new WithoutValues(filled(new HashMap<>())));
+        thenFootprintContains("java.util.HashMap$Node", KEY);
+        thenFootprintLacks(VALUE);
+
+        givenRoot(new WithoutContents(filled(new HashMap<>())));
+        thenFootprintContains("java.util.HashMap$Node");
+        thenFootprintLacks(KEY, VALUE);
+    }
+
+    @Test
+    void marksDoNotOutliveTheTraversal() {
+        Map<Key, Value> map = filled(new HashMap<>());
+        givenRoot(new WithoutKeys(map));
+        thenFootprintLacks(KEY);
+
+        givenRoot(new Unannotated(map));
+        thenFootprintContains("java.util.HashMap$Node", KEY, VALUE);
+    }
+
+    @Test
+    void linkedHashMap() {
+        givenRoot(new WithoutContents(filled(new LinkedHashMap<>())));
+
+        thenFootprintContains("java.util.LinkedHashMap$Entry");
+        thenFootprintLacks(KEY, VALUE);
+    }
+
+    @Test
+    void concurrentHashMap() {
+        givenRoot(new WithoutKeys(filled(new ConcurrentHashMap<>())));
+
+        thenFootprintContains("java.util.concurrent.ConcurrentHashMap$Node", VALUE);
+        thenFootprintLacks(KEY);
+    }
+
+    @Test
+    void treeMap() {
+        givenRoot(new WithoutValues(filled(new TreeMap<>())));
+
+        thenFootprintContains("java.util.TreeMap$Entry", KEY);
+        thenFootprintLacks(VALUE);
+    }
+
+    @Test
+    void unmodifiableMap() {
+        givenRoot(new WithoutContents(Collections.unmodifiableMap(filled(new HashMap<>()))));
+
+        thenFootprintContains("java.util.HashMap$Node");
+        thenFootprintLacks(KEY, VALUE);
+    }
+
+    @Test
+    void arrayList() {
+        List<Value> list = new ArrayList<>(List.of(new Value(), new Value()));
+        givenRoot(new WithoutValues(list));
+
+        thenFootprintContains("java.util.ArrayList", "[Ljava.lang.Object;");
+        thenFootprintLacks(VALUE);
+    }
+
+    @Test
+    void hashSet() {
+        Set<Key> set = new HashSet<>(List.of(new Key(1), new Key(2)));
+        givenRoot(new WithoutKeys(set));
+
+        thenFootprintContains("java.util.HashSet", "java.util.HashMap$Node");
+        thenFootprintLacks(KEY);
+    }
+
+    @Test
+    void guavaCache() {
+        Cache<Key, Value> cache = CacheBuilder.newBuilder().build();
+        cache.putAll(filled(new HashMap<>()));
+        givenRoot(new WithoutKeys(cache));
+        thenFootprintContains("com.google.common.cache.LocalCache$StrongEntry", VALUE);
+        thenFootprintLacks(KEY);
+
+        givenRoot(new WithoutValues(cache));
+        thenFootprintContains("com.google.common.cache.LocalCache$StrongEntry", KEY);
+        thenFootprintLacks(VALUE);
+    }
+
+    @Test
+    void guavaCacheWithWeakKeysAndValues() {
+        Cache<Key, Value> cache = CacheBuilder.newBuilder().weakKeys().weakValues().recordStats()
+                .expireAfterAccess(1, TimeUnit.HOURS).build();
+        Map<Key, Value> contents = filled(new HashMap<>());
+        cache.putAll(contents);
+
+        givenRoot(new WithoutValues(cache));
+        thenFootprintContains("com.google.common.cache.LocalCache$WeakAccessEntry", KEY);
+        thenFootprintLacks(VALUE);
+
+        givenRoot(new WithoutKeys(cache));
+        thenFootprintContains(VALUE);
+        thenFootprintLacks(KEY);
+        assertEquals(3, contents.size());
+    }
+
+    private static <M extends Map<Key, Value>> M filled(M map) {
+        for (int i = 0; i < 3; ++i) {
+            map.put(new Key(i), new Value());
+        }
+        return map;
+    }
+
+    private void thenFootprintContains(String... fragments) {
+        String footprint = render(heapLayout, HeapLayout::toFootprint);
+        for (String fragment : fragments) {
+            assertTrue(footprint.contains(fragment), () -> fragment + " missing in\n" + footprint);
+        }
+    }
+
+    private void thenFootprintLacks(String... fragments) {
+        String footprint = render(heapLayout, HeapLayout::toFootprint);
+        for (String fragment : fragments) {
+            assertFalse(footprint.contains(fragment), () -> fragment + " present in\n" + footprint);
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    private static final class Value {
+        private final long[] payload = new long[4];
+    }
+
+    private static final class Unannotated {
+        private final Object collection;
+
+        Unannotated(Object collection) {
+            this.collection = collection;
+        }
+    }
+
+    private static final class WithoutKeys {
+        @ExcludeKeys
+        private final Object collection;
+
+        WithoutKeys(Object collection) {
+            this.collection = collection;
+        }
+    }
+
+    private static final class WithoutValues {
+        @ExcludeValues
+        private final Object collection;
+
+        WithoutValues(Object collection) {
+            this.collection = collection;
+        }
+    }
+
+    private static final class WithoutContents {
+        @ExcludeKeys
+        @ExcludeValues
+        private final Object collection;
+
+        WithoutContents(Object collection) {
+            this.collection = collection;
+        }
+    }
+}
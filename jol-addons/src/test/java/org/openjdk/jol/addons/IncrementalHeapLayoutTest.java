@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IncrementalHeapLayoutTest extends BaseHeapLayoutTest {
+
+    @Test
+    void singleObjectSlicesEqualOneShot() {
+        Map<Integer, List<String>> root = new TreeMap<>();
+        for (int i = 0; i < 100; ++i) {
+            root.put(i + 1000, new ArrayList<>(List.of("a" + i, "b" + i)));
+        }
+
+        IncrementalHeapLayout incremental = IncrementalHeapLayout.builder().withMaxObjectsPerSlice(1).build(root);
+        while (!incremental.step()) {
+            assertFalse(incremental.isExhausted());
+            assertThrows(IllegalStateException.class, incremental::getResult);
+        }
+
+        HeapLayout expected = HeapLayout.parseSimpleInstance(root);
+        assertEquals(expected.totalCount(), incremental.getSlices());
+        assertEquals(render(expected, HeapLayout::toHeapTreeDrillDown), render(incremental.getResult(), HeapLayout::toHeapTreeDrillDown));
+        assertEquals(render(expected, HeapLayout::toClassHistogramDrillDown), render(incremental.getResult(), HeapLayout::toClassHistogramDrillDown));
+    }
+
+    @Test
+    void unlimitedBudgetTakesOneSlice() {
+        IncrementalHeapLayout incremental = IncrementalHeapLayout.builder().build(new ArrayList<>(HeapLayout_CollectionsTest._templateList));
+
+        assertTrue(incremental.step());
+        assertTrue(incremental.step());
+        assertEquals(1, incremental.getSlices());
+        assertEquals(22, incremental.getResult().totalCount());
+    }
+
+    @Test
+    void invalidBudgetThrows() {
+        assertThrows(IllegalArgumentException.class, () -> IncrementalHeapLayout.builder().withMaxObjectsPerSlice(0));
+        assertThrows(IllegalArgumentException.class, () -> IncrementalHeapLayout.builder().withMaxNanosPerSlice(0));
+    }
+}
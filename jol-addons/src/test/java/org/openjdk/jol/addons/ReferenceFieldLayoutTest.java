@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.VisitedIdentities;
+import org.openjdk.jol.util.SimpleStack;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ReferenceFieldLayoutTest {
+
+    @Test
+    void labelsAreMerged() {
+        ReferenceFieldLayout layout = ReferenceFieldLayout.of(LinkedList.class);
+
+        assertEquals(2, layout.size());
+        assertEquals("first/last", layout.getLabel(0));
+        assertEquals("first/last", layout.getLabel(1));
+    }
+
+    @Test
+    void offsetsMatchFields() {
+        ArrayList<Object> list = new ArrayList<>();
+        list.add("a");
+        ReferenceFieldLayout layout = ReferenceFieldLayout.of(ArrayList.class);
+
+        assertEquals(1, layout.size());
+        assertEquals("elementData", layout.getField(0).getName());
+        assertTrue(layout.getOffset(0) > 0);
+        assertEquals(24, layout.getShallowSize(list));
+    }
+
+    @Test
+    void arraysHaveNoFields() {
+        assertEquals(0, ReferenceFieldLayout.of(Object[].class).size());
+    }
+
+    @Test
+    void layoutsAreShared() {
+        assertSame(ReferenceFieldLayout.of(LinkedList.class), ReferenceFieldLayout.of(LinkedList.class));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void deprecatedEntryPointsConsultGivenCaches() {
+        CountingCaches caches = new CountingCaches();
+        Object root = new ArrayList<>(List.of("a", new Pair("left", "right")));
+        long expected = HeapLayout.parseInstance(TraversalControl.instance(), HistogramDeduplicator.instance(),
+                new VisitedIdentities.WithSimpleIdentityHashSet(32), 32, 32, root).totalSize();
+
+        assertEquals(expected, HeapLayout.parseInstance(TraversalControl.instance(), new VisitedIdentities.WithSimpleIdentityHashSet(32),
+                caches, caches, new SimpleStack<>(32), new InitialNodeFactory(HistogramDeduplicator.instance(), 32), root).totalSize());
+        assertEquals(5, caches.sizes); // the list, the pair and the three strings; arrays are measured directly
+        assertTrue(caches.fields >= 4);
+
+        caches.sizes = 0;
+        assertEquals(expected, HeapStats.parseInstance(TraversalControl.instance(), new VisitedIdentities.WithSimpleIdentityHashSet(32),
+                caches, caches, new SimpleStack<>(32), root).totalSize());
+        assertEquals(5, caches.sizes);
+    }
+
+    private static final class CountingCaches implements ObjectSizeCache, ReferenceFieldCache {
+        private final ObjectSizeCache sizeCache = new ObjectSizeCache.WithObject2LongMap(16);
+        private final ReferenceFieldCache fieldCache = new ReferenceFieldCache.WithObject2LongMap(16);
+        private int sizes;
+        private int fields;
+
+        @Override
+        public long get(Class<?> cl, Object e) {
+            sizes++;
+            return sizeCache.get(cl, e);
+        }
+
+        @Override
+        public Object get(Field f, Object e) {
+            fields++;
+            return fieldCache.get(f, e);
+        }
+
+        @Override
+        public int size() {
+            return sizeCache.size();
+        }
+    }
+
+    private static final class Pair {
+        private final Object left;
+        private final Object right;
+
+        Pair(Object left, Object right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
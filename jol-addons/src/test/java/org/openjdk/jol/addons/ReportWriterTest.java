@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ReportWriterTest {
+
+    private static final List<Locale> LOCALES = List.of(Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.forLanguageTag("de-CH"),
+            Locale.forLanguageTag("hi-IN"), Locale.forLanguageTag("ar-EG"), Locale.forLanguageTag("th-TH-u-nu-thai"));
+
+    @Test
+    void integersAsFormatted() {
+        long[] values = {0, 1, -1, 999, 1_000, -1_000, 123_456_789, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (Locale locale : LOCALES) {
+            for (long value : values) {
+                assertEquals(String.format(locale, "%,15d", value), render(locale, w -> w.integer(value, 15, true)), locale + " " + value);
+                assertEquals(String.format(locale, "%d", value), render(locale, w -> w.integer(value, 0, false)), locale + " " + value);
+            }
+        }
+    }
+
+    @Test
+    void decimalsAsFormatted() {
+        double[] values = {0.0, -0.0, 100.0, 0.005, 0.015, 1.005, 2.675, 33.333333333333336, 66.66666666666667, 99.995, 99.99499999999999,
+                1e-9, 123456789.125, 1e17, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN};
+        Random random = new Random(42);
+        for (Locale locale : LOCALES) {
+            for (double value : values) {
+                assertDecimal(locale, value);
+            }
+            for (int i = 0; i < 10_000; ++i) {
+                assertDecimal(locale, random.nextDouble() * 100.0);
+                assertDecimal(locale, random.nextInt(100_000) / 1000.0);
+                assertDecimal(locale, 100.0 * random.nextInt(1000) / (1 + random.nextInt(1000)));
+            }
+        }
+    }
+
+    @Test
+    void byteCountsAsFormatted() {
+        long[] values = {0, 1, 1023, 1024, 1025, 1536, 10_000, 1_048_575, 1_048_576, 123_456_789_012L, Long.MAX_VALUE, -1, -2048, Long.MIN_VALUE};
+        Random random = new Random(42);
+        for (Locale locale : LOCALES) {
+            Locale previous = Locale.getDefault(Locale.Category.FORMAT);
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+            try {
+                for (long value : values) {
+                    assertByteCount(locale, value);
+                }
+                for (int i = 0; i < 10_000; ++i) {
+                    assertByteCount(locale, random.nextLong() >>> random.nextInt(64));
+                }
+            } finally {
+                Locale.setDefault(Locale.Category.FORMAT, previous);
+            }
+        }
+    }
+
+    @Test
+    void longLinesAreDrained() {
+        String label = "x".repeat(20_000);
+        assertEquals(label + String.format("%,15d", 42L), render(Locale.US, w -> w.append(label).integer(42, 15, true)));
+    }
+
+    @Test
+    void channelMatchesWriter() throws Exception {
+        HeapLayout layout = HeapLayout.parseSimpleInstance(new HashMap<>(HeapLayout_CollectionsTest._templateMap));
+
+        StringWriter sw = new StringWriter();
+        layout.toHeapTreeDrillDown(new PrintWriter(sw));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        layout.toHeapTreeDrillDown(Channels.newChannel(bytes), StandardCharsets.UTF_8);
+
+        assertEquals(sw.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static void assertDecimal(Locale locale, double value) {
+        assertEquals(String.format(locale, "%8.2f", value), render(locale, w -> w.decimal(value, 8, 2)), locale + " " + value);
+        assertEquals(String.format(locale, "%.1f", value), render(locale, w -> w.decimal(value, 0, 1)), locale + " " + value);
+    }
+
+    private static void assertByteCount(Locale locale, long value) {
+        assertEquals(String.format(locale, "%10s", HeapLayout.humanReadableByteCountBin(value)), render(locale, w -> w.byteCount(value, 10)),
+                locale + " " + value);
+    }
+
+    private static String render(Locale locale, Consumer<ReportWriter> consumer) {
+        StringWriter sw = new StringWriter();
+        ReportWriter w = new ReportWriter(sw, null, null, locale);
+        consumer.accept(w);
+        w.flush();
+        return sw.toString();
+    }
+}
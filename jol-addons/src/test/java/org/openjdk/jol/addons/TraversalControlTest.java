@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.VisitedIdentities;
+
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TraversalControlTest {
+
+    private final TraversalControl tc = TraversalControl.instance();
+
+    @Test
+    void blacklistedParent() {
+        assertFalse(tc.isChildToBeTraversed(new Thread(), null, "child"));
+        assertFalse(tc.isChildToBeTraversed(String.class, null, "child"));
+        assertTrue(tc.isChildToBeTraversed(new ArrayList<>(), null, "child"));
+    }
+
+    @Test
+    void blacklistedChild() {
+        assertFalse(tc.isChildToBeTraversed(null, null, new FileDescriptor()));
+        assertTrue(tc.isChildToBeTraversed(null, null, "child"));
+    }
+
+    @Test
+    void excludedField() throws Exception {
+        Annotated parent = new Annotated();
+        Field excluded = Annotated.class.getDeclaredField("excluded");
+        Field included = Annotated.class.getDeclaredField("included");
+
+        assertFalse(tc.isChildToBeTraversed(parent, excluded, parent.excluded));
+        assertTrue(tc.isChildToBeTraversed(parent, included, parent.included));
+        // decisions are cached per class, a second pass must agree
+        assertFalse(tc.isChildToBeTraversed(parent, excluded, parent.excluded));
+        assertTrue(tc.isChildToBeTraversed(parent, included, parent.included));
+    }
+
+    @Test
+    void excludedSlots() throws Exception {
+        ReferenceFieldLayout layout = ReferenceFieldLayout.of(AnnotatedSubclass.class);
+        TraversalControl.Verdicts verdicts = tc.getVerdicts(AnnotatedSubclass.class);
+
+        for (int i = 0; i < layout.size(); ++i) {
+            assertEquals(layout.getField(i).getName().equals("excluded"), verdicts.isSlotExcluded(i), layout.getField(i).getName());
+        }
+        AnnotatedSubclass parent = new AnnotatedSubclass();
+        assertFalse(tc.isChildToBeTraversed(parent, Annotated.class.getDeclaredField("excluded"), parent.excluded));
+        assertTrue(tc.isChildToBeTraversed(parent, AnnotatedSubclass.class.getDeclaredField("own"), parent.own));
+    }
+
+    @Test
+    void decisionsAreNotSharedBetweenInstances() {
+        TraversalControl other = TraversalControl.builder().withChildBlacklist(List.of(CharSequence.class))
+                .withParentBlacklistDirectClasses(Set.of(ArrayList.class)).build(false);
+
+        assertFalse(other.isChildToBeTraversed(null, null, "child"));
+        assertFalse(other.isChildToBeTraversed(new ArrayList<>(), null, 1));
+        assertTrue(tc.isChildToBeTraversed(new ArrayList<>(), null, "child"));
+    }
+
+    @Test
+    void overridesAreHonouredByTraversals() {
+        TraversalControl overriding = new TraversalControl(Set.of(), List.of(), List.of(ExcludeFromHeapTraversal.class), Set.of(), List.of(),
+                false) {
+            @Override
+            public boolean isChildToBeTraversed(Object parent, Field field, Object child) {
+                return !(child instanceof Integer) && (field == null || !field.getName().equals("included"))
+                        && super.isChildToBeTraversed(parent, field, child);
+            }
+        };
+        Object[] root = {new Annotated(), 1, "child"};
+
+        // the array, the Annotated instance and the String with its byte array
+        assertEquals(4, HeapLayout.parseInstance(overriding, HistogramDeduplicator.instance(), new VisitedIdentities.WithSimpleIdentityHashSet(32),
+                32, 32, (Object) root).totalCount());
+        assertEquals(4, HeapStats.parseInstanceInParallel(ForkJoinPool.commonPool(), overriding, (Object) root).totalCount());
+        assertEquals(6, HeapLayout.parseInstance(tc, HistogramDeduplicator.instance(), new VisitedIdentities.WithSimpleIdentityHashSet(32),
+                32, 32, (Object) root).totalCount());
+    }
+
+    private static class Annotated {
+        @ExcludeFromHeapTraversal
+        final Object excluded = new Object();
+        final Object included = new Object();
+    }
+
+    private static final class AnnotatedSubclass extends Annotated {
+        final Object own = new Object();
+    }
+}
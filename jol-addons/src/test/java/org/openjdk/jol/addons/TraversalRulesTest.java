@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jol.addons;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TraversalRulesTest {
+
+    @Test
+    void globs() {
+        assertTrue(TraversalRules.compileGlob("java.util.*").matcher("java.util.ArrayList").matches());
+        assertFalse(TraversalRules.compileGlob("java.util.*").matcher("java.util.concurrent.ConcurrentHashMap").matches());
+        assertTrue(TraversalRules.compileGlob("java.util.**").matcher("java.util.concurrent.ConcurrentHashMap").matches());
+        assertTrue(TraversalRules.compileGlob("java.util.HashMap$Node").matcher("java.util.HashMap$Node").matches());
+        assertTrue(TraversalRules.compileGlob("java.?til.List").matcher("java.util.List").matches());
+    }
+
+    @Test
+    void lastMatchingRuleWins() {
+        TraversalControl tc = TraversalControl.builder().withRules(TraversalRules.parse(String.join("\n",
+                "# children",
+                "exclude child java.util.*",
+                "include child java.util.LinkedList",
+                "",
+                "exclude parent java.lang.CharSequence+"))).build(false);
+
+        assertFalse(tc.isChildToBeTraversed(null, null, new ArrayList<>()));
+        assertTrue(tc.isChildToBeTraversed(null, null, new LinkedList<>()));
+        assertTrue(tc.isChildToBeTraversed(null, null, new Object()));
+        assertFalse(tc.isChildToBeTraversed(new StringBuilder(), null, new Object()));
+        assertTrue(tc.isChildToBeTraversed(new Object(), null, new Object()));
+    }
+
+    @Test
+    void rulesTakePrecedenceOverLists() {
+        TraversalControl tc = TraversalControl.builder().withChildBlacklistDirectClasses(Set.of(FileDescriptor.class))
+                .withChildBlacklist(List.of(Number.class))
+                .withRules(TraversalRules.parse("include child java.io.FileDescriptor")).build(false);
+
+        assertTrue(tc.isChildToBeTraversed(null, null, new FileDescriptor()));
+        assertFalse(tc.isChildToBeTraversed(null, null, 1));
+    }
+
+    @Test
+    void fieldsAndAnnotations() throws Exception {
+        TraversalControl tc = TraversalControl.builder().withRules(TraversalRules.parse(String.join("\n",
+                "exclude field org.openjdk.jol.addons.TraversalRulesTest$Holder#.*Cache",
+                "exclude annotation **.Deprecated"))).build(false);
+        Holder holder = new Holder();
+
+        assertFalse(tc.isChildToBeTraversed(holder, Holder.class.getDeclaredField("lookupCache"), holder.lookupCache));
+        assertFalse(tc.isChildToBeTraversed(holder, Holder.class.getDeclaredField("legacy"), holder.legacy));
+        assertTrue(tc.isChildToBeTraversed(holder, Holder.class.getDeclaredField("payload"), holder.payload));
+    }
+
+    @Test
+    void fieldRulesMatchTheRuntimeClass() throws Exception {
+        TraversalControl tc = TraversalControl.builder().withRules(TraversalRules.parse(
+                "exclude field org.openjdk.jol.addons.TraversalRulesTest$SubHolder#lookupCache")).build(false);
+        Field lookupCache = BaseHolder.class.getDeclaredField("lookupCache");
+        SubHolder sub = new SubHolder();
+        BaseHolder base = new BaseHolder();
+
+        assertFalse(tc.isChildToBeTraversed(sub, lookupCache, sub.lookupCache));
+        assertTrue(tc.isChildToBeTraversed(base, lookupCache, base.lookupCache));
+    }
+
+    @Test
+    void annotationExclusionCanBeOverridden() throws Exception {
+        TraversalControl tc = TraversalControl.builder().withAnnotations(List.of(ExcludeFromHeapTraversal.class))
+                .withRules(TraversalRules.parse("include field **$Holder#payload")).build(false);
+        Holder holder = new Holder();
+
+        assertTrue(tc.isChildToBeTraversed(holder, Holder.class.getDeclaredField("payload"), holder.payload));
+    }
+
+    @Test
+    void load(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("traversal.rules");
+        Files.writeString(file, "exclude child java.lang.String\n");
+
+        TraversalRules rules = TraversalRules.load(file);
+
+        assertFalse(rules.isEmpty());
+        assertEquals(Boolean.TRUE, rules.isChildExcluded(String.class));
+        assertNull(rules.isChildExcluded(Integer.class));
+    }
+
+    @Test
+    void malformed() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> TraversalRules.parse("exclude child java.lang.String\nignore child java.lang.Integer"));
+        assertTrue(e.getMessage().startsWith("line 2:"), e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> TraversalRules.parse("exclude field java.lang.String"));
+        assertThrows(IllegalArgumentException.class, () -> TraversalRules.parse("exclude field java.lang.String#("));
+        assertThrows(IllegalArgumentException.class, () -> TraversalRules.parse("exclude child"));
+    }
+
+    private static final class Holder {
+        private final Object lookupCache = new Object();
+        @Deprecated
+        private final Object legacy = new Object();
+        @ExcludeFromHeapTraversal
+        private final Object payload = new Object();
+    }
+
+    private static class BaseHolder {
+        final Object lookupCache = new Object();
+    }
+
+    private static final class SubHolder extends BaseHolder {
+    }
+}